@@ -1,9 +1,17 @@
 package cz.muni.fi.uco359952.simplesimreader;
 
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 import javax.smartcardio.CardException;
-import javax.smartcardio.ResponseAPDU;
-import cz.muni.fi.uco359952.simplesimreader.CardManager.*;
+import javax.smartcardio.CardNotPresentException;
+import cz.muni.fi.uco359952.simplesimreader.data.DF;
+import cz.muni.fi.uco359952.simplesimreader.data.EF;
+import cz.muni.fi.uco359952.simplesimreader.data.FileInfo;
+import cz.muni.fi.uco359952.simplesimreader.exceptions.ApduTimeoutException;
 import cz.muni.fi.uco359952.simplesimreader.exceptions.BadStatusWordException;
+import cz.muni.fi.uco359952.simplesimreader.exceptions.ReaderParkedException;
 
 /**
  * Creates APDUs that are send into CardManager. Supports named-APDU functions,
@@ -26,20 +34,76 @@ public class ApduWorker {
      * Template for READ BINARY command APDU, defined in ISO 7816-4.
      */
     public static final byte READ_BINARY[] = {(byte) 0xA0, (byte) 0xB0, (byte) 0x00, (byte) 0x00};
+    /**
+     * Maximal number of bytes that can be requested by one READ BINARY
+     * command.
+     */
+    public static final int MAX_LENGTH_OF_DATA = 255;
+    /**
+     * Maximal offset that can be used in READ BINARY command - P1 has 7 bits
+     * of offset, P2 has 8 bits.
+     */
+    public static final int MAX_OFFSET = 0x7FFF;
     /**
      * Template for READ RECORD command APDU, defined in ISO 7816-4.
      */
     public static final byte READ_RECORD[] = {(byte) 0xA0, (byte) 0xB2, (byte) 0x01, (byte) 0x04, (byte) 0x1E};
+    /**
+     * Class byte of commands defined in GSM 11.11.
+     */
+    public static final byte GSM_CLASS = (byte) 0xA0;
+    /**
+     * Class byte of interindustry commands defined in ISO 7816-4, used by
+     * UICC.
+     */
+    public static final byte ISO_CLASS = (byte) 0x00;
+    /**
+     * P2 of SELECT in ISO class which asks for FCP template (ETSI TS 102 221).
+     */
+    public static final byte SELECT_FCP = (byte) 0x04;
+    /**
+     * P2 of SELECT in ISO class which asks for no response data.
+     */
+    public static final byte SELECT_NO_DATA = (byte) 0x0C;
+    /**
+     * Number of times idempotent operation (SELECT, READ BINARY, READ RECORD
+     * of EF) is retried after failed communication. Before every retry
+     * session is reconnected warm; card is never reset, reset would lose
+     * verified PIN and PIN-protected EF would then be read from unverified
+     * card.
+     */
+    public static final int MAX_RETRIES = 2;
+    /**
+     * Pause in milliseconds before first retry, doubled before every next
+     * one.
+     */
+    public static final long RETRY_BACKOFF = 50;
     /**
      * Stores CardManager instance for further use.
      */
-    public static CardManager manager;
+    public final CardManager manager;
+    private final byte[] command;
+    private final byte[] response;
+    private int responseLength = 0;
 
     /**
-     * Creates CardManager instance and stores is for further use.
+     * Creates CardManager instance with its own session and stores is for
+     * further use.
      */
     public ApduWorker() {
-        manager = new CardManager();
+        this(new CardSession());
+    }
+
+    /**
+     * Creates CardManager instance bound to given session and stores is for
+     * further use.
+     *
+     * @param session session with card this ApduWorker communicates with
+     */
+    public ApduWorker(CardSession session) {
+        manager = new CardManager(session);
+        command = session.getCommandBuffer().array();
+        response = session.getResponseBuffer().array();
     }
 
     /**
@@ -51,15 +115,124 @@ public class ApduWorker {
      * indicating process aborted.
      */
     public byte[] select(byte[] FID) throws CardException, BadStatusWordException {
-        byte APDU[] = new byte[7];
-        System.arraycopy(SELECT, 0, APDU, 0, SELECT.length);
-        System.arraycopy(FID, 0, APDU, 5, FID.length);
-        ResponseAPDU response = manager.sendAPDU(APDU);
+        manager.getSession().invalidateSelection(); //selection is no longer tracked
+        transmitSelect(FID, false, true);
+        return responseBytes();
+    }
+
+    /**
+     * Selects given EF and returns Response APDU after its GET RESPONSE
+     * command. DF of EF is selected first if it isn't current.
+     *
+     * @param EF EF that is to be selected
+     * @return Response APDU after GET RESPONSE command of given EF
+     * @throws CardException if there was problem communicating with card
+     * @throws BadStatusWordException if card has returned Status Word
+     * indicating process aborted.
+     * @see #selectWithInfo(EF)
+     */
+    public byte[] selectEF(EF EF) throws CardException, BadStatusWordException {
+        return selectWithInfo(EF).getResponse();
+    }
 
-        if (response.getSW1() != 0x9f) {
-            throw new BadStatusWordException(Converter.getSWmeaning(response.getBytes())); //command was not successfully executed
+    /**
+     * Selects given EF and returns its parsed FileInfo. DF of EF is selected
+     * first if it isn't current. If EF is already selected, no APDU is sent.
+     * GET RESPONSE is sent only the first time EF is selected in session,
+     * afterwards FileInfo is taken from session. Failed communication is
+     * retried, see MAX_RETRIES.
+     *
+     * @param EF EF that is to be selected
+     * @return FileInfo of given EF
+     * @throws CardException if there was problem communicating with card
+     * @throws BadStatusWordException if card has returned Status Word
+     * indicating process aborted.
+     */
+    public FileInfo selectWithInfo(EF EF) throws CardException, BadStatusWordException {
+        for (int attempt = 0;; attempt++) {
+            try {
+                return selectWithInfoOnce(EF);
+            } catch (CardException ex) {
+                recover(ex, attempt);
+            }
+        }
+    }
+
+    private FileInfo selectWithInfoOnce(EF EF) throws CardException, BadStatusWordException {
+        CardSession session = manager.getSession();
+        if (EF == session.getSelectedEF()) {
+            return session.getSelectedEFInfo();
+        }
+        session.beginExclusive();
+        try {
+            selectDF(EF.getDF());
+            FileInfo info = session.getFileInfo(EF);
+            transmitSelect(EF.getFID(), info == null);
+            if (info == null) {
+                if (responseLength <= 2) {
+                    throw new BadStatusWordException("SELECT of " + EF.getShortName() + " returned no response data");
+                }
+                try {
+                    info = new FileInfo(responseBytes());
+                } catch (IllegalArgumentException ex) {
+                    throw new BadStatusWordException("SELECT of " + EF.getShortName() + " returned malformed response data: " + ex.getMessage());
+                }
+                session.putFileInfo(EF, info);
+            }
+            session.setSelectedEF(EF, info);
+            return info;
+        } catch (CardException ex) {
+            session.invalidateSelection();
+            throw ex;
+        } finally {
+            session.endExclusive();
+        }
+    }
+
+    /**
+     * Selects given DF, if it isn't current already.
+     *
+     * @param DF DF that is to be selected
+     * @throws CardException if there was problem communicating with card
+     * @throws BadStatusWordException if card has returned Status Word
+     * indicating process aborted.
+     */
+    public void selectDF(DF DF) throws CardException, BadStatusWordException {
+        CardSession session = manager.getSession();
+        if (DF == session.getSelectedDF()) {
+            return;
+        }
+        try {
+            transmitSelect(DF.getFID(), false);
+            session.setSelectedDF(DF);
+        } catch (CardException ex) {
+            session.invalidateSelection();
+            throw ex;
+        }
+    }
+
+    /**
+     * Selects given DF and returns its response data, even if DF is current
+     * already. Failed communication is retried, see MAX_RETRIES.
+     *
+     * @param DF DF that is to be selected
+     * @return Response APDU after GET RESPONSE command of given DF
+     * @throws CardException if there was problem communicating with card
+     * @throws BadStatusWordException if card has returned Status Word
+     * indicating process aborted.
+     */
+    public byte[] selectDFWithResponse(DF DF) throws CardException, BadStatusWordException {
+        CardSession session = manager.getSession();
+        for (int attempt = 0;; attempt++) {
+            try {
+                transmitSelect(DF.getFID(), true);
+                session.setSelectedDF(DF);
+                return responseBytes();
+            } catch (CardException ex) {
+                session.invalidateSelection();
+                recover(ex, attempt);
+            }
         }
-        return response.getBytes();
     }
 
     /**
@@ -75,6 +248,33 @@ public class ApduWorker {
         return select(FIDbyte);
     }
 
+    /**
+     * Sends SELECT command. If fetchResponse is true, response data of
+     * selected file are fetched with GET RESPONSE and left in response buffer.
+     */
+    private int transmitSelect(byte[] FID, boolean fetchResponse) throws CardException, BadStatusWordException {
+        return transmitSelect(FID, fetchResponse, fetchResponse);
+    }
+
+    /**
+     * Sends SELECT command. In ISO class P2 asks for FCP template if
+     * withData is true, for no data otherwise; GSM class always has response
+     * data ready.
+     */
+    private int transmitSelect(byte[] FID, boolean fetchResponse, boolean withData) throws CardException, BadStatusWordException {
+        System.arraycopy(SELECT, 0, command, 0, SELECT.length);
+        System.arraycopy(FID, 0, command, 5, FID.length);
+        if (manager.getSession().getCommandClass() == ISO_CLASS) {
+            command[3] = withData ? SELECT_FCP : SELECT_NO_DATA;
+        }
+        int statusWord = transceive(SELECT.length + FID.length, fetchResponse);
+
+        if (!isSuccess(statusWord) && !hasResponseData(statusWord)) {
+            throw badStatusWord(); //command was not successfully executed
+        }
+        return statusWord;
+    }
+
     /**
      *
      * @param rApduFromSelect byte[] with Response APDU after SELECT command
@@ -82,29 +282,121 @@ public class ApduWorker {
      * @throws CardException if there was problem communicating with card
      */
     public byte[] getResponse(byte[] rApduFromSelect) throws CardException {
-        byte APDU[] = new byte[5];
-        System.arraycopy(GET_RESPONSE, 0, APDU, 0, GET_RESPONSE.length);
-        APDU[4] = rApduFromSelect[1];
-        ResponseAPDU response = manager.sendAPDU(APDU);
-        Converter.getSWmeaning(response.getBytes());
+        //length of available data is in SW2 of '9Fxx' or '61xx'
+        fetchResponse(rApduFromSelect[rApduFromSelect.length - 1] & 0xff);
 
-        return response.getBytes();
+        return responseBytes();
     }
 
     /**
+     * Reads entire transparent EF, whose size is taken from Response APDU
+     * after GET RESPONSE command. Files larger than MAX_LENGTH_OF_DATA are
+     * read in more READ BINARY commands.
      *
      * @param rApduFromGetResponse byte[] with Response APDU after GET REPONSE
      * command
-     * @return Response APDU after READ BINARY command
+     * @return content of EF followed by Status Word of READ BINARY command
      * @throws CardException if there was problem communicating with card
      */
     public byte[] readBinary(byte[] rApduFromGetResponse) throws CardException {
-        byte APDU[] = new byte[5];
-        System.arraycopy(READ_BINARY, 0, APDU, 0, READ_BINARY.length);
-        APDU[4] = rApduFromGetResponse[3];
-        ResponseAPDU response = manager.sendAPDU(APDU);
-        Converter.getSWmeaning(response.getBytes());
-        return response.getBytes();
+        int size = new FileInfo(rApduFromGetResponse).getSize();
+        byte[] response = new byte[size + 2];
+        readBinary(0, size, response, 0);
+        response[size] = (byte) 0x90;
+        response[size + 1] = (byte) 0x00;
+        return response;
+    }
+
+    /**
+     * Reads entire transparent EF. EF is selected first, if it isn't
+     * selected already.
+     *
+     * @param EF transparent EF that is to be read
+     * @return content of EF, without Status Word
+     * @throws CardException if there was problem communicating with card
+     * @throws BadStatusWordException if card has returned Status Word
+     * indicating process aborted.
+     */
+    public byte[] readBinary(EF EF) throws CardException, BadStatusWordException {
+        return readBinary(EF, 0, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Reads part of transparent EF, for example only one field of it. EF is
+     * selected first, if it isn't selected already. If requested part reaches
+     * beyond end of EF, only bytes up to end of EF are read. Selection and all
+     * READ BINARY commands run in one exclusive scope, failed communication is
+     * retried, see MAX_RETRIES.
+     *
+     * @param EF transparent EF that is to be read
+     * @param offset offset of first byte that is to be read
+     * @param length number of bytes that are to be read
+     * @return requested bytes of EF, without Status Word
+     * @throws CardException if there was problem communicating with card
+     * @throws BadStatusWordException if card has returned Status Word
+     * indicating process aborted.
+     */
+    public byte[] readBinary(EF EF, int offset, int length) throws CardException, BadStatusWordException {
+        for (int attempt = 0;; attempt++) {
+            try {
+                return readBinaryOnce(EF, offset, length);
+            } catch (CardException ex) {
+                recover(ex, attempt);
+            }
+        }
+    }
+
+    private byte[] readBinaryOnce(EF EF, int offset, int length) throws CardException, BadStatusWordException {
+        CardSession session = manager.getSession();
+        session.beginExclusive();
+        try {
+            int size = selectWithInfoOnce(EF).getSize();
+            if (offset < 0 || offset > size) {
+                throw new IllegalArgumentException("Offset " + offset + " is outside of " + EF.getShortName());
+            }
+            length = Math.min(length, size - offset);
+            byte[] data = new byte[length];
+            readBinary(offset, length, data, 0);
+            return data;
+        } finally {
+            session.endExclusive();
+        }
+    }
+
+    /**
+     * Reads bytes of currently selected transparent EF into given buffer.
+     * Request is split into READ BINARY commands of at most
+     * MAX_LENGTH_OF_DATA bytes.
+     *
+     * @param offset offset in EF of first byte that is to be read
+     * @param length number of bytes that are to be read
+     * @param buffer buffer where bytes are written
+     * @param bufferOffset position in buffer where first byte is written
+     * @throws CardException if there was problem communicating with card
+     * @throws BadStatusWordException if card has returned Status Word
+     * indicating process aborted.
+     */
+    public void readBinary(int offset, int length, byte[] buffer, int bufferOffset) throws CardException, BadStatusWordException {
+        if (offset + length > MAX_OFFSET + 1) {
+            throw new IllegalArgumentException("READ BINARY can only address first " + (MAX_OFFSET + 1) + " bytes");
+        }
+        System.arraycopy(READ_BINARY, 0, command, 0, READ_BINARY.length);
+        while (length > 0) {
+            int chunk = Math.min(length, MAX_LENGTH_OF_DATA);
+            command[2] = (byte) (offset >>> 8);
+            command[3] = (byte) offset;
+            command[4] = (byte) chunk;
+            if (!isSuccess(transceive(5, true))) {
+                throw badStatusWord();
+            }
+            if (responseLength - 2 != chunk) {
+                throw new BadStatusWordException("READ BINARY returned " + (responseLength - 2) + " instead of " + chunk + " bytes");
+            }
+            System.arraycopy(response, 0, buffer, bufferOffset, chunk);
+            offset += chunk;
+            bufferOffset += chunk;
+            length -= chunk;
+        }
     }
 
     /**
@@ -121,17 +413,255 @@ public class ApduWorker {
         if (rApduFromGetResponse.length == 0) {
             throw new NullPointerException("input can't be null");
         }
-        byte APDU[] = new byte[5];
-        System.arraycopy(READ_RECORD, 0, APDU, 0, READ_RECORD.length);
-        APDU[2] = (byte) numberOfRecord;
-        APDU[3] = (byte) 0x04;//0x04 == absolute mode; 0x02 == next;
-        APDU[4] = rApduFromGetResponse[rApduFromGetResponse.length - 3];
-        ResponseAPDU response = manager.sendAPDU(APDU);
+        int length = new FileInfo(rApduFromGetResponse).getRecordLength();
+        byte[] record = new byte[length];
+        readRecord(numberOfRecord, length, record, 0);
+
+        return record;
+    }
+
+    /**
+     * Reads one record of given linear fixed or cyclic EF. EF is selected
+     * first, if it isn't selected already, in the same exclusive scope. Length
+     * of record is taken from FileInfo of EF. Failed communication is
+     * retried, see MAX_RETRIES.
+     *
+     * @param EF linear fixed or cyclic EF
+     * @param numberOfRecord sequential number of record that is to be read
+     * @return content of record, without Status Word
+     * @throws CardException if there was problem communicating with card
+     * @throws BadStatusWordException if card has returned Status Word
+     * indicating process aborted.
+     */
+    public byte[] readRecord(EF EF, int numberOfRecord) throws CardException, BadStatusWordException {
+        for (int attempt = 0;; attempt++) {
+            try {
+                return readRecordOnce(EF, numberOfRecord);
+            } catch (CardException ex) {
+                recover(ex, attempt);
+            }
+        }
+    }
+
+    private byte[] readRecordOnce(EF EF, int numberOfRecord) throws CardException, BadStatusWordException {
+        CardSession session = manager.getSession();
+        session.beginExclusive();
+        try {
+            int length = selectWithInfoOnce(EF).getRecordLength();
+            byte[] record = new byte[length];
+            readRecord(numberOfRecord, length, record, 0);
+            return record;
+        } finally {
+            session.endExclusive();
+        }
+    }
+
+    /**
+     * Reads all records of given linear fixed or cyclic EF into one array,
+     * record after record. Array is allocated once from FileInfo of EF and
+     * records are read straight into it. Selection and all READ RECORD
+     * commands run in one exclusive scope, failed communication is retried,
+     * see MAX_RETRIES.
+     *
+     * @param EF linear fixed or cyclic EF
+     * @return all records of EF, number of records times length of record
+     * bytes
+     * @throws CardException if there was problem communicating with card
+     * @throws BadStatusWordException if card has returned Status Word
+     * indicating process aborted.
+     */
+    public byte[] readRecords(EF EF) throws CardException, BadStatusWordException {
+        for (int attempt = 0;; attempt++) {
+            try {
+                return readRecordsOnce(EF);
+            } catch (CardException ex) {
+                recover(ex, attempt);
+            }
+        }
+    }
+
+    private byte[] readRecordsOnce(EF EF) throws CardException, BadStatusWordException {
+        CardSession session = manager.getSession();
+        session.beginExclusive();
+        try {
+            FileInfo info = selectWithInfoOnce(EF);
+            int length = info.getRecordLength();
+            int numberOfRecords = info.getNumberOfRecords();
+            byte[] records = new byte[numberOfRecords * length];
+            for (int i = 0; i < numberOfRecords; i++) {
+                readRecord(i + 1, length, records, i * length);
+            }
+            return records;
+        } finally {
+            session.endExclusive();
+        }
+    }
+
+    /**
+     * Reads one record of currently selected linear fixed or cyclic EF into
+     * given buffer. Nothing is allocated, so it can be used for reading of
+     * many records into one buffer. Record has to be returned whole, shorter
+     * or longer record is an error.
+     *
+     * @param numberOfRecord sequential number of record that is to be read
+     * @param length length of one record
+     * @param buffer buffer where record is written
+     * @param bufferOffset position in buffer where first byte of record is
+     * written
+     * @throws CardException if there was problem communicating with card
+     * @throws BadStatusWordException if card has returned Status Word
+     * indicating process aborted.
+     */
+    public void readRecord(int numberOfRecord, int length, byte[] buffer, int bufferOffset) throws CardException, BadStatusWordException {
+        System.arraycopy(READ_RECORD, 0, command, 0, READ_RECORD.length);
+        command[2] = (byte) numberOfRecord;
+        command[3] = (byte) 0x04;//0x04 == absolute mode; 0x02 == next;
+        command[4] = (byte) length;
+
+        if (!isSuccess(transceive(5, true))) {
+            throw badStatusWord();
+        }
+        if (responseLength - 2 != length) {
+            throw new BadStatusWordException("READ RECORD returned " + (responseLength - 2) + " instead of " + length + " bytes");
+        }
+        System.arraycopy(response, 0, buffer, bufferOffset, length);
+    }
 
-        if (response.getSW1() != 0x90) {
-            throw new BadStatusWordException(Converter.getSWmeaning(response.getBytes()));
+    /**
+     * Sends command APDU prepared in command buffer and handles Status Words
+     * that ask for another command, so caller always gets final answer:
+     * <p>'6Cxx' - wrong length, command is sent again with Le = xx
+     * <p>'61xx' or '9Fxx' - xx bytes of response are available, if
+     * fetchResponse is true they are fetched with GET RESPONSE
+     *
+     * @param length length of command APDU
+     * @param fetchResponse true if response data are wanted
+     * @return final Status Word
+     * @throws CardException if there was problem communicating with card
+     */
+    private int transceive(int length, boolean fetchResponse) throws CardException {
+        int statusWord = exchange(length);
+        if ((statusWord >>> 8) == 0x6C && length == 5) {
+            command[4] = (byte) statusWord;
+            statusWord = exchange(5);
+        }
+        if (fetchResponse && hasResponseData(statusWord)) {
+            statusWord = fetchResponse(statusWord & 0xff);
         }
+        return statusWord;
+    }
+
+    /**
+     * Sends GET RESPONSE command for given number of bytes, correcting its
+     * length if card answers '6Cxx'.
+     */
+    private int fetchResponse(int length) throws CardException {
+        System.arraycopy(GET_RESPONSE, 0, command, 0, GET_RESPONSE.length);
+        command[4] = (byte) length;
+        return transceive(5, false);
+    }
+
+    /**
+     * Determines whether command was executed successfully - '9000', or
+     * '91xx' when card has proactive command pending.
+     *
+     * @param statusWord Status Word of Response APDU
+     * @return true if command succeeded
+     */
+    public static boolean isSuccess(int statusWord) {
+        return (statusWord >>> 8) == 0x90 || (statusWord >>> 8) == 0x91;
+    }
+
+    private static boolean hasResponseData(int statusWord) {
+        return (statusWord >>> 8) == 0x9F || (statusWord >>> 8) == 0x61;
+    }
+
+    /**
+     * Sends command APDU which is prepared in command buffer of session and
+     * leaves Response APDU in response buffer of session. Buffers are reused
+     * for every command, so nothing is allocated.
+     *
+     * @param length length of command APDU
+     * @return Status Word of Response APDU
+     * @throws CardException if there was problem communicating with card
+     */
+    private int exchange(int length) throws CardException {
+        CardSession session = manager.getSession();
+        ByteBuffer commandBuffer = session.getCommandBuffer();
+        ByteBuffer responseBuffer = session.getResponseBuffer();
+        //templates are in GSM class; class of session replaces it, and as
+        //javax.smartcardio doesn't change proprietary class 'A0', logical
+        //channel is set here as well
+        command[0] = (byte) (session.getCommandClass() | session.getChannelNumber());
+        commandBuffer.clear();
+        commandBuffer.limit(length);
+        responseBuffer.clear();
+        try {
+            responseLength = manager.transmit(commandBuffer, responseBuffer);
+        } catch (CardException ex) {
+            responseLength = 0;
+            session.invalidateSelection();
+            throw ex;
+        }
+        if (responseLength < 2) {
+            session.invalidateSelection();
+            throw new CardException("Response APDU without Status Word");
+        }
+        return ((response[responseLength - 2] & 0xff) << 8) | (response[responseLength - 1] & 0xff);
+    }
+
+    /**
+     * Returns Status Word of last Response APDU, for example to find out why
+     * BadStatusWordException was thrown.
+     *
+     * @return Status Word, 0 if no Response APDU has been received
+     */
+    public int getLastStatusWord() {
+        if (responseLength < 2) {
+            return 0;
+        }
+        return ((response[responseLength - 2] & 0xff) << 8) | (response[responseLength - 1] & 0xff);
+    }
+
+    /**
+     * Returns copy of last Response APDU, including Status Word.
+     */
+    private byte[] responseBytes() {
+        return Arrays.copyOf(response, responseLength);
+    }
+
+    /**
+     * Decides whether failed idempotent operation is retried and prepares
+     * session for it by warm reconnect. Status Words returned by card, APDU
+     * timeouts, parked readers and removed cards are not retried, neither are
+     * logical channels, which can't be reconnected on their own. Card that
+     * hasn't answered in time is not retried, because every retry would wait
+     * for whole APDU timeout again.
+     *
+     * @param ex exception thrown by operation
+     * @param attempt number of attempts that have failed, minus one
+     * @throws CardException given exception if operation is not retried, or
+     * exception thrown while reconnecting
+     */
+    private void recover(CardException ex, int attempt) throws CardException {
+        CardSession session = manager.getSession();
+        if (ex instanceof BadStatusWordException || ex instanceof ApduTimeoutException
+                || ex instanceof ReaderParkedException || ex instanceof CardNotPresentException || attempt >= MAX_RETRIES
+                || session.isLogicalChannel() || session.getTerminal() == null) {
+            throw ex;
+        }
+        try {
+            Thread.sleep(RETRY_BACKOFF << attempt);
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            throw ex;
+        }
+        Logger.getLogger(ApduWorker.class.getName()).log(Level.WARNING, "Retrying after reconnect: " + ex.getMessage());
+        session.reconnect(false);
+    }
 
-        return response.getData();
+    private BadStatusWordException badStatusWord() {
+        manager.getSession().invalidateSelection();
+        return new BadStatusWordException(Converter.getSWmeaning(responseBytes()));
     }
 }
@@ -0,0 +1,21 @@
+package cz.muni.fi.uco359952.simplesimreader;
+
+/**
+ * Work that is done with one connected card, for example reading of data
+ * without authentication. Jobs are run by ReaderFarm, every job gets session
+ * that is already connected to card.
+ *
+ * @param <T> type of result of job
+ * @author Andrej Simko
+ */
+public interface CardJob<T> {
+
+    /**
+     * Does the work with card in given session.
+     *
+     * @param session session connected to card
+     * @return result of job
+     * @throws Exception if job couldn't be finished
+     */
+    T run(CardSession session) throws Exception;
+}
@@ -0,0 +1,25 @@
+package cz.muni.fi.uco359952.simplesimreader;
+
+/**
+ * Gets notified about cards in terminals - when job with inserted card has
+ * finished and when card has been removed.
+ *
+ * @param <T> type of result of job
+ * @author Andrej Simko
+ */
+public interface CardListener<T> {
+
+    /**
+     * Called from worker of terminal after job with card has finished.
+     *
+     * @param result result of job
+     */
+    void cardRead(FarmResult<T> result);
+
+    /**
+     * Called after card has been removed from terminal.
+     *
+     * @param terminalName name of terminal
+     */
+    void cardRemoved(String terminalName);
+}
@@ -4,68 +4,67 @@ import cz.muni.fi.uco359952.simplesimreader.exceptions.WrongPINException;
 import cz.muni.fi.uco359952.simplesimreader.exceptions.NoReaderFoundException;
 import cz.muni.fi.uco359952.simplesimreader.exceptions.WrongPINCharactersException;
 import cz.muni.fi.uco359952.simplesimreader.exceptions.WrongLengthOfPINException;
+import cz.muni.fi.uco359952.simplesimreader.trace.TraceRecorder;
 import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
 import java.util.List;
 import javax.smartcardio.*;
 
 /**
- * Maintains connection do terminal and card itself, verifies PIN and sends APDU
- * commands created by class ApduWorker.
+ * Maintains connection do terminal and card itself through CardSession,
+ * verifies PIN and sends APDU commands created by class ApduWorker.
  *
  * @author Andrej Simko
  */
 public class CardManager {
 
-    private static CardTerminal m_terminal = null;
-    private static CardChannel m_channel = null;
-    private static Card m_card = null;
+    private final CardSession session;
+
+    /**
+     * Creates CardManager with its own session, which is bound to terminal
+     * during ConnectToCard().
+     */
+    public CardManager() {
+        this(new CardSession());
+    }
+
     /**
-     * Stores Answer to Response from card.
+     * Creates CardManager that communicates through given session.
+     *
+     * @param session session with terminal and card
      */
-    public static byte m_ATR[] = null;
+    public CardManager(CardSession session) {
+        this.session = session;
+    }
 
     /**
-     * Connects to card in first terminal that is found and sends reset to card.
+     * Connects to card and sends reset to card. If session is already bound
+     * to terminal, connects to card in that terminal, otherwise connects to
+     * card in first terminal that has card inside. Empty and parked terminals
+     * are skipped.
      *
      * @return true if connection to card was successful, false if there was
      * problem
      * @throws NoReaderFoundException if no PC/SC reader was found
      * @throws CardException if there was error that occurred during
      * communication with the Smart Card stack or the card itself
-     * @throws CardNotPresentException if no card was found in first terminal
+     * @throws CardNotPresentException if no card was found in any terminal
      */
     public boolean ConnectToCard() throws NoReaderFoundException, CardException, CardNotPresentException {
-        List terminalList = null;
-        boolean terminalFound = false;
-        try {
-            terminalList = GetReaderList();
-            terminalFound = true;
-
-        } catch (NoReaderFoundException e) {
-            throw e;
+        if (session.getTerminal() != null) {
+            return session.connect();
         }
+        List terminalList = GetReaderList();
 
-        //List numbers of Card readers
-        boolean cardFound = false;
         for (int i = 0; i < terminalList.size(); i++) {
-            //    System.out.println("Terminal n." + i + " : " + terminalList.get(i));
-            m_terminal = (CardTerminal) terminalList.get(i);
-            if (!m_terminal.isCardPresent()) {
-                throw new CardNotPresentException("No card present");
-            } else {
-                m_card = m_terminal.connect("*");
-                m_channel = m_card.getBasicChannel();
-                m_ATR = m_card.getATR().getBytes(); //resets the card
-                if (m_card != null) {
-                    cardFound = true;
-                }
-                if (m_card == null) {
-                    throw new CardNotPresentException("No card present");
-                }
+            CardTerminal terminal = (CardTerminal) terminalList.get(i);
+            if (terminal.isCardPresent() && ReaderHealth.of(terminal.getName()).isAvailable()) {
+                session.setTerminal(terminal);
+                return session.connect();
             }
         }
-
-        return cardFound;
+        throw new CardNotPresentException("No card present");
     }
 
     /**
@@ -77,43 +76,80 @@ public class CardManager {
      * @throws CardException if there was error in communicating with card.
      */
     public ResponseAPDU sendAPDU(byte apdu[]) throws CardException {
-        CommandAPDU commandAPDU = new CommandAPDU(apdu);
-        ResponseAPDU responseAPDU = m_channel.transmit(commandAPDU);
-        return (responseAPDU);
+        ByteBuffer response = ByteBuffer.allocate(CardSession.RESPONSE_BUFFER_SIZE);
+        int length = transmit(ByteBuffer.wrap(apdu), response);
+        return new ResponseAPDU(Arrays.copyOf(response.array(), length));
     }
 
     /**
-     * Disconnects session from card.
+     * Transmits command APDU from given buffer and writes Response APDU into
+     * another buffer. Nothing is allocated, so this is used for commands that
+     * are sent often, like READ RECORD.
+     *
+     * @param command buffer with command APDU between its position and limit
+     * @param response buffer for Response APDU, with at least
+     * CardSession.RESPONSE_BUFFER_SIZE bytes remaining
+     * @return length of Response APDU, including Status Word
+     * @throws CardException if there was error in communicating with card.
+     */
+    public int transmit(ByteBuffer command, ByteBuffer response) throws CardException {
+        TraceRecorder recorder = session.getTraceRecorder();
+        if (recorder == null) {
+            return session.transmit(command, response);
+        }
+        ByteBuffer sent = command.duplicate();
+        int start = response.position();
+        long timestamp = System.currentTimeMillis();
+        long begin = System.nanoTime();
+        int length;
+        try {
+            length = session.transmit(command, response);
+        } catch (CardException ex) {
+            recorder.recordExchange(session.getTraceId(), timestamp, System.nanoTime() - begin, sent, null);
+            throw ex;
+        }
+        long elapsed = System.nanoTime() - begin;
+        ByteBuffer received = response.duplicate();
+        received.limit(start + length);
+        received.position(start);
+        recorder.recordExchange(session.getTraceId(), timestamp, elapsed, sent, received);
+        return length;
+    }
+
+    /**
+     * Disconnects session from card, card is left as it is.
      *
      * @throws CardException if there was error that occurred during
      * communication with the Smart Card stack or the card itself
      */
     public void DisconnectFromCard() throws CardException {
-        if (m_card != null) {
-            m_card.disconnect(false);
-            m_card = null;
-        }
+        DisconnectFromCard(false);
+    }
+
+    /**
+     * Disconnects session from card.
+     *
+     * @param reset true if card is to be reset, so verified PIN is no longer
+     * valid
+     * @throws CardException if there was error that occurred during
+     * communication with the Smart Card stack or the card itself
+     */
+    public void DisconnectFromCard(boolean reset) throws CardException {
+        session.disconnect(reset);
     }
 
     /**
      * Returns List of all avaliable PC/SC readers connected to computer if
-     * there are any, throws NoReaderFoundException if there are none.
+     * there are any, throws NoReaderFoundException if there are none. Readers
+     * are taken from TerminalRegistry, so they are not enumerated again on
+     * every connection.
      *
      * @return List of all avaliable PC/SC readers connected to computer.
      * @throws NoReaderFoundException if no device is found to be connected to
      * computer.
      */
     public List GetReaderList() throws NoReaderFoundException {
-        try {
-            TerminalFactory factory = TerminalFactory.getDefault();
-            List readersList = factory.terminals().list();
-            if (readersList.isEmpty()) {
-                throw new NoReaderFoundException();
-            }
-            return readersList;
-        } catch (CardException | NoReaderFoundException ex) {
-            throw new NoReaderFoundException();
-        }
+        return TerminalRegistry.getDefault().list();
     }
 
     /**
@@ -164,6 +200,7 @@ public class CardManager {
 
         byte apduToVerifyPin[] = new byte[13];
         byte prefix[] = {(byte) 0xa0, (byte) 0x20, (byte) 0x00, (byte) 0x01, (byte) 0x08};
+        prefix[0] = session.getCommandClass();
         System.arraycopy(prefix, 0, apduToVerifyPin, 0, prefix.length);
         System.arraycopy(pin, 0, apduToVerifyPin, 5, pin.length);
 
@@ -172,37 +209,51 @@ public class CardManager {
             apduToVerifyPin[i] = (byte) 0xff;
         }
 
-        ResponseAPDU response = sendAPDU(apduToVerifyPin);
-        if (response.getSW() == 0x9000) {
+        ResponseAPDU response;
+        try {
+            response = sendAPDU(apduToVerifyPin);
+        } finally {
+            session.invalidateSecurityStatus(); //counter of tries left has changed
+        }
+        if (ApduWorker.isSuccess(response.getSW())) {
             return true;
         }
         throw new WrongPINException();
     }
 
     /**
-     * Getter for m_card
+     * Getter for session
+     *
+     * @return session this CardManager communicates through
+     */
+    public CardSession getSession() {
+        return session;
+    }
+
+    /**
+     * Getter for card
      *
      * @return card
      */
-    public static Card getCard() {
-        return m_card;
+    public Card getCard() {
+        return session.getCard();
     }
 
     /**
-     * Getter for m_channel
+     * Getter for channel
      *
      * @return channel
      */
-    public static CardChannel getChannel() {
-        return m_channel;
+    public CardChannel getChannel() {
+        return session.getChannel();
     }
 
     /**
-     * Getter for m_terminal
+     * Getter for terminal
      *
      * @return terminal
      */
-    public static CardTerminal getTerminal() {
-        return m_terminal;
+    public CardTerminal getTerminal() {
+        return session.getTerminal();
     }
 }
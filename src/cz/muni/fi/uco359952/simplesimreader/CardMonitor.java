@@ -0,0 +1,225 @@
+package cz.muni.fi.uco359952.simplesimreader;
+
+import cz.muni.fi.uco359952.simplesimreader.exceptions.NoReaderFoundException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.smartcardio.CardException;
+import javax.smartcardio.CardTerminal;
+import javax.smartcardio.CardTerminals;
+import javax.smartcardio.CardTerminals.State;
+
+/**
+ * Waits for cards to be inserted into or removed from terminals. When card is
+ * inserted, job is started in ReaderFarm, when card is removed, its session is
+ * torn down. Changes are waited for by PC/SC in waitForChange(), but one
+ * wait lasts at most timeout (1 second by default), so monitor polls
+ * terminals that often - blocked wait of SunPCSC can't be interrupted, and
+ * monitor checks for stop() between waits. Every change also refreshes
+ * TerminalRegistry, so readers that have been attached or detached are known
+ * to it.
+ * <p>Failure of PC/SC, for example reader detached during wait, doesn't end
+ * monitor: it is logged, monitor waits (longer after every failure in a row,
+ * up to MAX_BACKOFF), refreshes TerminalRegistry and compares cards present
+ * with ones it knows of, so cards inserted or removed meanwhile are not
+ * missed. Lost PC/SC context is not recovered, see TerminalRegistry; monitor
+ * then keeps failing until it is stopped.
+ *
+ * @param <T> type of result of job
+ * @author Andrej Simko
+ */
+public class CardMonitor<T> implements Runnable {
+
+    /**
+     * Time in milliseconds monitor waits after first failure of PC/SC.
+     */
+    public static final long MIN_BACKOFF = 100;
+    /**
+     * Longest time in milliseconds monitor waits after failure of PC/SC.
+     */
+    public static final long MAX_BACKOFF = 10000;
+    private final TerminalRegistry registry;
+    private final CardTerminals terminals;
+    private final ReaderFarm farm;
+    private final CardJob<T> job;
+    private final CardListener<T> listener;
+    private final Map<String, CardTerminal> cardsPresent = new HashMap<>();
+    private long timeout = 1000;
+    private volatile boolean running = false;
+
+    /**
+     * Creates CardMonitor over terminals of default TerminalRegistry.
+     *
+     * @param farm ReaderFarm that runs jobs with inserted cards
+     * @param job job that is run with every inserted card
+     * @param listener listener that gets results of jobs and removals of cards
+     */
+    public CardMonitor(ReaderFarm farm, CardJob<T> job, CardListener<T> listener) {
+        this(TerminalRegistry.getDefault(), farm, job, listener);
+    }
+
+    /**
+     * Creates CardMonitor over terminals of given TerminalRegistry.
+     *
+     * @param registry registry whose terminals are watched
+     * @param farm ReaderFarm that runs jobs with inserted cards
+     * @param job job that is run with every inserted card
+     * @param listener listener that gets results of jobs and removals of cards
+     */
+    public CardMonitor(TerminalRegistry registry, ReaderFarm farm, CardJob<T> job, CardListener<T> listener) {
+        this.registry = registry;
+        this.terminals = registry.getCardTerminals();
+        this.farm = farm;
+        this.job = job;
+        this.listener = listener;
+    }
+
+    /**
+     * Starts jobs with cards that are already inserted and then waits for
+     * insertions and removals until stop() is called.
+     */
+    @Override
+    public void run() {
+        running = true;
+        long backoff = MIN_BACKOFF;
+        boolean synchronizedCards = false;
+        try {
+            while (running) {
+                try {
+                    if (!synchronizedCards) {
+                        synchronizeCards();
+                        synchronizedCards = true;
+                    }
+                    if (!terminals.waitForChange(timeout)) {
+                        backoff = MIN_BACKOFF;
+                        continue;
+                    }
+                    try {
+                        registry.refresh();
+                    } catch (NoReaderFoundException ex) {
+                        //all readers have been detached
+                    }
+                    for (CardTerminal terminal : terminals.list(State.CARD_REMOVAL)) {
+                        cardRemoved(terminal.getName());
+                    }
+                    for (CardTerminal terminal : terminals.list(State.CARD_INSERTION)) {
+                        cardInserted(terminal);
+                    }
+                    backoff = MIN_BACKOFF;
+                } catch (CardException ex) {
+                    Logger.getLogger(CardMonitor.class.getName()).log(Level.WARNING, "Waiting for cards failed, trying again in {0} ms: {1}", new Object[]{backoff, ex.getMessage()});
+                    if (!pause(backoff)) {
+                        break;
+                    }
+                    backoff = Math.min(2 * backoff, MAX_BACKOFF);
+                    try {
+                        registry.refresh();
+                    } catch (NoReaderFoundException again) {
+                        //readers are waited for as well
+                    }
+                    synchronizedCards = false;
+                }
+            }
+        } finally {
+            running = false;
+        }
+    }
+
+    /**
+     * Starts jobs with cards that are present and are not known yet, and
+     * reports removal of known cards that are no longer present.
+     */
+    private void synchronizeCards() throws CardException {
+        Set<String> present = new HashSet<>();
+        for (CardTerminal terminal : terminals.list(State.CARD_PRESENT)) {
+            present.add(terminal.getName());
+            cardInserted(terminal);
+        }
+        for (String name : new ArrayList<>(cardsPresent.keySet())) {
+            if (!present.contains(name)) {
+                cardRemoved(name);
+            }
+        }
+    }
+
+    /**
+     * Waits after failure, stop() ends waiting.
+     *
+     * @return false if monitor has been stopped or interrupted meanwhile
+     */
+    private synchronized boolean pause(long time) {
+        try {
+            if (running) {
+                wait(time);
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+        return running;
+    }
+
+    /**
+     * Starts new daemon thread with this CardMonitor.
+     *
+     * @return started thread
+     */
+    public Thread start() {
+        Thread thread = new Thread(this, "CardMonitor");
+        thread.setDaemon(true);
+        thread.start();
+        return thread;
+    }
+
+    /**
+     * Stops waiting for changes. Monitor ends at latest after timeout.
+     */
+    public synchronized void stop() {
+        running = false;
+        notifyAll();
+    }
+
+    /**
+     * Determines whether monitor is waiting for changes.
+     *
+     * @return true if monitor is running
+     */
+    public boolean isRunning() {
+        return running;
+    }
+
+    /**
+     * Setter for timeout of one wait for change, which is also period of
+     * polling of terminals. It affects how fast monitor ends after stop();
+     * with 0 monitor waits without timeout and may never notice stop().
+     *
+     * @param timeout timeout in milliseconds, 0 means to wait without timeout
+     */
+    public void setTimeout(long timeout) {
+        this.timeout = timeout;
+    }
+
+    private void cardInserted(CardTerminal terminal) {
+        if (!cardsPresent.containsKey(terminal.getName())) {
+            CardTerminal known = registry.find(terminal.getName());
+            if (known == null) {
+                known = terminal;
+            }
+            cardsPresent.put(known.getName(), known);
+            farm.submit(known, job, listener);
+        }
+    }
+
+    private void cardRemoved(String name) {
+        CardTerminal terminal = cardsPresent.remove(name);
+        if (terminal != null) {
+            farm.abort(terminal);
+            listener.cardRemoved(name);
+        }
+    }
+
+}
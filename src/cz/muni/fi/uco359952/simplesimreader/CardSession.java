@@ -0,0 +1,911 @@
+package cz.muni.fi.uco359952.simplesimreader;
+
+import cz.muni.fi.uco359952.simplesimreader.data.DF;
+import cz.muni.fi.uco359952.simplesimreader.data.EF;
+import cz.muni.fi.uco359952.simplesimreader.data.FileInfo;
+import cz.muni.fi.uco359952.simplesimreader.data.SecurityStatus;
+import cz.muni.fi.uco359952.simplesimreader.exceptions.ApduTimeoutException;
+import cz.muni.fi.uco359952.simplesimreader.exceptions.ReaderParkedException;
+import cz.muni.fi.uco359952.simplesimreader.trace.TraceRecorder;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.smartcardio.Card;
+import javax.smartcardio.CardChannel;
+import javax.smartcardio.CardException;
+import javax.smartcardio.CardNotPresentException;
+import javax.smartcardio.CardTerminal;
+
+/**
+ * Holds everything that belongs to one connection with one card - terminal,
+ * card, channel, Answer To Reset and currently selected file. Every terminal
+ * has its own CardSession, so one process can communicate with more cards at
+ * once.
+ *
+ * @author Andrej Simko
+ */
+public class CardSession {
+
+    /**
+     * Size of the longest command APDU - header, Lc, 255 bytes of data and
+     * Le.
+     */
+    public static final int COMMAND_BUFFER_SIZE = 261;
+    /**
+     * Size of the longest Response APDU - 256 bytes of data and Status Word.
+     */
+    public static final int RESPONSE_BUFFER_SIZE = 258;
+    /**
+     * Default time in milliseconds card has to answer one APDU, can be set by
+     * system property "simplesimreader.apduTimeout"; 0 means no limit.
+     */
+    public static final long DEFAULT_APDU_TIMEOUT = Long.getLong("simplesimreader.apduTimeout", 5000);
+    /**
+     * Period in milliseconds in which watchdog checks deadlines of APDUs, so
+     * connection is dropped at most this much later than APDU timeout says.
+     */
+    public static final long WATCHDOG_PERIOD = 100;
+    /**
+     * Watchdog that drops connections of cards which haven't answered in time.
+     */
+    static final ScheduledExecutorService WATCHDOG = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, "CardSession watchdog");
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+    /**
+     * Sessions whose deadlines are checked by watchdog. Keys are weak, so
+     * session which is dropped without disconnect() is not kept here.
+     */
+    private static final Map<CardSession, Boolean> WATCHED = new WeakHashMap<>();
+
+    static {
+        WATCHDOG.scheduleWithFixedDelay(new Runnable() {
+
+            @Override
+            public void run() {
+                try {
+                    checkDeadlines();
+                } catch (RuntimeException ex) { //periodic task would not run again
+                    Logger.getLogger(CardSession.class.getName()).log(Level.SEVERE, null, ex);
+                }
+            }
+        }, WATCHDOG_PERIOD, WATCHDOG_PERIOD, TimeUnit.MILLISECONDS);
+    }
+    private CardTerminal terminal = null;
+    private volatile Card card = null;
+    private volatile CardChannel channel = null;
+    private byte[] ATR = null;
+    private DF selectedDF = null;
+    private EF selectedEF = null;
+    private FileInfo selectedEFInfo = null;
+    private final Map<EF, FileInfo> fileInfos;
+    private final EFCache cache;
+    private volatile SecurityStatus securityStatus = null;
+    private final CardSession parent;
+    private volatile byte commandClass = ApduWorker.GSM_CLASS;
+    private volatile long apduTimeout = DEFAULT_APDU_TIMEOUT;
+    private volatile long deadline = 0; //of APDU being transmitted, 0 if none is
+    private volatile boolean timedOut = false;
+    private volatile boolean aborted = false;
+    private volatile boolean watched = false;
+    private volatile TraceRecorder traceRecorder = TraceRecorder.getDefault();
+    private volatile int traceId = 0;
+    private final Object exclusiveLock = new Object();
+    private Thread exclusiveOwner = null;
+    private Card exclusiveCard = null;
+    private int exclusiveDepth = 0;
+    private boolean abandoned = false;
+    private int openLogicalChannels = 0;
+    private final ByteBuffer commandBuffer = ByteBuffer.allocate(COMMAND_BUFFER_SIZE);
+    private final ByteBuffer responseBuffer = ByteBuffer.allocate(RESPONSE_BUFFER_SIZE);
+
+    /**
+     * Creates session which is not yet bound to any terminal. Terminal is
+     * chosen later by CardManager.
+     */
+    public CardSession() {
+        this((CardTerminal) null);
+    }
+
+    /**
+     * Creates session bound to given terminal.
+     *
+     * @param terminal terminal with card this session communicates with
+     */
+    public CardSession(CardTerminal terminal) {
+        this.terminal = terminal;
+        this.fileInfos = new ConcurrentHashMap<>();
+        this.cache = new EFCache();
+        this.parent = null;
+    }
+
+    /**
+     * Creates session over logical channel of card that is connected in
+     * parent session. Card, Answer To Reset, FileInfos and EFCache are shared
+     * with parent session, selection state is not.
+     */
+    private CardSession(CardSession parent, CardChannel channel) {
+        this.parent = parent;
+        this.terminal = parent.terminal;
+        this.card = parent.card;
+        this.ATR = parent.ATR;
+        this.fileInfos = parent.fileInfos;
+        this.cache = parent.cache;
+        this.commandClass = parent.commandClass;
+        this.apduTimeout = parent.apduTimeout;
+        this.traceRecorder = parent.traceRecorder;
+        this.channel = channel;
+    }
+
+    /**
+     * Opens new logical channel to card of this session (MANAGE CHANNEL
+     * command). Returned session has its own selected DF and EF, so two DF
+     * trees can be read at once without selecting their DFs again and again.
+     *
+     * @return session over new logical channel
+     * @throws CardException if card doesn't support logical channels or has
+     * no free channel
+     */
+    public synchronized CardSession openLogicalChannel() throws CardException {
+        if (card == null) {
+            throw new CardException("Session is not connected to card");
+        }
+        CardSession root = getRoot();
+        synchronized (root.exclusiveLock) {
+            if (root.exclusiveOwner != null) {
+                throw new CardException("Logical channel can't be opened inside exclusive scope");
+            }
+            CardSession child = new CardSession(root, card.openLogicalChannel());
+            root.openLogicalChannels++;
+            return child;
+        }
+    }
+
+    /**
+     * Getter for number of logical channel of this session.
+     *
+     * @return number of logical channel, 0 for basic channel
+     */
+    public int getChannelNumber() {
+        CardChannel current = channel;
+        if (current == null) {
+            return 0;
+        }
+        return current.getChannelNumber();
+    }
+
+    /**
+     * Getter for class byte used in commands of this session.
+     *
+     * @return ApduWorker.GSM_CLASS ('A0') or ApduWorker.ISO_CLASS ('00')
+     */
+    public byte getCommandClass() {
+        return commandClass;
+    }
+
+    /**
+     * Setter for class byte used in commands of this session. SIM cards use
+     * GSM class 'A0', UICC cards use ISO class '00'. In ISO class SELECT asks
+     * for FCP template (P2 = '04') or for no data (P2 = '0C'), and FileInfo
+     * is parsed from FCP. Status of codes is only in GSM response of MF, so
+     * Getters.getSecurityStatus() returns null in ISO class.
+     *
+     * @param commandClass ApduWorker.GSM_CLASS or ApduWorker.ISO_CLASS
+     */
+    public void setCommandClass(byte commandClass) {
+        this.commandClass = commandClass;
+    }
+
+    /**
+     * Determines whether this session communicates over logical channel
+     * opened by openLogicalChannel().
+     *
+     * @return true if this session uses logical channel
+     */
+    public boolean isLogicalChannel() {
+        return parent != null;
+    }
+
+    /**
+     * Connects to card in terminal of this session and resets it. If session
+     * is connected already, its connection is ended first (without reset of
+     * card), so old card isn't left connected and its trace is ended.
+     *
+     * @return true if connection to card was successful
+     * @throws CardNotPresentException if there is no card in terminal
+     * @throws ReaderParkedException if terminal is parked by its ReaderHealth
+     * @throws CardException if there was error that occurred during
+     * communication with the Smart Card stack or the card itself
+     */
+    public synchronized boolean connect() throws CardException {
+        if (parent != null) {
+            throw new IllegalStateException("Session of logical channel can't be connected");
+        }
+        if (terminal == null) {
+            throw new IllegalStateException("Session is not bound to any terminal");
+        }
+        ReaderHealth health = getHealth();
+        if (!health.isAvailable()) {
+            throw new ReaderParkedException(terminal.getName());
+        }
+        if (card != null) {
+            try {
+                disconnect(false);
+            } catch (CardException | IllegalStateException ex) {
+                //connection is broken, new one replaces it anyway
+            }
+        }
+        try {
+            if (!terminal.isCardPresent()) {
+                throw new CardNotPresentException("No card present in " + terminal.getName());
+            }
+            card = terminal.connect("*");
+        } catch (CardException ex) {
+            if (isReaderFault(ex)) {
+                health.recordFailure();
+                TerminalRegistry.terminalFailed(terminal); //reader could have been detached
+            }
+            throw ex;
+        }
+        aborted = false;
+        channel = card.getBasicChannel();
+        ATR = card.getATR().getBytes(); //resets the card
+        invalidateSelection();
+        resetExclusive();
+        fileInfos.clear(); //card in terminal could have been changed
+        cache.clear();
+        securityStatus = null;
+        TraceRecorder recorder = traceRecorder;
+        if (recorder != null) {
+            traceId = TraceRecorder.nextSessionId();
+            recorder.recordSession(traceId, terminal.getName(), ATR);
+        }
+        return card != null;
+    }
+
+    /**
+     * Disconnects from card and connects to it again. Warm reconnect keeps
+     * card powered, so verified PIN stays valid; reset makes card start from
+     * scratch, so PIN has to be verified again.
+     *
+     * @param reset true if card is to be reset
+     * @return true if connection to card was successful
+     * @throws CardNotPresentException if card has been removed
+     * @throws ReaderParkedException if terminal is parked by its ReaderHealth
+     * @throws CardException if connection can't be established again
+     */
+    public synchronized boolean reconnect(boolean reset) throws CardException {
+        if (parent != null) {
+            throw new IllegalStateException("Session of logical channel can't be reconnected");
+        }
+        try {
+            disconnect(reset);
+        } catch (CardException ex) {
+            //connection is broken, that is why it is being reconnected
+        }
+        return connect();
+    }
+
+    /**
+     * Disconnects from card, if there is any connected, without resetting it.
+     * Session of logical channel only closes its channel.
+     *
+     * @throws CardException if there was error that occurred during
+     * communication with the Smart Card stack or the card itself
+     */
+    public void disconnect() throws CardException {
+        disconnect(false);
+    }
+
+    /**
+     * Disconnects from card, if there is any connected. Session of logical
+     * channel only closes its channel.
+     *
+     * @param reset true if card is to be reset
+     * @throws CardException if there was error that occurred during
+     * communication with the Smart Card stack or the card itself
+     */
+    public synchronized void disconnect(boolean reset) throws CardException {
+        if (parent != null) {
+            if (channel != null) {
+                try {
+                    channel.close();
+                } finally {
+                    card = null;
+                    channel = null;
+                    invalidateSelection();
+                    synchronized (parent.exclusiveLock) {
+                        parent.openLogicalChannels--;
+                    }
+                }
+            }
+            return;
+        }
+        if (card != null) {
+            try {
+                card.disconnect(reset);
+            } finally {
+                card = null;
+                channel = null;
+                invalidateSelection();
+                resetExclusive();
+                endTrace();
+            }
+        }
+    }
+
+    private void endTrace() {
+        TraceRecorder recorder = traceRecorder;
+        if (recorder != null && traceId != 0) {
+            recorder.recordEnd(traceId);
+        }
+        traceId = 0;
+    }
+
+    /**
+     * Transmits command APDU over channel of this session.
+     *
+     * @param command buffer with command APDU between its position and limit
+     * @param response buffer for Response APDU, with at least
+     * RESPONSE_BUFFER_SIZE bytes remaining
+     * @return length of Response APDU, including Status Word
+     * @throws ApduTimeoutException if card hasn't answered within APDU timeout,
+     * session is disconnected then
+     * @throws ReaderParkedException if terminal is parked by its ReaderHealth
+     * @throws CardException if there is no connection or there was error in
+     * communicating with card
+     */
+    public int transmit(ByteBuffer command, ByteBuffer response) throws CardException {
+        CardChannel current = channel;
+        if (current == null) {
+            throw new CardException("Session is not connected to card");
+        }
+        ReaderHealth health = getHealth();
+        if (!health.isAvailable()) {
+            throw new ReaderParkedException(terminal.getName());
+        }
+        cache.beforeTransmit(command, selectedEF);
+        try {
+            int length = transmitWithTimeout(current, command, response);
+            health.recordSuccess();
+            return length;
+        } catch (CardException ex) {
+            if (isReaderFault(ex)) {
+                health.recordFailure();
+            }
+            throw ex;
+        }
+    }
+
+    /**
+     * Decides whether failure counts against ReaderHealth. Failures after
+     * abort() - APDU timeout, removal of card reported by CardMonitor, job
+     * timeout of ReaderFarm - don't, nor do ones when card is not present
+     * anymore. Status Words never get here, transmit doesn't check them.
+     */
+    private boolean isReaderFault(CardException ex) {
+        if (aborted || getRoot().aborted || ex instanceof ApduTimeoutException || ex instanceof CardNotPresentException) {
+            return false;
+        }
+        try {
+            return terminal.isCardPresent();
+        } catch (CardException again) {
+            return true; //reader can't even tell whether card is present
+        }
+    }
+
+    /**
+     * Transmits APDU with deadline that is checked by watchdog, see
+     * checkDeadlines(). Nothing is allocated per APDU, session is registered
+     * with watchdog once.
+     */
+    private int transmitWithTimeout(CardChannel current, ByteBuffer command, ByteBuffer response) throws CardException {
+        long timeout = apduTimeout;
+        if (timeout <= 0) {
+            return transmit(current, command, response);
+        }
+        if (!watched) {
+            synchronized (WATCHED) {
+                WATCHED.put(this, Boolean.TRUE);
+            }
+            watched = true;
+        }
+        timedOut = false;
+        deadline = System.currentTimeMillis() + timeout;
+        int length;
+        try {
+            length = transmit(current, command, response);
+        } catch (CardException ex) {
+            if (timedOut) {
+                throw new ApduTimeoutException(timeout);
+            }
+            throw ex;
+        } finally {
+            deadline = 0;
+        }
+        if (timedOut) {
+            throw new ApduTimeoutException(timeout);
+        }
+        return length;
+    }
+
+    /**
+     * Aborts sessions whose APDU has passed its deadline. Run by watchdog
+     * every WATCHDOG_PERIOD.
+     */
+    private static void checkDeadlines() {
+        long now = System.currentTimeMillis();
+        List<CardSession> expired = null;
+        synchronized (WATCHED) {
+            for (CardSession session : WATCHED.keySet()) {
+                long deadline = session.deadline;
+                if (deadline != 0 && now >= deadline) {
+                    if (expired == null) {
+                        expired = new ArrayList<>();
+                    }
+                    expired.add(session);
+                }
+            }
+        }
+        if (expired == null) {
+            return;
+        }
+        for (CardSession session : expired) {
+            long deadline = session.deadline;
+            if (deadline != 0 && now >= deadline) { //APDU hasn't been answered meanwhile
+                session.timedOut = true;
+                session.deadline = 0;
+                session.abort();
+            }
+        }
+    }
+
+    private static int transmit(CardChannel channel, ByteBuffer command, ByteBuffer response) throws CardException {
+        try {
+            return channel.transmit(command, response);
+        } catch (IllegalStateException ex) { //card has been disconnected or channel closed
+            throw new CardException(ex.getMessage(), ex);
+        }
+    }
+
+    /**
+     * Drops connection to card without waiting for command that is just being
+     * transmitted, so the thread which is blocked in transmit is freed and
+     * gets CardException. Can be called from any thread. Session of logical
+     * channel drops connection of entire card. Failures caused by abort don't
+     * count against ReaderHealth.
+     * <p>Card can't be disconnected by other thread while it is locked in
+     * exclusive scope. Blocked thread is abandoned then and reader is held
+     * parked by its ReaderHealth, so no other session gets the same locked
+     * card. When blocked thread returns and ends its exclusive scope, card is
+     * unlocked, disconnected and reader is released.
+     */
+    public void abort() {
+        aborted = true;
+        getRoot().aborted = true;
+        Card current = card;
+        card = null;
+        channel = null;
+        invalidateSelection();
+        if (current == null) {
+            return;
+        }
+        if (parent == null) {
+            endTrace();
+        }
+        CardSession root = getRoot();
+        synchronized (root.exclusiveLock) {
+            if (root.exclusiveOwner != null && !root.abandoned) {
+                root.abandoned = true;
+                getHealth().hold();
+                return;
+            }
+        }
+        final Card toDisconnect = current;
+        Thread thread = new Thread(new Runnable() {
+
+            @Override
+            public void run() {
+                try {
+                    toDisconnect.disconnect(false);
+                } catch (Exception ex) {
+                    //card is gone already
+                }
+            }
+        }, "CardSession abort " + this);
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Starts exclusive scope - until matching endExclusive(), no other process
+     * can communicate with card. Commands of one logical operation (SELECT,
+     * GET RESPONSE and READs) then run in one PC/SC transaction, without
+     * locking card for every command, and selection can't be changed by
+     * other process in the middle of operation.
+     * <p>Scopes can be nested, card is released by outermost endExclusive().
+     * While logical channels are open, scope doesn't lock card, because
+     * locked card only accepts commands from thread that has locked it.
+     *
+     * @throws CardException if session is not connected or card can't be
+     * locked
+     */
+    public void beginExclusive() throws CardException {
+        Card current = card;
+        if (current == null) {
+            throw new CardException("Session is not connected to card");
+        }
+        CardSession root = getRoot();
+        synchronized (root.exclusiveLock) {
+            if (root.exclusiveOwner == Thread.currentThread()) {
+                root.exclusiveDepth++;
+                return;
+            }
+            if (root.exclusiveOwner != null || root.openLogicalChannels > 0) {
+                return; //card is shared, scope has no effect
+            }
+            try {
+                current.beginExclusive();
+            } catch (IllegalStateException ex) { //card has been disconnected
+                throw new CardException(ex.getMessage(), ex);
+            }
+            root.exclusiveOwner = Thread.currentThread();
+            root.exclusiveCard = current;
+            root.exclusiveDepth = 1;
+        }
+    }
+
+    /**
+     * Ends exclusive scope started by beginExclusive(). If it is the
+     * outermost scope, card is released for other processes. Errors are
+     * ignored, connection that has been lost has released card anyway. If
+     * session has been aborted while card was locked, card is disconnected
+     * here and its reader is released, see abort().
+     */
+    public void endExclusive() {
+        CardSession root = getRoot();
+        Card locked;
+        boolean wasAbandoned;
+        synchronized (root.exclusiveLock) {
+            if (root.exclusiveOwner != Thread.currentThread()) {
+                return;
+            }
+            if (--root.exclusiveDepth > 0) {
+                return;
+            }
+            locked = root.exclusiveCard;
+            wasAbandoned = root.abandoned;
+            root.exclusiveOwner = null;
+            root.exclusiveCard = null;
+            root.abandoned = false;
+        }
+        try {
+            locked.endExclusive();
+        } catch (CardException | IllegalStateException ex) {
+            //card has been disconnected, nothing is locked anymore
+        }
+        if (wasAbandoned) {
+            try {
+                locked.disconnect(false);
+            } catch (CardException | IllegalStateException ex) {
+                //card is gone already
+            }
+            getHealth().release();
+        }
+    }
+
+    /**
+     * Determines whether current thread holds card locked by beginExclusive().
+     *
+     * @return true if current thread is inside exclusive scope which has
+     * locked card
+     */
+    public boolean isExclusive() {
+        CardSession root = getRoot();
+        synchronized (root.exclusiveLock) {
+            return root.exclusiveOwner == Thread.currentThread();
+        }
+    }
+
+    private CardSession getRoot() {
+        return parent == null ? this : parent;
+    }
+
+    private void resetExclusive() {
+        synchronized (exclusiveLock) {
+            exclusiveOwner = null;
+            exclusiveCard = null;
+            exclusiveDepth = 0;
+            abandoned = false;
+            openLogicalChannels = 0;
+        }
+    }
+
+    /**
+     * Getter for time card has to answer one APDU.
+     *
+     * @return timeout in milliseconds, 0 means no limit
+     */
+    public long getApduTimeout() {
+        return apduTimeout;
+    }
+
+    /**
+     * Setter for time card has to answer one APDU. If card doesn't answer in
+     * time, connection is dropped and ApduTimeoutException is thrown. Deadline
+     * is checked every WATCHDOG_PERIOD.
+     *
+     * @param apduTimeout timeout in milliseconds, 0 means no limit
+     */
+    public void setApduTimeout(long apduTimeout) {
+        this.apduTimeout = apduTimeout;
+    }
+
+    /**
+     * Getter for command buffer of this session. ApduWorker prepares every
+     * command APDU in this buffer, so no array is allocated per command.
+     *
+     * @return command buffer with COMMAND_BUFFER_SIZE bytes
+     */
+    public ByteBuffer getCommandBuffer() {
+        return commandBuffer;
+    }
+
+    /**
+     * Getter for response buffer of this session. Every Response APDU for
+     * command from command buffer is written here.
+     *
+     * @return response buffer with RESPONSE_BUFFER_SIZE bytes
+     */
+    public ByteBuffer getResponseBuffer() {
+        return responseBuffer;
+    }
+
+    /**
+     * Determines whether session is connected to card.
+     *
+     * @return true if session is connected to card
+     */
+    public boolean isConnected() {
+        return card != null;
+    }
+
+    /**
+     * Getter for terminal
+     *
+     * @return terminal of this session, null if it is not bound yet
+     */
+    public CardTerminal getTerminal() {
+        return terminal;
+    }
+
+    /**
+     * Binds session to given terminal. Terminal can be changed only while
+     * session is not connected.
+     *
+     * @param terminal terminal with card this session communicates with
+     */
+    public synchronized void setTerminal(CardTerminal terminal) {
+        if (card != null) {
+            throw new IllegalStateException("Session is connected to " + this.terminal.getName());
+        }
+        this.terminal = terminal;
+    }
+
+    /**
+     * Getter for card
+     *
+     * @return card
+     */
+    public Card getCard() {
+        return card;
+    }
+
+    /**
+     * Getter for channel
+     *
+     * @return channel
+     */
+    public CardChannel getChannel() {
+        return channel;
+    }
+
+    /**
+     * Getter for health of terminal of this session.
+     *
+     * @return ReaderHealth of terminal, shared by all sessions with the same
+     * terminal
+     */
+    public ReaderHealth getHealth() {
+        if (terminal == null) {
+            throw new IllegalStateException("Session is not bound to any terminal");
+        }
+        return ReaderHealth.of(terminal.getName());
+    }
+
+    /**
+     * Getter for Answer To Reset of card in this session.
+     *
+     * @return Answer To Reset, null if session has never been connected
+     */
+    public byte[] getATR() {
+        return ATR;
+    }
+
+    /**
+     * Getter for currently selected DF.
+     *
+     * @return currently selected DF, null if it is not known
+     */
+    public DF getSelectedDF() {
+        return selectedDF;
+    }
+
+    /**
+     * Getter for currently selected EF.
+     *
+     * @return currently selected EF, null if no EF is selected or it is not
+     * known
+     */
+    public EF getSelectedEF() {
+        return selectedEF;
+    }
+
+    /**
+     * Getter for FileInfo of currently selected EF.
+     *
+     * @return FileInfo of currently selected EF, null if no EF is selected
+     */
+    public FileInfo getSelectedEFInfo() {
+        return selectedEFInfo;
+    }
+
+    /**
+     * Remembers that given DF has been selected. Selecting DF leaves no EF
+     * selected.
+     *
+     * @param DF DF that has been selected
+     */
+    public void setSelectedDF(DF DF) {
+        selectedDF = DF;
+        selectedEF = null;
+        selectedEFInfo = null;
+    }
+
+    /**
+     * Remembers that given EF has been selected. EF can only be selected
+     * inside its DF, so that DF is current as well.
+     *
+     * @param EF EF that has been selected
+     * @param info FileInfo of selected EF
+     */
+    public void setSelectedEF(EF EF, FileInfo info) {
+        selectedDF = EF.getDF();
+        selectedEF = EF;
+        selectedEFInfo = info;
+    }
+
+    /**
+     * Forgets what is selected on card, so next access selects its DF and EF
+     * again. Used after reset of card, after errors and when file has been
+     * selected outside of ApduWorker.selectEF().
+     */
+    public void invalidateSelection() {
+        selectedDF = null;
+        selectedEF = null;
+        selectedEFInfo = null;
+    }
+
+    /**
+     * Returns FileInfo of given EF, if it has already been obtained from card
+     * in this session. Size, structure and length of records of EF don't
+     * change, so it is obtained only once per session.
+     *
+     * @param EF Elementary File
+     * @return FileInfo of given EF, null if it hasn't been obtained yet
+     */
+    public FileInfo getFileInfo(EF EF) {
+        return fileInfos.get(EF);
+    }
+
+    /**
+     * Stores FileInfo of given EF for the rest of session.
+     *
+     * @param EF Elementary File
+     * @param info FileInfo of given EF
+     */
+    public void putFileInfo(EF EF, FileInfo info) {
+        fileInfos.put(EF, info);
+    }
+
+    /**
+     * Getter for cache of contents of EFs read in this session. It is shared
+     * by all logical channels.
+     *
+     * @return EFCache of session
+     */
+    public EFCache getCache() {
+        return cache;
+    }
+
+    /**
+     * Returns SecurityStatus of card, if it has already been obtained in this
+     * session and hasn't changed since. It is shared by all logical channels.
+     *
+     * @return SecurityStatus of card, null if it hasn't been obtained yet or
+     * it has been invalidated
+     */
+    public SecurityStatus getSecurityStatus() {
+        return getRoot().securityStatus;
+    }
+
+    /**
+     * Stores SecurityStatus of card until it is invalidated.
+     *
+     * @param securityStatus SecurityStatus obtained from card
+     */
+    public void setSecurityStatus(SecurityStatus securityStatus) {
+        getRoot().securityStatus = securityStatus;
+    }
+
+    /**
+     * Forgets SecurityStatus of card. Used after VERIFY, which changes
+     * counters of tries left.
+     */
+    public void invalidateSecurityStatus() {
+        getRoot().securityStatus = null;
+    }
+
+    /**
+     * Getter for recorder of APDUs exchanged in this session.
+     *
+     * @return TraceRecorder, null if APDUs are not recorded
+     */
+    public TraceRecorder getTraceRecorder() {
+        return traceRecorder;
+    }
+
+    /**
+     * Sets recorder of APDUs exchanged in this session. It is used from next
+     * connection on; sessions of logical channels opened later inherit it.
+     *
+     * @param traceRecorder TraceRecorder, null if APDUs are not to be
+     * recorded
+     */
+    public void setTraceRecorder(TraceRecorder traceRecorder) {
+        this.traceRecorder = traceRecorder;
+    }
+
+    /**
+     * Getter for ID of current connection in trace file. Sessions of logical
+     * channels have ID of their parent.
+     *
+     * @return ID of connection, 0 if session is not connected or connection
+     * hasn't been recorded
+     */
+    public int getTraceId() {
+        return getRoot().traceId;
+    }
+
+    @Override
+    public String toString() {
+        if (terminal == null) {
+            return "unbound session";
+        }
+        return terminal.getName();
+    }
+}
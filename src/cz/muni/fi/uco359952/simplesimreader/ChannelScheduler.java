@@ -0,0 +1,147 @@
+package cz.muni.fi.uco359952.simplesimreader;
+
+import cz.muni.fi.uco359952.simplesimreader.data.DF;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.smartcardio.CardException;
+
+/**
+ * Schedules CardJobs across logical channels of one card, one channel for
+ * every DF. Jobs of one DF are done one after another on its own channel, so
+ * its DF stays selected, while jobs of other DFs run at the same time on other
+ * channels. Basic channel is left to the caller. If card doesn't support
+ * logical channels, jobs are run immediately on basic channel of caller.
+ *
+ * @author Andrej Simko
+ */
+public class ChannelScheduler {
+
+    /**
+     * Maximal number of logical channels opened besides basic channel (ISO
+     * 7816-4 allows channels 1 to 3).
+     */
+    public static final int MAX_LOGICAL_CHANNELS = 3;
+    private final CardSession session;
+    private final Map<DF, Lane> lanes = new HashMap<>();
+    private final List<Lane> openedLanes = new ArrayList<>();
+    private boolean logicalChannelsSupported = true;
+
+    /**
+     * Creates ChannelScheduler for card in given session.
+     *
+     * @param session session connected to card, its basic channel is used by
+     * caller
+     */
+    public ChannelScheduler(CardSession session) {
+        this.session = session;
+    }
+
+    /**
+     * Schedules job that works with files of given DF.
+     *
+     * @param <T> type of result of job
+     * @param DF DF whose files job reads
+     * @param job job to be run
+     * @return Future with result of job
+     */
+    public synchronized <T> Future<T> submit(DF DF, final CardJob<T> job) {
+        final Lane lane = getLane(DF);
+        Callable<T> task = new Callable<T>() {
+
+            @Override
+            public T call() throws Exception {
+                return job.run(lane == null ? session : lane.session);
+            }
+        };
+        if (lane == null) {
+            FutureTask<T> future = new FutureTask<>(task);
+            future.run();
+            return future;
+        }
+        return lane.executor.submit(task);
+    }
+
+    /**
+     * Determines whether jobs run on logical channels.
+     *
+     * @return false if card has refused to open logical channel
+     */
+    public synchronized boolean isUsingLogicalChannels() {
+        return !openedLanes.isEmpty();
+    }
+
+    /**
+     * Waits for scheduled jobs and closes all logical channels.
+     */
+    public synchronized void close() {
+        for (Lane lane : openedLanes) {
+            lane.executor.shutdown();
+        }
+        for (Lane lane : openedLanes) {
+            try {
+                while (!lane.executor.awaitTermination(1, TimeUnit.SECONDS)) {
+                    Logger.getLogger(ChannelScheduler.class.getName()).log(Level.INFO, "Waiting for jobs on channel {0}", lane.session.getChannelNumber());
+                }
+                lane.session.disconnect();
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (CardException ex) {
+                Logger.getLogger(ChannelScheduler.class.getName()).log(Level.WARNING, null, ex);
+            }
+        }
+        openedLanes.clear();
+        lanes.clear();
+    }
+
+    private Lane getLane(DF DF) {
+        if (lanes.containsKey(DF)) {
+            return lanes.get(DF);
+        }
+        Lane lane = null;
+        if (logicalChannelsSupported && openedLanes.size() < MAX_LOGICAL_CHANNELS) {
+            try {
+                lane = new Lane(session.openLogicalChannel());
+                openedLanes.add(lane);
+            } catch (CardException ex) {
+                logicalChannelsSupported = false;
+                Logger.getLogger(ChannelScheduler.class.getName()).log(Level.INFO, "Logical channels are not supported, using basic channel: {0}", ex.getMessage());
+            }
+        }
+        lanes.put(DF, lane);
+        return lane;
+    }
+
+    /**
+     * Logical channel with its own worker thread.
+     */
+    private static class Lane {
+
+        private final CardSession session;
+        private final ExecutorService executor;
+
+        private Lane(final CardSession session) {
+            this.session = session;
+            this.executor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread thread = new Thread(r, "ChannelScheduler " + session + " channel " + session.getChannelNumber());
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+    }
+}
@@ -72,6 +72,73 @@ public class Converter {
         temp = temp.concat(Character.toString(input.charAt(0)));
         return temp;
     }
+
+    /**
+     * Decodes swapped BCD digits (telephone numbers, time stamps) straight into
+     * char array, without creating any String. Lower half of byte is the first
+     * digit. Filler 'F' is skipped; if dialing is true, 'A' and 'B' are written
+     * as '*' and '#'. <p> For example, decodes [0x21, 0xF3] into "123".
+     *
+     * @param buffer buffer with BCD digits
+     * @param offset absolute position of first byte in buffer
+     * @param length number of bytes
+     * @param digits array where digits are written
+     * @param digitsOffset position in array of first digit
+     * @param dialing true if 'A' and 'B' are dialing characters
+     * @return number of characters written
+     */
+    public static int decodeBCD(ByteBuffer buffer, int offset, int length, char[] digits, int digitsOffset, boolean dialing) {
+        int position = digitsOffset;
+        for (int i = offset; i < offset + length; i++) {
+            int b = buffer.get(i);
+            position = putBCDDigit(b & 0x0F, digits, position, dialing);
+            position = putBCDDigit((b >>> 4) & 0x0F, digits, position, dialing);
+        }
+        return position - digitsOffset;
+    }
+
+    /**
+     * Decodes swapped nibbles straight into char array, keeping every one of
+     * them, as byteToHex() and swapString() do. Used for fields of fixed
+     * length like time stamps, where filler 'F' must not shift the rest. <p>
+     * For example, decodes [0x21, 0xF3] into "123F".
+     *
+     * @param buffer buffer with swapped nibbles
+     * @param offset absolute position of first byte in buffer
+     * @param length number of bytes
+     * @param digits array where digits are written, at least 2 * length
+     * characters
+     * @param digitsOffset position in array of first digit
+     * @return number of characters written, always 2 * length
+     */
+    public static int decodeSwappedHex(ByteBuffer buffer, int offset, int length, char[] digits, int digitsOffset) {
+        int position = digitsOffset;
+        for (int i = offset; i < offset + length; i++) {
+            int b = buffer.get(i);
+            digits[position++] = upperHexChar(b & 0x0F);
+            digits[position++] = upperHexChar((b >>> 4) & 0x0F);
+        }
+        return position - digitsOffset;
+    }
+
+    private static int putBCDDigit(int digit, char[] digits, int position, boolean dialing) {
+        if (digit == 0x0F) {
+            return position;
+        }
+        if (dialing && digit == 0x0A) {
+            digits[position] = '*';
+        } else if (dialing && digit == 0x0B) {
+            digits[position] = '#';
+        } else {
+            digits[position] = upperHexChar(digit);
+        }
+        return position + 1;
+    }
+
+    private static char upperHexChar(int digit) {
+        return digit <= 9 ? (char) ('0' + digit) : (char) ('A' + digit - 10);
+    }
+
     /*
      * public static byte replaceNationalCharacters(byte character) { if
      * (character == (byte) 0xe1) { return (byte) 'á'; } if (character == (byte)
@@ -307,22 +374,24 @@ public class Converter {
 
     /**
      * Discovers and fills sizes to Elementary Files.
+     *
+     * @param getters Getters bound to session with card whose sizes are filled
      */
-    public static void fillEFSizes() {
-        DatabaseOfEF.EF_ADN.setSizes(WriteIntoSystemOut.getters.getResponsesFromEFandSelectDF(DatabaseOfEF.EF_ADN));
-        DatabaseOfEF.EF_HPLMN.setSizes(WriteIntoSystemOut.getters.getResponsesFromEFandSelectDF(DatabaseOfEF.EF_HPLMN));
-        DatabaseOfEF.EF_ICCID.setSizes(WriteIntoSystemOut.getters.getResponsesFromEFandSelectDF(DatabaseOfEF.EF_ICCID));
-        DatabaseOfEF.EF_IMSI.setSizes(WriteIntoSystemOut.getters.getResponsesFromEFandSelectDF(DatabaseOfEF.EF_IMSI));
-        DatabaseOfEF.EF_KC.setSizes(WriteIntoSystemOut.getters.getResponsesFromEFandSelectDF(DatabaseOfEF.EF_KC));
-        DatabaseOfEF.EF_KCGPRS.setSizes(WriteIntoSystemOut.getters.getResponsesFromEFandSelectDF(DatabaseOfEF.EF_KCGPRS));
-        DatabaseOfEF.EF_LND.setSizes(WriteIntoSystemOut.getters.getResponsesFromEFandSelectDF(DatabaseOfEF.EF_LND));
-        DatabaseOfEF.EF_LOCI.setSizes(WriteIntoSystemOut.getters.getResponsesFromEFandSelectDF(DatabaseOfEF.EF_LOCI));
-        DatabaseOfEF.EF_LP.setSizes(WriteIntoSystemOut.getters.getResponsesFromEFandSelectDF(DatabaseOfEF.EF_LP));
-        DatabaseOfEF.EF_MSISDN.setSizes(WriteIntoSystemOut.getters.getResponsesFromEFandSelectDF(DatabaseOfEF.EF_MSISDN));
-        DatabaseOfEF.EF_PHASE.setSizes(WriteIntoSystemOut.getters.getResponsesFromEFandSelectDF(DatabaseOfEF.EF_PHASE));
-        DatabaseOfEF.EF_SMS.setSizes(WriteIntoSystemOut.getters.getResponsesFromEFandSelectDF(DatabaseOfEF.EF_SMS));
-        DatabaseOfEF.EF_SPN.setSizes(WriteIntoSystemOut.getters.getResponsesFromEFandSelectDF(DatabaseOfEF.EF_SPN));
-        DatabaseOfEF.EF_SST.setSizes(WriteIntoSystemOut.getters.getResponsesFromEFandSelectDF(DatabaseOfEF.EF_SST));
+    public static void fillEFSizes(Getters getters) {
+        DatabaseOfEF.EF_ADN.setSizes(getters.getResponsesFromEFandSelectDF(DatabaseOfEF.EF_ADN));
+        DatabaseOfEF.EF_HPLMN.setSizes(getters.getResponsesFromEFandSelectDF(DatabaseOfEF.EF_HPLMN));
+        DatabaseOfEF.EF_ICCID.setSizes(getters.getResponsesFromEFandSelectDF(DatabaseOfEF.EF_ICCID));
+        DatabaseOfEF.EF_IMSI.setSizes(getters.getResponsesFromEFandSelectDF(DatabaseOfEF.EF_IMSI));
+        DatabaseOfEF.EF_KC.setSizes(getters.getResponsesFromEFandSelectDF(DatabaseOfEF.EF_KC));
+        DatabaseOfEF.EF_KCGPRS.setSizes(getters.getResponsesFromEFandSelectDF(DatabaseOfEF.EF_KCGPRS));
+        DatabaseOfEF.EF_LND.setSizes(getters.getResponsesFromEFandSelectDF(DatabaseOfEF.EF_LND));
+        DatabaseOfEF.EF_LOCI.setSizes(getters.getResponsesFromEFandSelectDF(DatabaseOfEF.EF_LOCI));
+        DatabaseOfEF.EF_LP.setSizes(getters.getResponsesFromEFandSelectDF(DatabaseOfEF.EF_LP));
+        DatabaseOfEF.EF_MSISDN.setSizes(getters.getResponsesFromEFandSelectDF(DatabaseOfEF.EF_MSISDN));
+        DatabaseOfEF.EF_PHASE.setSizes(getters.getResponsesFromEFandSelectDF(DatabaseOfEF.EF_PHASE));
+        DatabaseOfEF.EF_SMS.setSizes(getters.getResponsesFromEFandSelectDF(DatabaseOfEF.EF_SMS));
+        DatabaseOfEF.EF_SPN.setSizes(getters.getResponsesFromEFandSelectDF(DatabaseOfEF.EF_SPN));
+        DatabaseOfEF.EF_SST.setSizes(getters.getResponsesFromEFandSelectDF(DatabaseOfEF.EF_SST));
     }
 
     /**
@@ -0,0 +1,238 @@
+package cz.muni.fi.uco359952.simplesimreader;
+
+import cz.muni.fi.uco359952.simplesimreader.data.CachePolicy;
+import cz.muni.fi.uco359952.simplesimreader.data.EF;
+import java.nio.ByteBuffer;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Contents of EFs read in one session, kept according to CachePolicy of each
+ * EF. Session watches commands it sends to card and invalidates contents
+ * that they can change:
+ * <ul>
+ * <li>UPDATE BINARY, UPDATE RECORD, INCREASE, INVALIDATE and REHABILITATE
+ * invalidate selected EF, or all EFs if it isn't known which EF is selected,
+ * <li>RUN GSM ALGORITHM invalidates EFs with UNTIL_NETWORK_ACTIVITY,
+ * <li>ENVELOPE and TERMINAL RESPONSE of SIM Toolkit invalidate all EFs that
+ * are not IMMUTABLE, card can update them on its own then.
+ * </ul>
+ * Cache is shared by all logical channels of card and cleared when session
+ * connects. Stored and returned arrays are copies.
+ *
+ * @author Andrej Simko
+ */
+public class EFCache {
+
+    private static final int INS_UPDATE_BINARY = 0xD6;
+    private static final int INS_UPDATE_RECORD = 0xDC;
+    private static final int INS_INCREASE = 0x32;
+    private static final int INS_INVALIDATE = 0x04;
+    private static final int INS_REHABILITATE = 0x44;
+    private static final int INS_RUN_GSM_ALGORITHM = 0x88;
+    private static final int INS_ENVELOPE = 0xC2;
+    private static final int INS_TERMINAL_RESPONSE = 0x14;
+    private final ConcurrentHashMap<EF, Map<Integer, byte[]>> contents = new ConcurrentHashMap<>();
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private volatile boolean enabled = true;
+
+    /**
+     * Returns cached content of transparent EF, or all records of record EF
+     * one after another.
+     *
+     * @param EF Elementary File
+     * @return copy of content of EF, null if it isn't cached
+     */
+    public byte[] getContent(EF EF) {
+        return get(EF, 0);
+    }
+
+    /**
+     * Stores content of transparent EF, or all records of record EF one after
+     * another, if its CachePolicy allows it.
+     *
+     * @param EF Elementary File
+     * @param content whole content of EF
+     */
+    public void putContent(EF EF, byte[] content) {
+        put(EF, 0, content);
+    }
+
+    /**
+     * Returns cached record of linear fixed or cyclic EF.
+     *
+     * @param EF linear fixed or cyclic EF
+     * @param numberOfRecord number of record, starting from 1
+     * @return copy of record, null if it isn't cached
+     */
+    public byte[] getRecord(EF EF, int numberOfRecord) {
+        return get(EF, numberOfRecord);
+    }
+
+    /**
+     * Stores record of linear fixed or cyclic EF, if its CachePolicy allows
+     * it.
+     *
+     * @param EF linear fixed or cyclic EF
+     * @param numberOfRecord number of record, starting from 1
+     * @param record content of record
+     */
+    public void putRecord(EF EF, int numberOfRecord, byte[] record) {
+        put(EF, numberOfRecord, record);
+    }
+
+    /**
+     * Determines whether content of EF, or its record, would be served from
+     * cache. Unlike getContent() and getRecord(), it counts neither hit nor
+     * miss.
+     *
+     * @param EF Elementary File
+     * @param numberOfRecord number of record, starting from 1; 0 for content
+     * of transparent EF or all records of record EF
+     * @return true if it is cached
+     */
+    public boolean contains(EF EF, int numberOfRecord) {
+        if (!enabled || EF.getCachePolicy() == CachePolicy.NONE) {
+            return false;
+        }
+        Map<Integer, byte[]> records = contents.get(EF);
+        return records != null && records.containsKey(numberOfRecord);
+    }
+
+    private byte[] get(EF EF, int numberOfRecord) {
+        if (!enabled || EF.getCachePolicy() == CachePolicy.NONE) {
+            return null;
+        }
+        Map<Integer, byte[]> records = contents.get(EF);
+        byte[] data = records == null ? null : records.get(numberOfRecord);
+        if (data == null) {
+            misses.incrementAndGet();
+            return null;
+        }
+        hits.incrementAndGet();
+        return data.clone();
+    }
+
+    private void put(EF EF, int numberOfRecord, byte[] data) {
+        if (!enabled || EF.getCachePolicy() == CachePolicy.NONE || data == null) {
+            return;
+        }
+        Map<Integer, byte[]> records = contents.get(EF);
+        if (records == null) {
+            records = new ConcurrentHashMap<>();
+            Map<Integer, byte[]> previous = contents.putIfAbsent(EF, records);
+            if (previous != null) {
+                records = previous;
+            }
+        }
+        records.put(numberOfRecord, data.clone());
+    }
+
+    /**
+     * Forgets content of given EF.
+     *
+     * @param EF Elementary File
+     */
+    public void invalidate(EF EF) {
+        contents.remove(EF);
+    }
+
+    /**
+     * Forgets contents of all EFs with given CachePolicy.
+     *
+     * @param policy CachePolicy of EFs that are to be forgotten
+     */
+    public void invalidate(CachePolicy policy) {
+        for (Iterator<EF> it = contents.keySet().iterator(); it.hasNext();) {
+            if (it.next().getCachePolicy() == policy) {
+                it.remove();
+            }
+        }
+    }
+
+    /**
+     * Forgets contents of all EFs.
+     */
+    public void clear() {
+        contents.clear();
+    }
+
+    /**
+     * Invalidates contents that given command can change. Called by session
+     * before command is transmitted.
+     *
+     * @param command buffer with command APDU between its position and limit,
+     * it is not changed
+     * @param selectedEF EF selected on channel, null if it is not known
+     */
+    void beforeTransmit(ByteBuffer command, EF selectedEF) {
+        if (contents.isEmpty() || command.remaining() < 2) {
+            return;
+        }
+        switch (command.get(command.position() + 1) & 0xff) {
+            case INS_UPDATE_BINARY:
+            case INS_UPDATE_RECORD:
+            case INS_INCREASE:
+            case INS_INVALIDATE:
+            case INS_REHABILITATE:
+                if (selectedEF == null) {
+                    clear();
+                } else {
+                    invalidate(selectedEF);
+                }
+                break;
+            case INS_RUN_GSM_ALGORITHM:
+                invalidate(CachePolicy.UNTIL_NETWORK_ACTIVITY);
+                break;
+            case INS_ENVELOPE:
+            case INS_TERMINAL_RESPONSE:
+                invalidate(CachePolicy.UNTIL_NETWORK_ACTIVITY);
+                invalidate(CachePolicy.UNTIL_UPDATE);
+                break;
+            default:
+                break;
+        }
+    }
+
+    /**
+     * Determines whether contents are cached.
+     *
+     * @return true if cache is used
+     */
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Turns cache on or off. Turning it off forgets all contents.
+     *
+     * @param enabled true if contents are to be cached
+     */
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+        if (!enabled) {
+            clear();
+        }
+    }
+
+    /**
+     * Getter for number of reads served from cache.
+     *
+     * @return number of hits
+     */
+    public long getHits() {
+        return hits.get();
+    }
+
+    /**
+     * Getter for number of reads of cacheable EFs that went to card.
+     *
+     * @return number of misses
+     */
+    public long getMisses() {
+        return misses.get();
+    }
+}
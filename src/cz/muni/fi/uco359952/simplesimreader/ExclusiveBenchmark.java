@@ -0,0 +1,79 @@
+package cz.muni.fi.uco359952.simplesimreader;
+
+import cz.muni.fi.uco359952.simplesimreader.data.DatabaseOfEF;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.smartcardio.CardException;
+
+/**
+ * Main class that measures how long one APDU takes with and without exclusive
+ * scope. EF_ICCID is selected once and then read by READ BINARY many times -
+ * first every command in its own PC/SC transaction, then all commands in one
+ * exclusive scope. Number of commands can be given as first argument.
+ *
+ * @author Andrej Simko
+ */
+public class ExclusiveBenchmark {
+
+    /**
+     * Number of commands that are sent if no argument is given.
+     */
+    public static final int DEFAULT_NUMBER_OF_APDUS = 500;
+    private static final int WARM_UP = 20;
+
+    /**
+     * Main method of benchmark.
+     *
+     * @param args number of commands in one round, optional
+     */
+    public static void main(String[] args) {
+        int numberOfApdus = DEFAULT_NUMBER_OF_APDUS;
+        if (args.length > 0) {
+            numberOfApdus = Integer.parseInt(args[0]);
+        }
+        ApduWorker worker = new ApduWorker();
+        try {
+            worker.manager.ConnectToCard();
+            worker.selectWithInfo(DatabaseOfEF.EF_ICCID);
+            CardSession session = worker.manager.getSession();
+
+            readICCID(worker, WARM_UP);
+            long shared = readICCID(worker, numberOfApdus);
+
+            session.beginExclusive();
+            long exclusive;
+            try {
+                exclusive = readICCID(worker, numberOfApdus);
+            } finally {
+                session.endExclusive();
+            }
+
+            System.out.println("Terminal: " + session);
+            System.out.println("APDUs per round: " + numberOfApdus);
+            System.out.println("Transaction per APDU: " + microsPerApdu(shared, numberOfApdus) + " us/APDU");
+            System.out.println("Exclusive scope: " + microsPerApdu(exclusive, numberOfApdus) + " us/APDU");
+            System.out.println("Gain: " + microsPerApdu(shared - exclusive, numberOfApdus) + " us/APDU");
+        } catch (Exception ex) {
+            Logger.getLogger(ExclusiveBenchmark.class.getName()).log(Level.SEVERE, null, ex);
+        } finally {
+            try {
+                worker.manager.DisconnectFromCard();
+            } catch (CardException ex) {
+                Logger.getLogger(ExclusiveBenchmark.class.getName()).log(Level.SEVERE, null, ex);
+            }
+        }
+    }
+
+    private static long readICCID(ApduWorker worker, int numberOfApdus) throws CardException {
+        byte[] buffer = new byte[10];
+        long start = System.nanoTime();
+        for (int i = 0; i < numberOfApdus; i++) {
+            worker.readBinary(0, buffer.length, buffer, 0);
+        }
+        return System.nanoTime() - start;
+    }
+
+    private static long microsPerApdu(long nanos, int numberOfApdus) {
+        return nanos / 1000 / numberOfApdus;
+    }
+}
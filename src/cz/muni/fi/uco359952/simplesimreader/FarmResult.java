@@ -0,0 +1,109 @@
+package cz.muni.fi.uco359952.simplesimreader;
+
+/**
+ * Result of one CardJob run in one terminal of ReaderFarm.
+ *
+ * @param <T> type of result of job
+ * @author Andrej Simko
+ */
+public class FarmResult<T> {
+
+    /**
+     * State in which job has ended.
+     */
+    public enum Status {
+
+        /**
+         * Job has finished and its value is available.
+         */
+        DONE,
+        /**
+         * There was no card in terminal, job has not been run.
+         */
+        EMPTY,
+        /**
+         * Job has thrown exception.
+         */
+        FAILED,
+        /**
+         * Job hasn't finished within job timeout and its session has been
+         * aborted.
+         */
+        TIMED_OUT,
+        /**
+         * Reader is parked after repeated failures, job has not been run.
+         */
+        PARKED
+    }
+    private final String terminalName;
+    private final Status status;
+    private final T value;
+    private final Exception exception;
+
+    /**
+     * Constructor for FarmResult.
+     *
+     * @param terminalName name of terminal where job was run
+     * @param status state in which job has ended
+     * @param value result of job, null if job hasn't finished
+     * @param exception exception thrown by job, null if there was none
+     */
+    public FarmResult(String terminalName, Status status, T value, Exception exception) {
+        this.terminalName = terminalName;
+        this.status = status;
+        this.value = value;
+        this.exception = exception;
+    }
+
+    /**
+     * Getter for name of terminal where job was run.
+     *
+     * @return name of terminal
+     */
+    public String getTerminalName() {
+        return terminalName;
+    }
+
+    /**
+     * Getter for state in which job has ended.
+     *
+     * @return state of job
+     */
+    public Status getStatus() {
+        return status;
+    }
+
+    /**
+     * Getter for result of job.
+     *
+     * @return result of job, null if job hasn't finished
+     */
+    public T getValue() {
+        return value;
+    }
+
+    /**
+     * Getter for exception thrown by job.
+     *
+     * @return exception thrown by job, null if there was none
+     */
+    public Exception getException() {
+        return exception;
+    }
+
+    @Override
+    public String toString() {
+        switch (status) {
+            case DONE:
+                return terminalName + ": " + value;
+            case EMPTY:
+                return terminalName + ": no card";
+            case TIMED_OUT:
+                return terminalName + ": timed out";
+            case PARKED:
+                return terminalName + ": reader parked";
+            default:
+                return terminalName + ": " + status + " " + exception;
+        }
+    }
+}
@@ -205,7 +205,7 @@ public class GUI extends javax.swing.JFrame {
 
         try {
             if (cardIsConnected) {
-                JOptionPane.showMessageDialog(null, "Already connected to: " + CardManager.getTerminal(), "Connection info", JOptionPane.WARNING_MESSAGE);
+                JOptionPane.showMessageDialog(null, "Already connected to: " + writer.getters.worker.manager.getTerminal(), "Connection info", JOptionPane.WARNING_MESSAGE);
             } else {
                 if (writer.getters.worker.manager.ConnectToCard()) {
                     cardIsConnected = true;
@@ -216,7 +216,7 @@ public class GUI extends javax.swing.JFrame {
                     TextAreaOutputStream textOut = new TextAreaOutputStream(consoleText);
                     PrintStream outStream = new PrintStream(textOut, true);
                     System.setOut(outStream);
-                    JOptionPane.showMessageDialog(null, "Successfully conntected to: " + CardManager.getTerminal(), "Connection info", JOptionPane.INFORMATION_MESSAGE);
+                    JOptionPane.showMessageDialog(null, "Successfully conntected to: " + writer.getters.worker.manager.getTerminal(), "Connection info", JOptionPane.INFORMATION_MESSAGE);
                 }
             }
         } catch (NoReaderFoundException ex) {
@@ -246,7 +246,7 @@ public class GUI extends javax.swing.JFrame {
                 Connect.setEnabled(true);
                 Disconnect.setEnabled(false);
                 EnterPIN.setEnabled(false);
-                JOptionPane.showMessageDialog(null, "Successfully disconnected from " + CardManager.getTerminal(), "Disconnection info", JOptionPane.INFORMATION_MESSAGE);
+                JOptionPane.showMessageDialog(null, "Successfully disconnected from " + writer.getters.worker.manager.getTerminal(), "Disconnection info", JOptionPane.INFORMATION_MESSAGE);
                 cardIsConnected = false;
             }
         } catch (Exception ex) {
@@ -264,7 +264,7 @@ public class GUI extends javax.swing.JFrame {
             String passwordValue = password.getText();
             try {
                 writer.getters.worker.manager.VerifyPin(passwordValue);
-                JOptionPane.showMessageDialog(null, "PIN successfully verified" + CardManager.getTerminal(), "", JOptionPane.INFORMATION_MESSAGE);
+                JOptionPane.showMessageDialog(null, "PIN successfully verified" + writer.getters.worker.manager.getTerminal(), "", JOptionPane.INFORMATION_MESSAGE);
                 ReadWithPIN.setEnabled(true);
                 EnterPIN.setEnabled(false);
             } catch (WrongPINException ex) {
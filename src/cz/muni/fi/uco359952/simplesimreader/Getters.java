@@ -1,20 +1,29 @@
 package cz.muni.fi.uco359952.simplesimreader;
 
+import cz.muni.fi.uco359952.simplesimreader.data.AdnDecoder;
+import cz.muni.fi.uco359952.simplesimreader.data.CachePolicy;
 import cz.muni.fi.uco359952.simplesimreader.data.DatabaseOfEF;
 import cz.muni.fi.uco359952.simplesimreader.data.SMS;
 import cz.muni.fi.uco359952.simplesimreader.data.EF;
+import cz.muni.fi.uco359952.simplesimreader.data.FileInfo;
 import cz.muni.fi.uco359952.simplesimreader.data.ICCID;
 import cz.muni.fi.uco359952.simplesimreader.data.Contact;
 import cz.muni.fi.uco359952.simplesimreader.data.LOCI;
 import cz.muni.fi.uco359952.simplesimreader.data.IMSI;
+import cz.muni.fi.uco359952.simplesimreader.data.SecurityStatus;
+import cz.muni.fi.uco359952.simplesimreader.exceptions.BadStatusWordException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.logging.Level;
 import java.util.logging.Logger;
+import javax.smartcardio.CardException;
 
 /**
  * Ensures data in human readable, or HEX representation. Uses ApduWorker class,
- * which is on logically lower level and uses WriteIntoSystemOut.
+ * which is on logically lower level and uses WriteIntoSystemOut. Contents of
+ * EFs are kept in EFCache of session according to their CachePolicy, so
+ * repeated calls don't read them from card again.
  *
  * @author Andrej Simko
  */
@@ -23,13 +32,22 @@ public class Getters {
     /**
      * Stores ApduWorker instance for further use.
      */
-    public static ApduWorker worker;
+    public final ApduWorker worker;
 
     /**
-     * Creates ApduWorker and stores is for further use.
+     * Creates ApduWorker with its own session and stores is for further use.
      */
     public Getters() {
-        worker = new ApduWorker();
+        this(new CardSession());
+    }
+
+    /**
+     * Creates ApduWorker bound to given session and stores is for further use.
+     *
+     * @param session session with card this Getters reads from
+     */
+    public Getters(CardSession session) {
+        worker = new ApduWorker(session);
     }
 
     /**
@@ -38,7 +56,7 @@ public class Getters {
      * @return Phase in human readable interpretation.
      */
     public String getPhase() {
-        byte[] input = getEFBytes(DatabaseOfEF.EF_PHASE);//,1
+        byte[] input = getEFData(DatabaseOfEF.EF_PHASE, 0, 1);
 
         if (input[0] == (byte) 0x00) {
             return "Phase 1";
@@ -58,10 +76,7 @@ public class Getters {
      * @return Ciphering Key in HEX.
      */
     public String getKCKeyString() {
-        byte[] input = getEFBytes(DatabaseOfEF.EF_KC);
-        byte[] KC_KEY = new byte[9];
-
-        System.arraycopy(input, 0, KC_KEY, 0, 9);
+        byte[] KC_KEY = getEFData(DatabaseOfEF.EF_KC, 0, 9);
 
         return Converter.bytesToHex(KC_KEY);
     }
@@ -72,10 +87,7 @@ public class Getters {
      * @return GPRS Ciphering Key in HEX.
      */
     public String getKCGPRSKeyString() {
-        byte[] input = getEFBytes(DatabaseOfEF.EF_KCGPRS);
-        byte[] KC_KEY = new byte[9];
-
-        System.arraycopy(input, 0, KC_KEY, 0, 9);
+        byte[] KC_KEY = getEFData(DatabaseOfEF.EF_KCGPRS, 0, 9);
 
         return Converter.bytesToHex(KC_KEY);
     }
@@ -86,12 +98,10 @@ public class Getters {
      * @return Service Provider Name in human readable interpretation.
      */
     public String getSPNString() {
-        byte[] input = getEFBytes(DatabaseOfEF.EF_SPN);
-        byte[] SPN = new byte[input.length - 3];
+        byte[] SPN = getEFData(DatabaseOfEF.EF_SPN);
         String SPNString = "";
-        System.arraycopy(input, 1, SPN, 0, input.length - 3);
-        int i = 0;
-        while ((SPN[i] != (byte) 0xff) && (i < SPN.length)) {
+        int i = 1; //first byte is display condition
+        while ((i < SPN.length) && (SPN[i] != (byte) 0xff)) {
             SPNString = SPNString.concat(Character.toString((char) (int) SPN[i]));
             i++;
         }
@@ -105,10 +115,10 @@ public class Getters {
      * @return International Mobile Subscriber Identity (IMSI) as IMSI class.
      */
     public IMSI getIMSI() {
-        byte[] input = getEFBytes(DatabaseOfEF.EF_IMSI);
+        byte[] input = getEFData(DatabaseOfEF.EF_IMSI);
         String IMSIString = "";
 
-        for (int i = 0; i < input.length - 2; i++) {
+        for (int i = 0; i < input.length; i++) {
             String b = Converter.byteToHex(input[i]);
             String c = Converter.swapString(b);
             IMSIString = IMSIString.concat(c);
@@ -130,8 +140,7 @@ public class Getters {
         String LNDString = "";
         String contactName = "";
         try {
-            worker.getResponse(worker.select(DatabaseOfEF.DF_TELECOM.getFID()));
-            LND = worker.readRecord(position, worker.getResponse(worker.select(DatabaseOfEF.EF_LND.getFID())));
+            LND = getRecord(DatabaseOfEF.EF_LND, position);
 
             contactName = contactName.concat(Converter.bytesToHex(LND).substring(0, 3 * (LND.length - 14)));
             if (!contactName.matches("[FF ]+")) {
@@ -171,8 +180,7 @@ public class Getters {
         byte[] MSISDN = null;
         String MSISDNString = "";
         try {
-            worker.getResponse(worker.select(DatabaseOfEF.DF_TELECOM.getFID()));
-            MSISDN = worker.readRecord(position, worker.getResponse(worker.select(DatabaseOfEF.EF_MSISDN.getFID())));
+            MSISDN = getRecord(DatabaseOfEF.EF_MSISDN, position);
             if (MSISDN[14] != (byte) 0xff) {
                 for (int i = 16; i <= 14 + MSISDN[14]; i++) {
                     String b = Converter.byteToHex(MSISDN[i]);
@@ -197,20 +205,7 @@ public class Getters {
      * @return Location Information as LOCI class.
      */
     public LOCI getLOCI() {
-        byte[] input = getEFBytes(DatabaseOfEF.EF_LOCI);//,11
-        String loci = "";
-
-        for (int i = 0; i < input.length - 2; i++) {
-            String b = Converter.byteToHex(input[i]);
-            if ((i > 3) && i <= 8) { //swap only LAI
-                String c = Converter.swapString(b);
-                loci = loci.concat(c);
-            } else {
-                loci = loci.concat(b);
-            }
-        }
-
-        return new LOCI(loci);
+        return new LOCI(getEFData(DatabaseOfEF.EF_LOCI));
     }
 
     /**
@@ -220,9 +215,9 @@ public class Getters {
      * @return Returns Integrated Circuit Card Identification as ICCID class.
      */
     public ICCID getICCID() {
-        byte[] input = getEFBytes(DatabaseOfEF.EF_ICCID);
+        byte[] input = getEFData(DatabaseOfEF.EF_ICCID);
         String ICCIDString = "";
-        for (int i = 0; i < input.length - 2; i++) {
+        for (int i = 0; i < input.length; i++) {
             String b = Converter.byteToHex(input[i]);
             String c = Converter.swapString(b);
             ICCIDString = ICCIDString.concat(c);
@@ -242,15 +237,33 @@ public class Getters {
      * Numbers) in human readable form.
      */
     public List<Contact> getListOfTelephoneBookRecord() {
-        System.out.println("Telephone book: ");
+        return getListOfTelephoneBookRecord(true);
+    }
+
+    /**
+     * Returns List of all Contacts in telephone book (ADN = Abbreviated Dialing
+     * Numbers).
+     *
+     * @param writeIntoSystemOut if true, prints Contacts to System.out in
+     * human readable form as well
+     * @return List of all Contacts in telephone book (ADN = Abbreviated Dialing
+     * Numbers) in human readable form.
+     */
+    public List<Contact> getListOfTelephoneBookRecord(boolean writeIntoSystemOut) {
+        if (writeIntoSystemOut) {
+            System.out.println("Telephone book: ");
+        }
         List listOfContacts = new ArrayList();
         try {
-            byte[] resp = getResponsesFromEFandSelectDF(DatabaseOfEF.EF_ADN);
-            for (int i = 1; i <= Converter.getSizes(resp)[2]; i++) {
-                Contact contact = new Contact(worker.readRecord(i, worker.getResponse(worker.select(DatabaseOfEF.EF_ADN.getFID()))));
-                contact.setIndex(i);
+            byte[] records = getRecords(DatabaseOfEF.EF_ADN);
+            int recordLength = worker.manager.getSession().getFileInfo(DatabaseOfEF.EF_ADN).getRecordLength();
+            AdnDecoder decoder = new AdnDecoder(records, recordLength); //empty slots are skipped without decoding
+            while (decoder.next()) {
+                Contact contact = decoder.getContact().toContact();
                 if (!contact.getPhoneNumber().equals("")) {
-                    System.out.println(contact);
+                    if (writeIntoSystemOut) {
+                        System.out.println(contact);
+                    }
                     listOfContacts.add(contact); //add only relevant data to container
                 }
             }
@@ -268,20 +281,44 @@ public class Getters {
      * form.
      */
     public List<SMS> getListOfSMS() {
+        return getListOfSMS(true);
+    }
+
+    /**
+     * Returns List of all SMS.
+     *
+     * @param writeIntoSystemOut if true, prints SMS to System.out in human
+     * readable form as well
+     * @return List of all SMS.
+     */
+    public List<SMS> getListOfSMS(boolean writeIntoSystemOut) {
 
         List listOfSMS = new ArrayList();
-        byte[] resp = getResponsesFromEFandSelectDF(DatabaseOfEF.EF_SMS);
-
-        for (int i = 1; i <= Converter.getSizes(resp)[2]; i++) {
-            SMS sms;
-            try {
-                sms = new SMS(worker.readRecord(i, worker.getResponse(worker.select(DatabaseOfEF.EF_SMS.getFID()))));
-                sms.setIndex(i);
-                System.out.println(sms);
-                listOfSMS.add(sms);
-            } catch (Exception ex) {
-                Logger.getLogger(CardManager.class.getName()).log(Level.SEVERE, null, ex);
+        CardSession session = worker.manager.getSession();
+        try {
+            session.beginExclusive(); //all records are read in one transaction
+        } catch (CardException ex) {
+            Logger.getLogger(CardManager.class.getName()).log(Level.SEVERE, null, ex);
+            return listOfSMS;
+        }
+        try {
+            int numberOfEntries = getNumberOfEntries(DatabaseOfEF.EF_SMS);
+
+            for (int i = 1; i <= numberOfEntries; i++) {
+                SMS sms;
+                try {
+                    sms = new SMS(getRecord(DatabaseOfEF.EF_SMS, i));
+                    sms.setIndex(i);
+                    if (writeIntoSystemOut) {
+                        System.out.println(sms);
+                    }
+                    listOfSMS.add(sms);
+                } catch (Exception ex) {
+                    Logger.getLogger(CardManager.class.getName()).log(Level.SEVERE, null, ex);
+                }
             }
+        } finally {
+            session.endExclusive();
         }
         return listOfSMS;
     }
@@ -292,33 +329,44 @@ public class Getters {
      * @return Home Public Land Mobile Network search period in minutes.
      */
     public String getHPLMN() {
-        return Converter.byteToHex(getEFBytes(DatabaseOfEF.EF_HPLMN)[0]);
+        return Converter.byteToHex(getEFData(DatabaseOfEF.EF_HPLMN, 0, 1)[0]);
     }
 
     /**
-     * Determines password tries left.
+     * Returns SecurityStatus of card - counters of tries left, initialisation
+     * of PINs and PUKs and file characteristics. It is obtained from card (2
+     * APDUs) only once per session and again after VERIFY.
      *
-     * @return array of integers with number of password tries left - array[0] =
-     * PIN1; array[1] = PUK1; array[2] = PIN2; array[3] = PUK2.
+     * @return SecurityStatus of card, null if there was error or session
+     * uses ISO class, in which MF returns FCP template without it
      */
-    public int[] numberOfPasswordTriesLeftArray() {
-        int[] numberOfPasswordTriesLeft = new int[4];
-        byte[] response = null;
-
+    public SecurityStatus getSecurityStatus() {
+        CardSession session = worker.manager.getSession();
+        SecurityStatus status = session.getSecurityStatus();
+        if (status != null || session.getCommandClass() == ApduWorker.ISO_CLASS) {
+            return status;
+        }
         try {
-            response = worker.getResponse(worker.select(DatabaseOfEF.MF.getFID()));
-
-            for (int i = 0; i < 4; i++) {
-                String binaryForm;
-                int j = response[18 + i]; //position of PIN1/PUK1/PIN2/PUK2
-                binaryForm = Integer.toBinaryString(j).substring(24);
-                numberOfPasswordTriesLeft[i] = Integer.parseInt(binaryForm.substring(4), 2);
-            }
+            status = new SecurityStatus(worker.selectDFWithResponse(DatabaseOfEF.MF));
+            session.setSecurityStatus(status);
         } catch (Exception ex) {
             Logger.getLogger(CardManager.class.getName()).log(Level.SEVERE, null, ex);
         }
+        return status;
+    }
 
-        return numberOfPasswordTriesLeft;
+    /**
+     * Determines password tries left.
+     *
+     * @return array of integers with number of password tries left - array[0] =
+     * PIN1; array[1] = PUK1; array[2] = PIN2; array[3] = PUK2.
+     */
+    public int[] numberOfPasswordTriesLeftArray() {
+        SecurityStatus status = getSecurityStatus();
+        if (status == null) {
+            return new int[4];
+        }
+        return status.getTriesLeft();
     }
 
     /**
@@ -329,39 +377,132 @@ public class Getters {
      * PIN2; array[3] = PUK2. If password is initialized, it has value true.
      */
     public boolean[] arePasswordsInitialised() {
-        boolean[] arePasswordsInitialised = new boolean[4];
-        byte[] response = null;
+        SecurityStatus status = getSecurityStatus();
+        if (status == null) {
+            return new boolean[4];
+        }
+        return status.areInitialised();
+    }
+
+    /**
+     * Returns Answer To Reset in HEX.
+     *
+     * @return Answer To Reset in HEX.
+     */
+    public String getATR() {
+        byte[] sessionATR = worker.manager.getSession().getATR();
+        byte[] ATR = new byte[sessionATR.length - 2];
+        System.arraycopy(sessionATR, 0, ATR, 0, sessionATR.length - 2);
+
+        return Converter.bytesToHex(ATR);
+    }
+
+    /**
+     * Returns number of records in given EF of card in this session.
+     *
+     * @param EF linear fixed or cyclic EF
+     * @return number of records in given EF, 0 if it can't be determined
+     */
+    public int getNumberOfEntries(EF EF) {
+        CardSession session = worker.manager.getSession();
+        FileInfo info = session.getFileInfo(EF);
+        if (info != null && EF.getCachePolicy() != CachePolicy.NONE && session.getCache().isEnabled()) {
+            return info.getNumberOfRecords(); //records are likely cached, EF needn't be selected
+        }
+        try {
+            return worker.selectWithInfo(EF).getNumberOfRecords();
+        } catch (Exception ex) {
+            Logger.getLogger(CardManager.class.getName()).log(Level.SEVERE, null, ex);
+        }
+        return 0;
+    }
+
+    /**
+     * Returns entire content of given transparent EF.
+     *
+     * @param EF to be read using READ BINARY command.
+     * @return content of EF without Status Word, null if it couldn't be read.
+     */
+    public byte[] getEFData(EF EF) {
+        return getEFData(EF, 0, Integer.MAX_VALUE);
+    }
 
+    /**
+     * Returns part of given transparent EF. With CachePolicy other than NONE
+     * EF that fits into one READ BINARY is read whole and cached, so any part
+     * of it is served from EFCache later; of larger EF only requested bytes
+     * are read, and cached only if they are the whole EF.
+     *
+     * @param EF to be read using READ BINARY command.
+     * @param offset offset of first byte that is to be read
+     * @param length number of bytes that are to be read
+     * @return requested bytes of EF, null if they couldn't be read.
+     */
+    public byte[] getEFData(EF EF, int offset, int length) {
         try {
-            response = worker.getResponse(worker.select(DatabaseOfEF.MF.getFID()));
-
-            for (int i = 0; i < 4; i++) {
-                String binaryForm;
-                int j = response[18 + i]; //position of PIN1/PUK1/PIN2/PUK2
-                binaryForm = Integer.toBinaryString(j).substring(24);
-                if (binaryForm.charAt(0) == '0') {
-                    arePasswordsInitialised[i] = false;
-                } else {
-                    arePasswordsInitialised[i] = true;
+            if (EF.getCachePolicy() == CachePolicy.NONE) {
+                return worker.readBinary(EF, offset, length);
+            }
+            EFCache cache = worker.manager.getSession().getCache();
+            byte[] content = cache.getContent(EF);
+            if (content == null) {
+                int size = worker.selectWithInfo(EF).getSize();
+                if (size > ApduWorker.MAX_LENGTH_OF_DATA && (offset > 0 || length < size)) {
+                    return worker.readBinary(EF, offset, length); //whole EF would cost more APDUs
                 }
+                content = worker.readBinary(EF);
+                cache.putContent(EF, content);
             }
+            if (offset < 0 || offset > content.length) {
+                throw new IllegalArgumentException("Offset " + offset + " is outside of " + EF.getShortName());
+            }
+            return Arrays.copyOfRange(content, offset, offset + Math.min(length, content.length - offset));
         } catch (Exception ex) {
             Logger.getLogger(CardManager.class.getName()).log(Level.SEVERE, null, ex);
         }
-
-        return arePasswordsInitialised;
+        return null;
     }
 
     /**
-     * Returns Answer To Reset in HEX.
+     * Returns record of given linear fixed or cyclic EF, from EFCache of
+     * session if it is allowed by CachePolicy of EF.
      *
-     * @return Answer To Reset in HEX.
+     * @param EF linear fixed or cyclic EF
+     * @param numberOfRecord sequential number of record that is to be read
+     * @return content of record, without Status Word
+     * @throws CardException if there was problem communicating with card
+     * @throws BadStatusWordException if card has returned Status Word
+     * indicating process aborted.
      */
-    public String getATR() {
-        byte[] ATR = new byte[CardManager.m_ATR.length - 2];
-        System.arraycopy(CardManager.m_ATR, 0, ATR, 0, CardManager.m_ATR.length - 2);
+    public byte[] getRecord(EF EF, int numberOfRecord) throws CardException, BadStatusWordException {
+        EFCache cache = worker.manager.getSession().getCache();
+        byte[] record = cache.getRecord(EF, numberOfRecord);
+        if (record == null) {
+            record = worker.readRecord(EF, numberOfRecord);
+            cache.putRecord(EF, numberOfRecord, record);
+        }
+        return record;
+    }
 
-        return Converter.bytesToHex(ATR);
+    /**
+     * Returns all records of given linear fixed or cyclic EF in one array,
+     * record after record, from EFCache of session if it is allowed by
+     * CachePolicy of EF. Length of record is in FileInfo of EF in session.
+     *
+     * @param EF linear fixed or cyclic EF
+     * @return all records of EF, without Status Words
+     * @throws CardException if there was problem communicating with card
+     * @throws BadStatusWordException if card has returned Status Word
+     * indicating process aborted.
+     */
+    public byte[] getRecords(EF EF) throws CardException, BadStatusWordException {
+        EFCache cache = worker.manager.getSession().getCache();
+        byte[] records = cache.getContent(EF);
+        if (records == null || worker.manager.getSession().getFileInfo(EF) == null) {
+            records = worker.readRecords(EF);
+            cache.putContent(EF, records);
+        }
+        return records;
     }
 
     /**
@@ -392,8 +533,7 @@ public class Getters {
     public byte[] getResponsesFromEFandSelectDF(EF EF) {
         byte[] response = null;
         try {
-            worker.select(EF.getDF().getFID());
-            response = worker.getResponse(worker.select(EF.getFID()));
+            response = worker.selectEF(EF);
             return response;
         } catch (Exception ex) {
             Logger.getLogger(cz.muni.fi.uco359952.simplesimreader.CardManager.class.getName()).log(Level.SEVERE, null, ex);
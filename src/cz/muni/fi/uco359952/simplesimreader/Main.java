@@ -4,9 +4,27 @@ import cz.muni.fi.uco359952.simplesimreader.exceptions.NoReaderFoundException;
 import cz.muni.fi.uco359952.simplesimreader.exceptions.WrongPINCharactersException;
 import cz.muni.fi.uco359952.simplesimreader.exceptions.WrongLengthOfPINException;
 import cz.muni.fi.uco359952.simplesimreader.exceptions.WrongPINException;
+import cz.muni.fi.uco359952.simplesimreader.data.DatabaseOfEF;
+import cz.muni.fi.uco359952.simplesimreader.data.IMSI;
+import cz.muni.fi.uco359952.simplesimreader.data.LOCI;
+import cz.muni.fi.uco359952.simplesimreader.image.CardDumper;
+import cz.muni.fi.uco359952.simplesimreader.image.CardImage;
+import cz.muni.fi.uco359952.simplesimreader.image.FileImage;
+import cz.muni.fi.uco359952.simplesimreader.image.ImageDiff;
+import cz.muni.fi.uco359952.simplesimreader.image.ImageStore;
+import cz.muni.fi.uco359952.simplesimreader.image.ImageTerminal;
+import cz.muni.fi.uco359952.simplesimreader.image.RecordChange;
 import java.io.Console;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
 import java.util.logging.Level;
 import java.util.logging.Logger;
+import javax.smartcardio.CardException;
 import javax.smartcardio.CardNotPresentException;
 
 /**
@@ -48,22 +66,297 @@ public class Main {
         return password;
     }
 
+    /**
+     * Creates job that reads data without authentication and returns them in
+     * one line.
+     *
+     * @return job that reads ATR, ICCID, SPN and Phase
+     */
+    public static CardJob<String> summaryJob() {
+        return new CardJob<String>() {
+
+            @Override
+            public String run(CardSession session) {
+                Getters getters = new Getters(session);
+                return "ATR: " + getters.getATR() + "; ICCID: " + getters.getICCID().getICCID()
+                        + "; " + DatabaseOfEF.EF_SPN.getShortName() + ": " + getters.getSPNString()
+                        + "; " + getters.getPhase();
+            }
+        };
+    }
+
+    /**
+     * Reads data without authentication from cards in all terminals at once
+     * and prints them on System.out, one line for every terminal.
+     */
+    public static void readAllTerminals() {
+        readAllTerminals(null);
+    }
+
+    /**
+     * Reads data without authentication from cards in terminals whose names
+     * match given regular expression and prints them on System.out, one line
+     * for every terminal.
+     *
+     * @param pattern regular expression for names of terminals, null for all
+     * terminals
+     */
+    public static void readAllTerminals(String pattern) {
+        ReaderFarm farm = new ReaderFarm();
+        try {
+            List<FarmResult<String>> results = pattern == null ? farm.readAll(summaryJob()) : farm.readAll(summaryJob(), pattern);
+            for (FarmResult<String> result : results) {
+                System.out.println(result);
+            }
+        } catch (NoReaderFoundException ex) {
+            System.err.println("No terminal found");
+        } catch (InterruptedException ex) {
+            Logger.getLogger(Main.class.getName()).log(Level.SEVERE, null, ex);
+        } finally {
+            farm.shutdown();
+        }
+    }
+
+    /**
+     * Reads data without authentication from every card that is inserted into
+     * any terminal and prints them on System.out, until program is ended.
+     */
+    public static void watchTerminals() {
+        ReaderFarm farm = new ReaderFarm();
+        CardMonitor<String> monitor = new CardMonitor<>(farm, summaryJob(), new CardListener<String>() {
+
+            @Override
+            public void cardRead(FarmResult<String> result) {
+                System.out.println(result);
+            }
+
+            @Override
+            public void cardRemoved(String terminalName) {
+                System.out.println(terminalName + ": card removed");
+            }
+        });
+        System.out.println("Waiting for cards, press Ctrl+C to end");
+        monitor.run();
+        farm.shutdown();
+    }
+
+    /**
+     * Reads fields of ReadPlan from connected card and prints them on
+     * System.out, together with estimated number of APDUs.
+     *
+     * @param plan plan with fields that are to be read
+     */
+    public static void writePlan(ReadPlan plan) {
+        CardSession session = writer.getters.worker.manager.getSession();
+        System.out.println("Order of reading: " + plan.getSteps(session));
+        System.out.println("Estimated number of APDUs: " + (plan.isEstimateExact(session) ? "" : "at least ")
+                + plan.getEstimatedApduCount(session) + "\n");
+        Map<ReadPlan.Field, Object> values = plan.execute(writer.getters);
+        for (Map.Entry<ReadPlan.Field, Object> entry : values.entrySet()) {
+            Object value = entry.getValue();
+            if (value instanceof IMSI) {
+                value = ((IMSI) value).writeAllInfoIntoOutputStream();
+            } else if (value instanceof LOCI) {
+                value = ((LOCI) value).writeAllInfoIntoOutputStream();
+            } else if (value instanceof byte[]) {
+                value = Converter.bytesToHex((byte[]) value);
+            } else if (value instanceof List) {
+                StringBuilder lines = new StringBuilder();
+                for (Object item : (List) value) {
+                    lines.append("\n").append(item);
+                }
+                value = lines;
+            }
+            System.out.println(entry.getKey() + ": " + value);
+        }
+        for (ReadPlan.Field field : plan.getFields()) {
+            if (!values.containsKey(field)) {
+                System.out.println(field + ": not allocated");
+            }
+        }
+    }
+
+    /**
+     * Dumps whole connected card into image file and prints list of dumped
+     * files on System.out.
+     *
+     * @param file image file
+     * @throws CardException if there was problem communicating with card
+     * @throws IOException if image file can't be written
+     */
+    public static void dumpCard(File file) throws CardException, IOException {
+        long start = System.currentTimeMillis();
+        CardImage image = new CardDumper(writer.getters.worker).dump();
+        image.write(file);
+        for (FileImage dumped : image.getFiles()) {
+            System.out.println(dumped);
+        }
+        System.out.println("Image of " + image.getFiles().size() + " files saved into " + file
+                + " in " + (System.currentTimeMillis() - start) + " ms");
+    }
+
+    /**
+     * Prints data with and without authentication from image file instead of
+     * card, no PIN is asked for.
+     *
+     * @param file image file written by dumpCard()
+     */
+    public static void readImage(File file) {
+        CardSession session;
+        try {
+            session = new CardSession(ImageTerminal.open(file));
+            session.connect();
+        } catch (IOException | CardException ex) {
+            System.err.println("Image can't be read: " + ex.getMessage());
+            return;
+        }
+        writer = new WriteIntoSystemOut(session);
+        try {
+            writer.writeDataWithoutAuthentication();
+            writer.writeDataWithAuthentication();
+        } finally {
+            try {
+                session.disconnect();
+            } catch (CardException ex) {
+                Logger.getLogger(Main.class.getName()).log(Level.SEVERE, null, ex);
+            }
+        }
+    }
+
+    /**
+     * Prints records that differ between two image files.
+     *
+     * @param before older image file, for example from intake of card
+     * @param after newer image file
+     */
+    public static void diffImages(File before, File after) {
+        ImageDiff diff;
+        try {
+            diff = new ImageDiff(CardImage.read(before), CardImage.read(after));
+        } catch (IOException ex) {
+            System.err.println("Image can't be read: " + ex.getMessage());
+            return;
+        }
+        for (RecordChange change : diff.getChanges()) {
+            System.out.println(change);
+        }
+        System.out.println(diff.getChanges().size() + " changed records");
+    }
+
+    /**
+     * Puts image files into store of images and prints how much space
+     * deduplication saved.
+     *
+     * @param directory directory of store
+     * @param images image files written by dumpCard()
+     */
+    public static void storeImages(File directory, List<File> images) {
+        try (ImageStore store = new ImageStore(directory)) {
+            long originalBytes = 0;
+            for (File image : images) {
+                String ICCID = store.put(CardImage.read(image));
+                originalBytes += image.length();
+                System.out.println(image + " stored as " + ICCID);
+            }
+            System.out.println(images.size() + " images of " + originalBytes + " bytes added, store has "
+                    + store.getICCIDs().size() + " cards in " + store.getNumberOfChunks() + " chunks of "
+                    + store.getStoredBytes() + " bytes");
+        } catch (IOException ex) {
+            System.err.println("Images can't be stored: " + ex.getMessage());
+        }
+    }
+
+    /**
+     * Writes image of card from store of images into image file.
+     *
+     * @param directory directory of store
+     * @param ICCID ICCID of card
+     * @param file image file
+     */
+    public static void restoreImage(File directory, String ICCID, File file) {
+        try (ImageStore store = new ImageStore(directory);
+                OutputStream out = new FileOutputStream(file)) {
+            store.writeImage(ICCID, out);
+            System.out.println("Image of card " + ICCID + " saved into " + file);
+        } catch (IOException ex) {
+            System.err.println("Image can't be restored: " + ex.getMessage());
+        }
+    }
+
     /**
      * Main method for terminal usage.
      *
-     * @param args the command line arguments
+     * @param args the command line arguments; "--farm" reads data without
+     * authentication from cards in all terminals, "--farm PATTERN" only from
+     * terminals whose names match PATTERN, "--watch" reads every card
+     * that is inserted, "--plan ICCID,IMSI,SMS" reads only given fields,
+     * "--dump FILE" saves image of whole card after PIN is verified, "--image
+     * FILE" prints data from image instead of card, "--diff OLD NEW" prints
+     * records that differ between two images, "--store DIR FILE..." puts
+     * images into deduplicating store, "--restore DIR ICCID FILE" writes image
+     * from store into file
      */
     public static void main(String[] args) {
+        if (args.length > 0 && args[0].equals("--farm")) {
+            readAllTerminals(args.length > 1 ? args[1] : null);
+            return;
+        }
+        if (args.length > 0 && args[0].equals("--watch")) {
+            watchTerminals();
+            return;
+        }
+        if (args.length > 1 && args[0].equals("--image")) {
+            readImage(new File(args[1]));
+            return;
+        }
+        if (args.length > 2 && args[0].equals("--diff")) {
+            diffImages(new File(args[1]), new File(args[2]));
+            return;
+        }
+        if (args.length > 2 && args[0].equals("--store")) {
+            List<File> images = new ArrayList<>();
+            for (int i = 2; i < args.length; i++) {
+                images.add(new File(args[i]));
+            }
+            storeImages(new File(args[1]), images);
+            return;
+        }
+        if (args.length > 3 && args[0].equals("--restore")) {
+            restoreImage(new File(args[1]), args[2], new File(args[3]));
+            return;
+        }
+        ReadPlan plan = null;
+        if (args.length > 1 && args[0].equals("--plan")) {
+            plan = ReadPlan.parse(args[1]);
+        }
+        File dump = null;
+        if (args.length > 1 && args[0].equals("--dump")) {
+            dump = new File(args[1]);
+        }
         writer = new WriteIntoSystemOut();
         try {
             if (writer.getters.worker.manager.ConnectToCard()) {
                 System.out.println("Successfully connected to card");
+                if (plan != null) {
+                    if (plan.needsPIN()) {
+                        System.out.println("\nEnter your PIN: ");
+                        writer.getters.worker.manager.VerifyPin(getCorrectPinFromUser());
+                    }
+                    writePlan(plan);
+                    return;
+                }
+                if (dump != null) {
+                    System.out.println("\nEnter your PIN: ");
+                    if (writer.getters.worker.manager.VerifyPin(getCorrectPinFromUser())) {
+                        dumpCard(dump);
+                    }
+                    return;
+                }
                 writer.writeDataWithoutAuthentication();
                 System.out.flush();
 
                 System.out.println("\nEnter your PIN: ");
                 if (writer.getters.worker.manager.VerifyPin(getCorrectPinFromUser())) {
-                    Converter.fillEFSizes();
                     writer.writeDataWithAuthentication();
                 }
             }
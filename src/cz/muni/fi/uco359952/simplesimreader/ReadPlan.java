@@ -0,0 +1,419 @@
+package cz.muni.fi.uco359952.simplesimreader;
+
+import cz.muni.fi.uco359952.simplesimreader.data.CachePolicy;
+import cz.muni.fi.uco359952.simplesimreader.data.DF;
+import cz.muni.fi.uco359952.simplesimreader.data.DatabaseOfEF;
+import cz.muni.fi.uco359952.simplesimreader.data.EF;
+import cz.muni.fi.uco359952.simplesimreader.data.FileInfo;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.smartcardio.CardException;
+
+/**
+ * Reads only requested fields of SIM card with as few APDUs as possible. Files
+ * are grouped by their DF, so every DF is selected only once, DF that is
+ * already selected goes first, and files that are not allocated according to
+ * SIM service table (SST) are skipped. Number of APDUs can be estimated before
+ * plan is run.
+ *
+ * @author Andrej Simko
+ */
+public class ReadPlan {
+
+    /**
+     * Fields that can be read by ReadPlan, each with its EF and number of
+     * service in SST that the EF depends on (0 if EF is always present).
+     */
+    public enum Field {
+
+        ICCID(DatabaseOfEF.EF_ICCID, 0) {
+            @Override
+            Object read(Getters getters) {
+                return getters.getICCID();
+            }
+        },
+        SPN(DatabaseOfEF.EF_SPN, 17) {
+            @Override
+            Object read(Getters getters) {
+                return getters.getSPNString();
+            }
+        },
+        PHASE(DatabaseOfEF.EF_PHASE, 0) {
+            @Override
+            Object read(Getters getters) {
+                return getters.getPhase();
+            }
+        },
+        LP(DatabaseOfEF.EF_LP, 0) {
+            @Override
+            Object read(Getters getters) {
+                return getters.getEFData(DatabaseOfEF.EF_LP);
+            }
+        },
+        IMSI(DatabaseOfEF.EF_IMSI, 0) {
+            @Override
+            Object read(Getters getters) {
+                return getters.getIMSI();
+            }
+        },
+        LOCI(DatabaseOfEF.EF_LOCI, 0) {
+            @Override
+            Object read(Getters getters) {
+                return getters.getLOCI();
+            }
+        },
+        KC(DatabaseOfEF.EF_KC, 0) {
+            @Override
+            Object read(Getters getters) {
+                return getters.getKCKeyString();
+            }
+        },
+        KCGPRS(DatabaseOfEF.EF_KCGPRS, 38) {
+            @Override
+            Object read(Getters getters) {
+                return getters.getKCGPRSKeyString();
+            }
+        },
+        HPLMN(DatabaseOfEF.EF_HPLMN, 0) {
+            @Override
+            Object read(Getters getters) {
+                return getters.getHPLMN();
+            }
+        },
+        SST(DatabaseOfEF.EF_SST, 0) {
+            @Override
+            Object read(Getters getters) {
+                return getters.getEFData(DatabaseOfEF.EF_SST);
+            }
+        },
+        MSISDN(DatabaseOfEF.EF_MSISDN, 9) {
+            @Override
+            Object read(Getters getters) {
+                List<String> numbers = new ArrayList<>();
+                int numberOfEntries = getters.getNumberOfEntries(DatabaseOfEF.EF_MSISDN);
+                for (int i = 1; i <= numberOfEntries; i++) {
+                    numbers.add(getters.getMSISDNString(i, false));
+                }
+                return numbers;
+            }
+        },
+        LND(DatabaseOfEF.EF_LND, 13) {
+            @Override
+            Object read(Getters getters) {
+                List<String> numbers = new ArrayList<>();
+                int numberOfEntries = getters.getNumberOfEntries(DatabaseOfEF.EF_LND);
+                for (int i = 1; i <= numberOfEntries; i++) {
+                    numbers.add(getters.getLNDString(i, false));
+                }
+                return numbers;
+            }
+        },
+        ADN(DatabaseOfEF.EF_ADN, 2) {
+            @Override
+            Object read(Getters getters) {
+                return getters.getListOfTelephoneBookRecord(false);
+            }
+        },
+        SMS(DatabaseOfEF.EF_SMS, 4) {
+            @Override
+            Object read(Getters getters) {
+                return getters.getListOfSMS(false);
+            }
+        };
+        private final EF EF;
+        private final int service;
+
+        private Field(EF EF, int service) {
+            this.EF = EF;
+            this.service = service;
+        }
+
+        /**
+         * Getter of EF where field is stored.
+         *
+         * @return EF of field
+         */
+        public EF getEF() {
+            return EF;
+        }
+
+        /**
+         * Getter of number of service in SST that EF of field depends on.
+         *
+         * @return number of service, 0 if EF is always present
+         */
+        public int getService() {
+            return service;
+        }
+
+        abstract Object read(Getters getters);
+    }
+    private final Set<Field> fields;
+
+    /**
+     * Creates ReadPlan for given fields.
+     *
+     * @param fields fields that are to be read
+     */
+    public ReadPlan(Set<Field> fields) {
+        this.fields = EnumSet.copyOf(fields);
+    }
+
+    /**
+     * Creates ReadPlan from comma separated names of fields, for example
+     * "ICCID, IMSI, SMS".
+     *
+     * @param fields comma separated names of fields
+     * @return ReadPlan for given fields
+     * @throws IllegalArgumentException if some field is unknown
+     */
+    public static ReadPlan parse(String fields) {
+        Set<Field> set = EnumSet.noneOf(Field.class);
+        for (String name : fields.split(",")) {
+            if (!name.trim().isEmpty()) {
+                set.add(Field.valueOf(name.trim().toUpperCase()));
+            }
+        }
+        return new ReadPlan(set);
+    }
+
+    /**
+     * Getter of requested fields.
+     *
+     * @return requested fields
+     */
+    public Set<Field> getFields() {
+        return EnumSet.copyOf(fields);
+    }
+
+    /**
+     * Determines whether some of requested fields can only be read after PIN
+     * verification.
+     *
+     * @return true if PIN is needed
+     */
+    public boolean needsPIN() {
+        for (Field field : fields) {
+            if (field.getEF().getReadAccess().equals(DatabaseOfEF.CHV1)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns fields in order in which they are read. SST is read first if
+     * some field depends on it and PIN is needed anyway (SST can't be read
+     * without PIN), then fields are grouped by their DF; DF that is selected
+     * in session goes first.
+     *
+     * @param session session whose selected DF is taken into account, can be
+     * null
+     * @return fields in order in which they are read
+     */
+    public List<Field> getSteps(CardSession session) {
+        Set<Field> toRead = EnumSet.copyOf(fields);
+        boolean needsPIN = needsPIN();
+        for (Field field : fields) {
+            if (field.getService() != 0 && needsPIN) {
+                toRead.add(Field.SST);
+            }
+        }
+
+        List<DF> order = new ArrayList<>();
+        if (toRead.contains(Field.SST)) {
+            order.add(Field.SST.getEF().getDF());
+        }
+        if (session != null && session.getSelectedDF() != null && !order.contains(session.getSelectedDF())) {
+            order.add(session.getSelectedDF());
+        }
+        for (Field field : toRead) {
+            if (!order.contains(field.getEF().getDF())) {
+                order.add(field.getEF().getDF());
+            }
+        }
+
+        List<Field> steps = new ArrayList<>();
+        if (toRead.remove(Field.SST)) {
+            steps.add(Field.SST);
+        }
+        for (DF DF : order) {
+            for (Field field : toRead) {
+                if (field.getEF().getDF() == DF) {
+                    steps.add(field);
+                }
+            }
+        }
+        return steps;
+    }
+
+    /**
+     * Estimates number of APDUs that reading of plan needs. FileInfos that
+     * have already been obtained in session are used, so number of records
+     * and size of files are known for them; for other files GET RESPONSE and
+     * one data APDU are counted. Contents and records that are in EFCache of
+     * session, as CachePolicy of their EF allows, need no APDU; EF whose
+     * content is cached whole isn't even selected.
+     *
+     * @param session session with card that is to be read
+     * @return estimated number of APDUs
+     */
+    public int getEstimatedApduCount(CardSession session) {
+        int count = 0;
+        DF currentDF = session.getSelectedDF();
+        EF currentEF = session.getSelectedEF();
+        for (Field field : getSteps(session)) {
+            EF EF = field.getEF();
+            FileInfo info = session.getFileInfo(EF);
+            int dataApdus = getNumberOfDataApdus(field, info, session.getCache());
+            if (dataApdus == 0) {
+                continue; //served from EFCache
+            }
+            if (EF.getDF() != currentDF) {
+                count++; //SELECT of DF
+                currentDF = EF.getDF();
+                currentEF = null;
+            }
+            if (EF != currentEF) {
+                count++; //SELECT of EF
+                if (info == null) {
+                    count++; //GET RESPONSE
+                }
+                currentEF = EF;
+            }
+            count += dataApdus;
+        }
+        return count;
+    }
+
+    /**
+     * Determines whether getEstimatedApduCount() is exact - that is whether
+     * FileInfos of all files in plan that are not cached whole in EFCache are
+     * already known.
+     *
+     * @param session session with card that is to be read
+     * @return true if estimate is exact
+     */
+    public boolean isEstimateExact(CardSession session) {
+        for (Field field : getSteps(session)) {
+            if (session.getFileInfo(field.getEF()) == null) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Reads all requested fields in one exclusive scope. Fields whose EF is
+     * not allocated according to SST are skipped and are not in result.
+     *
+     * @param getters Getters bound to session with card that is to be read
+     * @return Map of values of fields in order in which they were read, values
+     * are the same as returned by Getters
+     */
+    public Map<Field, Object> execute(Getters getters) {
+        Map<Field, Object> values = new LinkedHashMap<>();
+        CardSession session = getters.worker.manager.getSession();
+        try {
+            session.beginExclusive();
+        } catch (CardException ex) {
+            Logger.getLogger(ReadPlan.class.getName()).log(Level.SEVERE, null, ex);
+            return values;
+        }
+        try {
+            readSteps(getters, session, values);
+        } finally {
+            session.endExclusive();
+        }
+        return values;
+    }
+
+    private void readSteps(Getters getters, CardSession session, Map<Field, Object> values) {
+        byte[] SST = null;
+        for (Field field : getSteps(session)) {
+            if (field == Field.SST) {
+                SST = (byte[]) field.read(getters);
+                if (fields.contains(Field.SST)) {
+                    values.put(field, SST);
+                }
+                continue;
+            }
+            if (!isAllocated(SST, field.getService())) {
+                Logger.getLogger(ReadPlan.class.getName()).log(Level.INFO, "{0} is not allocated in SST, skipped", field);
+                continue;
+            }
+            values.put(field, field.read(getters));
+        }
+    }
+
+    /**
+     * Determines whether service is allocated according to SST. Every byte of
+     * SST holds 4 services, 2 bits each: first bit means allocated, second
+     * activated.
+     *
+     * @param SST content of EF_SST, null if it is not known
+     * @param service number of service, 0 for EF that is always present
+     * @return true if service is allocated, or if it can't be determined
+     */
+    public static boolean isAllocated(byte[] SST, int service) {
+        if (service == 0 || SST == null) {
+            return true;
+        }
+        int index = (service - 1) / 4;
+        if (index >= SST.length) {
+            return false;
+        }
+        int bit = ((service - 1) % 4) * 2;
+        return ((SST[index] >>> bit) & 0x01) == 1;
+    }
+
+    /**
+     * Counts READ BINARY or READ RECORD commands that reading of field sends,
+     * the same way Getters read it: with CachePolicy other than NONE
+     * transparent EF that fits into one READ BINARY is read whole and cached,
+     * larger one only in requested part, ADN is read and cached as all records
+     * at once (Getters.getRecords()), other record EFs record by record.
+     */
+    private int getNumberOfDataApdus(Field field, FileInfo info, EFCache cache) {
+        if (info == null) {
+            return 1; //nothing of EF is cached without its FileInfo
+        }
+        EF EF = field.getEF();
+        boolean cached = cache.isEnabled() && EF.getCachePolicy() != CachePolicy.NONE;
+        if (!info.getStructure().equals(DatabaseOfEF.transparent)) {
+            if (field == Field.ADN) {
+                return cache.contains(EF, 0) ? 0 : info.getNumberOfRecords();
+            }
+            int count = 0;
+            for (int i = 1; i <= info.getNumberOfRecords(); i++) {
+                if (!cache.contains(EF, i)) {
+                    count++;
+                }
+            }
+            return count;
+        }
+        if (cache.contains(EF, 0)) {
+            return 0;
+        }
+        int size = info.getSize();
+        if (!cached || size > ApduWorker.MAX_LENGTH_OF_DATA) { //only requested part is read
+            switch (field) {
+                case PHASE:
+                case HPLMN:
+                    size = 1;
+                    break;
+                case KC:
+                case KCGPRS:
+                    size = 9;
+                    break;
+            }
+        }
+        return Math.max(1, (size + ApduWorker.MAX_LENGTH_OF_DATA - 1) / ApduWorker.MAX_LENGTH_OF_DATA);
+    }
+}
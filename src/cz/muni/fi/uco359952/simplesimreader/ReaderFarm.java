@@ -0,0 +1,349 @@
+package cz.muni.fi.uco359952.simplesimreader;
+
+import cz.muni.fi.uco359952.simplesimreader.exceptions.NoReaderFoundException;
+import cz.muni.fi.uco359952.simplesimreader.exceptions.ReaderParkedException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import javax.smartcardio.CardNotPresentException;
+import javax.smartcardio.CardTerminal;
+
+/**
+ * Runs CardJobs on all attached terminals in parallel. Every terminal has its
+ * own worker thread with its own queue of jobs, so jobs for one terminal are
+ * done one after another while different terminals work at the same time.
+ * Terminals without card are skipped. Job which doesn't finish within job
+ * timeout has its session aborted and is reported as TIMED_OUT; worker that
+ * stays stuck even then is replaced, so next jobs for terminal don't wait. If
+ * stuck worker holds card locked, its reader is parked until worker returns
+ * (see CardSession.abort()) and jobs queued for terminal are reported as
+ * PARKED instead of being run. Readers parked by their ReaderHealth are
+ * reported as PARKED without any communication.
+ *
+ * @author Andrej Simko
+ */
+public class ReaderFarm {
+
+    /**
+     * Default time in milliseconds one job has to finish, can be set by
+     * system property "simplesimreader.jobTimeout"; 0 means no limit.
+     */
+    public static final long DEFAULT_JOB_TIMEOUT = Long.getLong("simplesimreader.jobTimeout", 0);
+    /**
+     * Time in milliseconds aborted job has to give up its worker before
+     * worker is replaced.
+     */
+    public static final long ABORT_GRACE = 2000;
+    private final Map<String, ExecutorService> workers = new HashMap<>();
+    private final Map<String, CardSession> activeSessions = new ConcurrentHashMap<>();
+    private boolean shutdown = false;
+    private volatile long jobTimeout = DEFAULT_JOB_TIMEOUT;
+    private volatile long apduTimeout = CardSession.DEFAULT_APDU_TIMEOUT;
+
+    /**
+     * Getter for time one job has to finish.
+     *
+     * @return timeout in milliseconds, 0 means no limit
+     */
+    public long getJobTimeout() {
+        return jobTimeout;
+    }
+
+    /**
+     * Setter for time one job has to finish. Session of job that runs longer
+     * is aborted and job is reported as TIMED_OUT.
+     *
+     * @param jobTimeout timeout in milliseconds, 0 means no limit
+     */
+    public void setJobTimeout(long jobTimeout) {
+        this.jobTimeout = jobTimeout;
+    }
+
+    /**
+     * Getter for time card has to answer one APDU in sessions of jobs.
+     *
+     * @return timeout in milliseconds, 0 means no limit
+     */
+    public long getApduTimeout() {
+        return apduTimeout;
+    }
+
+    /**
+     * Setter for time card has to answer one APDU in sessions of jobs.
+     *
+     * @param apduTimeout timeout in milliseconds, 0 means no limit
+     */
+    public void setApduTimeout(long apduTimeout) {
+        this.apduTimeout = apduTimeout;
+    }
+
+    /**
+     * Puts job into queue of worker of given terminal. Job gets its own
+     * session connected to card in terminal, session is disconnected after
+     * job has finished.
+     *
+     * @param <T> type of result of job
+     * @param terminal terminal with card
+     * @param job job to be run
+     * @return Future with result of job in given terminal
+     */
+    public <T> Future<FarmResult<T>> submit(CardTerminal terminal, CardJob<T> job) {
+        return submit(terminal, job, null);
+    }
+
+    /**
+     * Puts job into queue of worker of given terminal and notifies listener
+     * when job has finished.
+     *
+     * @param <T> type of result of job
+     * @param terminal terminal with card
+     * @param job job to be run
+     * @param listener listener that gets result of job, can be null
+     * @return Future with result of job in given terminal
+     */
+    public <T> Future<FarmResult<T>> submit(final CardTerminal terminal, final CardJob<T> job, final CardListener<T> listener) {
+        FarmTask<T> task = new FarmTask<>(terminal, job, listener);
+        getWorker(terminal).execute(task);
+        return task;
+    }
+
+    /**
+     * Job in queue of worker. Job that can't be run because its reader is
+     * held parked is completed by fail() instead.
+     */
+    private class FarmTask<T> extends FutureTask<FarmResult<T>> {
+
+        private final String terminalName;
+        private final CardListener<T> listener;
+
+        FarmTask(final CardTerminal terminal, final CardJob<T> job, final CardListener<T> listener) {
+            super(new Callable<FarmResult<T>>() {
+
+                @Override
+                public FarmResult<T> call() {
+                    FarmResult<T> result = runJob(terminal, job);
+                    if (listener != null) {
+                        listener.cardRead(result);
+                    }
+                    return result;
+                }
+            });
+            this.terminalName = terminal.getName();
+            this.listener = listener;
+        }
+
+        /**
+         * Completes job as PARKED without running it.
+         */
+        void fail() {
+            FarmResult<T> result = new FarmResult<>(terminalName, FarmResult.Status.PARKED, null, new ReaderParkedException(terminalName));
+            if (listener != null) {
+                listener.cardRead(result);
+            }
+            set(result);
+        }
+    }
+
+    /**
+     * Tears down session of job that is just running in given terminal, for
+     * example because card has been removed. Running job then fails on its
+     * next APDU.
+     *
+     * @param terminal terminal whose session is torn down
+     */
+    public void abort(CardTerminal terminal) {
+        CardSession session = activeSessions.get(terminal.getName());
+        if (session != null) {
+            session.abort();
+        }
+    }
+
+    /**
+     * Runs job on every terminal that is found and waits until all jobs are
+     * finished. If job timeout is set, waits at most job timeout plus
+     * ABORT_GRACE, jobs that haven't finished by then are reported as
+     * TIMED_OUT.
+     *
+     * @param <T> type of result of job
+     * @param job job to be run on every card
+     * @return List of results, one for every terminal
+     * @throws NoReaderFoundException if no PC/SC reader was found
+     * @throws InterruptedException if waiting for results was interrupted
+     */
+    public <T> List<FarmResult<T>> readAll(CardJob<T> job) throws NoReaderFoundException, InterruptedException {
+        return readAll(job, TerminalRegistry.getDefault().list());
+    }
+
+    /**
+     * Runs job on every terminal whose name contains match of given regular
+     * expression and waits until all jobs are finished.
+     *
+     * @param <T> type of result of job
+     * @param job job to be run on every card
+     * @param pattern regular expression that names of terminals are matched
+     * against
+     * @return List of results, one for every matching terminal
+     * @throws NoReaderFoundException if no PC/SC reader matches pattern
+     * @throws InterruptedException if waiting for results was interrupted
+     * @see TerminalRegistry#findMatching(String)
+     */
+    public <T> List<FarmResult<T>> readAll(CardJob<T> job, String pattern) throws NoReaderFoundException, InterruptedException {
+        List<CardTerminal> terminalList = TerminalRegistry.getDefault().findMatching(pattern);
+        if (terminalList.isEmpty()) {
+            throw new NoReaderFoundException();
+        }
+        return readAll(job, terminalList);
+    }
+
+    private <T> List<FarmResult<T>> readAll(CardJob<T> job, List<CardTerminal> terminalList) throws InterruptedException {
+        List<Future<FarmResult<T>>> futures = new ArrayList<>();
+        for (int i = 0; i < terminalList.size(); i++) {
+            futures.add(submit(terminalList.get(i), job));
+        }
+
+        long timeout = jobTimeout;
+        long deadline = System.currentTimeMillis() + timeout + ABORT_GRACE;
+        List<FarmResult<T>> results = new ArrayList<>();
+        for (int i = 0; i < futures.size(); i++) {
+            CardTerminal terminal = terminalList.get(i);
+            try {
+                if (timeout > 0) {
+                    long remaining = Math.max(0, deadline - System.currentTimeMillis());
+                    results.add(futures.get(i).get(remaining, TimeUnit.MILLISECONDS));
+                } else {
+                    results.add(futures.get(i).get());
+                }
+            } catch (ExecutionException ex) {
+                results.add(new FarmResult<T>(terminal.getName(), FarmResult.Status.FAILED, null, (Exception) ex.getCause()));
+            } catch (TimeoutException ex) {
+                futures.get(i).cancel(true);
+                abort(terminal);
+                replaceWorker(terminal);
+                results.add(new FarmResult<T>(terminal.getName(), FarmResult.Status.TIMED_OUT, null, null));
+            }
+        }
+        return results;
+    }
+
+    /**
+     * Stops all workers after they finish jobs that are already in their
+     * queues.
+     */
+    public synchronized void shutdown() {
+        shutdown = true;
+        for (ExecutorService worker : workers.values()) {
+            worker.shutdown();
+        }
+        workers.clear();
+    }
+
+    private <T> FarmResult<T> runJob(CardTerminal terminal, CardJob<T> job) {
+        String name = terminal.getName();
+        final CardSession session = new CardSession(terminal);
+        session.setApduTimeout(apduTimeout);
+        final AtomicBoolean expired = new AtomicBoolean(false);
+        ScheduledFuture<?> watchdog = null;
+        try {
+            if (!ReaderHealth.of(name).isAvailable()) {
+                return new FarmResult<T>(name, FarmResult.Status.PARKED, null, null);
+            }
+            if (!terminal.isCardPresent()) {
+                return new FarmResult<T>(name, FarmResult.Status.EMPTY, null, null);
+            }
+            activeSessions.put(name, session);
+            long timeout = jobTimeout;
+            if (timeout > 0) {
+                watchdog = CardSession.WATCHDOG.schedule(new Runnable() {
+
+                    @Override
+                    public void run() {
+                        expired.set(true);
+                        session.abort();
+                    }
+                }, timeout, TimeUnit.MILLISECONDS);
+            }
+            session.connect();
+            T value = job.run(session);
+            if (expired.get()) {
+                return new FarmResult<T>(name, FarmResult.Status.TIMED_OUT, null, null);
+            }
+            return new FarmResult<T>(name, FarmResult.Status.DONE, value, null);
+        } catch (CardNotPresentException ex) {
+            return new FarmResult<T>(name, FarmResult.Status.EMPTY, null, null);
+        } catch (ReaderParkedException ex) {
+            return new FarmResult<T>(name, FarmResult.Status.PARKED, null, ex);
+        } catch (Exception ex) {
+            if (expired.get()) {
+                return new FarmResult<T>(name, FarmResult.Status.TIMED_OUT, null, ex);
+            }
+            return new FarmResult<T>(name, FarmResult.Status.FAILED, null, ex);
+        } finally {
+            if (watchdog != null) {
+                watchdog.cancel(false);
+            }
+            activeSessions.remove(name, session); //not session of job that has replaced this one
+            try {
+                session.disconnect();
+            } catch (Exception ex) {
+                //card has been removed or terminal is gone, nothing to clean up
+            }
+        }
+    }
+
+    /**
+     * Replaces worker that is stuck in job. Jobs queued for terminal are
+     * moved to new worker, unless reader is held parked because stuck worker
+     * has card locked - then they are failed, every one of them would fail on
+     * the same locked card anyway.
+     */
+    private synchronized void replaceWorker(CardTerminal terminal) {
+        ExecutorService worker = workers.remove(terminal.getName());
+        if (worker != null) {
+            List<Runnable> queued = worker.shutdownNow();
+            if (shutdown || !ReaderHealth.of(terminal.getName()).isAvailable()) {
+                for (Runnable job : queued) {
+                    ((FarmTask<?>) job).fail();
+                }
+                return;
+            }
+            ExecutorService replacement = getWorker(terminal);
+            for (Runnable job : queued) {
+                replacement.execute(job);
+            }
+        }
+    }
+
+    private synchronized ExecutorService getWorker(CardTerminal terminal) {
+        if (shutdown) {
+            throw new IllegalStateException("ReaderFarm has been shut down");
+        }
+        final String name = terminal.getName();
+        ExecutorService worker = workers.get(name);
+        if (worker == null) {
+            worker = Executors.newSingleThreadExecutor(new ThreadFactory() {
+
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread thread = new Thread(r, "ReaderFarm " + name);
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+            workers.put(name, worker);
+        }
+        return worker;
+    }
+}
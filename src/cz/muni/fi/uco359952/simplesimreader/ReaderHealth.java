@@ -0,0 +1,209 @@
+package cz.muni.fi.uco359952.simplesimreader;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Health of one terminal - circuit breaker that counts failures in
+ * communication with reader. After FAILURE_THRESHOLD failures in a row reader
+ * is parked and every attempt to use it fails immediately with
+ * ReaderParkedException. When park time runs out, one probing attempt is
+ * allowed - success makes reader healthy again, failure parks it again.
+ * <p>Only failures of transport count, Status Words returned by card don't.
+ * Reader is also parked, regardless of park time, while it is held - when
+ * thread blocked in it with card locked has been abandoned, see hold().
+ * Every terminal has one ReaderHealth shared by all sessions in process.
+ *
+ * @author Andrej Simko
+ */
+public class ReaderHealth {
+
+    /**
+     * State of reader.
+     */
+    public enum State {
+
+        /**
+         * Last communication was successful.
+         */
+        HEALTHY,
+        /**
+         * Reader has failed, but less than FAILURE_THRESHOLD times in a row.
+         */
+        DEGRADED,
+        /**
+         * Reader has failed FAILURE_THRESHOLD times in a row, or is held, and
+         * is not used.
+         */
+        PARKED,
+        /**
+         * Park time has run out, reader is being tried again.
+         */
+        PROBING
+    }
+    /**
+     * Number of failures in a row after which reader is parked.
+     */
+    public static final int FAILURE_THRESHOLD = 3;
+    /**
+     * Default time in milliseconds reader stays parked, can be set by system
+     * property "simplesimreader.parkTime".
+     */
+    public static final long DEFAULT_PARK_TIME = Long.getLong("simplesimreader.parkTime", 30000);
+    private static final ConcurrentMap<String, ReaderHealth> HEALTHS = new ConcurrentHashMap<>();
+    private final String terminalName;
+    private State state = State.HEALTHY;
+    private int consecutiveFailures = 0;
+    private long parkedUntil = 0;
+    private long parkTime = DEFAULT_PARK_TIME;
+    private int holds = 0;
+
+    private ReaderHealth(String terminalName) {
+        this.terminalName = terminalName;
+    }
+
+    /**
+     * Returns health of terminal with given name.
+     *
+     * @param terminalName name of terminal
+     * @return ReaderHealth of terminal, created when it is asked for the first
+     * time
+     */
+    public static ReaderHealth of(String terminalName) {
+        ReaderHealth health = HEALTHS.get(terminalName);
+        if (health == null) {
+            HEALTHS.putIfAbsent(terminalName, new ReaderHealth(terminalName));
+            health = HEALTHS.get(terminalName);
+        }
+        return health;
+    }
+
+    /**
+     * Determines whether reader can be used. Parked reader whose park time has
+     * run out goes to PROBING state and can be used.
+     *
+     * @return false if reader is parked
+     */
+    public synchronized boolean isAvailable() {
+        if (holds > 0) {
+            return false;
+        }
+        if (state == State.PARKED) {
+            if (System.currentTimeMillis() < parkedUntil) {
+                return false;
+            }
+            state = State.PROBING;
+        }
+        return true;
+    }
+
+    /**
+     * Records successful communication with reader.
+     */
+    public synchronized void recordSuccess() {
+        consecutiveFailures = 0;
+        state = State.HEALTHY;
+    }
+
+    /**
+     * Records failed communication with reader. Reader is parked if it has
+     * failed FAILURE_THRESHOLD times in a row or if it was being probed.
+     */
+    public synchronized void recordFailure() {
+        consecutiveFailures++;
+        if (state == State.PROBING || consecutiveFailures >= FAILURE_THRESHOLD) {
+            if (state != State.PARKED) {
+                Logger.getLogger(ReaderHealth.class.getName()).log(Level.WARNING, "Reader {0} parked after {1} failures", new Object[]{terminalName, consecutiveFailures});
+            }
+            state = State.PARKED;
+            parkedUntil = System.currentTimeMillis() + parkTime;
+        } else {
+            state = State.DEGRADED;
+        }
+    }
+
+    /**
+     * Parks reader until release() is called. Used when thread that is
+     * blocked in transmit holds card locked in exclusive scope: card can't be
+     * disconnected by other thread, so nobody can use reader until blocked
+     * thread returns and unlocks card.
+     */
+    public synchronized void hold() {
+        if (holds++ == 0) {
+            Logger.getLogger(ReaderHealth.class.getName()).log(Level.WARNING, "Reader {0} parked until abandoned thread returns", terminalName);
+        }
+    }
+
+    /**
+     * Ends park started by hold(). When last hold is released, reader is
+     * probed by its next use, or when its park time runs out if it has failed
+     * meanwhile.
+     */
+    public synchronized void release() {
+        if (holds > 0 && --holds == 0) {
+            state = State.PARKED;
+        }
+    }
+
+    /**
+     * Makes reader healthy again, for example after it has been replaced.
+     */
+    public synchronized void reset() {
+        consecutiveFailures = 0;
+        parkedUntil = 0;
+        holds = 0;
+        state = State.HEALTHY;
+    }
+
+    /**
+     * Getter for state of reader.
+     *
+     * @return state of reader
+     */
+    public synchronized State getState() {
+        return holds > 0 ? State.PARKED : state;
+    }
+
+    /**
+     * Getter for number of failures in a row.
+     *
+     * @return number of failures since last success
+     */
+    public synchronized int getConsecutiveFailures() {
+        return consecutiveFailures;
+    }
+
+    /**
+     * Getter for time reader stays parked.
+     *
+     * @return park time in milliseconds
+     */
+    public synchronized long getParkTime() {
+        return parkTime;
+    }
+
+    /**
+     * Setter for time reader stays parked.
+     *
+     * @param parkTime park time in milliseconds
+     */
+    public synchronized void setParkTime(long parkTime) {
+        this.parkTime = parkTime;
+    }
+
+    /**
+     * Getter for name of terminal.
+     *
+     * @return name of terminal
+     */
+    public String getTerminalName() {
+        return terminalName;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return terminalName + ": " + getState() + " (" + consecutiveFailures + " failures)";
+    }
+}
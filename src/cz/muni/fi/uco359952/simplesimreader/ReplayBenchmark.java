@@ -0,0 +1,111 @@
+package cz.muni.fi.uco359952.simplesimreader;
+
+import cz.muni.fi.uco359952.simplesimreader.trace.ReplayDivergence;
+import cz.muni.fi.uco359952.simplesimreader.trace.ReplayTerminal;
+import cz.muni.fi.uco359952.simplesimreader.trace.ReplayTerminals;
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Main class that runs job against sessions recorded in trace file, without
+ * card, and measures how long it takes. Job is the same as in "--farm" mode
+ * of Main, or reading of ReadPlan if "--plan FIELDS" is given, so trace should
+ * be recorded by the same mode. Responses come immediately, so time of
+ * Getters and Converter is measured; with "--realtime" they come after
+ * recorded time, so whole run is measured as it was with card. Commands that
+ * differ from recorded sessions are printed at the end.
+ * <p>Arguments: TRACE [ROUNDS] [--realtime] [--plan FIELDS]
+ *
+ * @author Andrej Simko
+ */
+public class ReplayBenchmark {
+
+    /**
+     * Number of rounds if no number is given.
+     */
+    public static final int DEFAULT_ROUNDS = 10;
+    private static final int MAX_PRINTED_DIVERGENCES = 20;
+
+    /**
+     * Main method of benchmark.
+     *
+     * @param args trace file, optionally number of rounds, "--realtime" and
+     * "--plan FIELDS"
+     */
+    public static void main(String[] args) {
+        if (args.length == 0) {
+            System.err.println("Usage: ReplayBenchmark TRACE [ROUNDS] [--realtime] [--plan FIELDS]");
+            return;
+        }
+        int rounds = DEFAULT_ROUNDS;
+        boolean realTime = false;
+        ReadPlan plan = null;
+        for (int i = 1; i < args.length; i++) {
+            if (args[i].equals("--realtime")) {
+                realTime = true;
+            } else if (args[i].equals("--plan") && i + 1 < args.length) {
+                plan = ReadPlan.parse(args[++i]);
+            } else {
+                rounds = Integer.parseInt(args[i]);
+            }
+        }
+        ReplayTerminals replay;
+        try {
+            replay = ReplayTerminals.load(new File(args[0]));
+        } catch (IOException ex) {
+            Logger.getLogger(ReplayBenchmark.class.getName()).log(Level.SEVERE, null, ex);
+            return;
+        }
+        replay.setRealTime(realTime);
+        CardJob<?> job = plan == null ? Main.summaryJob() : planJob(plan);
+
+        System.out.println("Sessions: " + replay.getTerminals().size() + (realTime ? ", real time" : ", full speed"));
+        for (int round = 1; round <= rounds; round++) {
+            long start = System.nanoTime();
+            long apdus = 0;
+            for (ReplayTerminal terminal : replay.getTerminals()) {
+                runJob(terminal, job);
+                apdus += terminal.getNumberOfReplayed();
+            }
+            long nanos = System.nanoTime() - start;
+            System.out.println("Round " + round + ": " + nanos / 1000000 + " ms, " + apdus + " APDUs, "
+                    + (apdus == 0 ? 0 : nanos / 1000 / apdus) + " us/APDU");
+        }
+
+        List<ReplayDivergence> divergences = replay.getDivergences();
+        System.out.println("Divergences: " + divergences.size());
+        for (int i = 0; i < divergences.size() && i < MAX_PRINTED_DIVERGENCES; i++) {
+            System.out.println("  " + divergences.get(i));
+        }
+    }
+
+    private static CardJob<Object> planJob(final ReadPlan plan) {
+        return new CardJob<Object>() {
+
+            @Override
+            public Object run(CardSession session) {
+                return plan.execute(new Getters(session));
+            }
+        };
+    }
+
+    private static void runJob(ReplayTerminal terminal, CardJob<?> job) {
+        CardSession session = new CardSession(terminal);
+        session.setTraceRecorder(null); //replay is not recorded again
+        try {
+            session.connect();
+            job.run(session);
+        } catch (Exception ex) {
+            Logger.getLogger(ReplayBenchmark.class.getName()).log(Level.SEVERE, null, ex);
+        } finally {
+            try {
+                session.disconnect();
+            } catch (Exception ex) {
+                Logger.getLogger(ReplayBenchmark.class.getName()).log(Level.SEVERE, null, ex);
+            }
+        }
+    }
+}
@@ -0,0 +1,238 @@
+package cz.muni.fi.uco359952.simplesimreader;
+
+import cz.muni.fi.uco359952.simplesimreader.exceptions.NoReaderFoundException;
+import cz.muni.fi.uco359952.simplesimreader.simulator.SimulatorProvider;
+import cz.muni.fi.uco359952.simplesimreader.trace.ReplayProvider;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.regex.Pattern;
+import javax.smartcardio.CardException;
+import javax.smartcardio.CardTerminal;
+import javax.smartcardio.CardTerminals;
+import javax.smartcardio.TerminalFactory;
+
+/**
+ * Long-lived registry of terminals. Owns TerminalFactory and its PC/SC
+ * context, so they are created once per process instead of once per
+ * connection. Terminals are enumerated when registry is used for the first
+ * time and again when refresh() is called, when terminal that is asked for by
+ * name is not known yet, and on next use after invalidate(). CardMonitor
+ * refreshes registry whenever PC/SC reports change in terminals, and session
+ * invalidates it when terminal taken from it fails. Enumeration keeps
+ * CardTerminal objects of terminals that are still attached, adds new ones
+ * and drops detached ones.
+ * <p>Registry doesn't recover lost PC/SC context: SunPCSC establishes one
+ * context for whole JVM and new TerminalFactory uses the same one, so after
+ * restart of PC/SC daemon enumeration keeps failing and finds no terminals
+ * until the process is started again.
+ * <p>System property "simplesimreader.terminalFactory" chooses factory of
+ * default registry: "Simulator" gives simulated readers (see
+ * SimulatorProvider), "Replay" gives terminals that replay recorded trace (see
+ * ReplayProvider), anything else or nothing gives PC/SC.
+ *
+ * @author Andrej Simko
+ */
+public class TerminalRegistry {
+
+    /**
+     * System property with type of TerminalFactory of default registry.
+     */
+    public static final String FACTORY_PROPERTY = "simplesimreader.terminalFactory";
+    private static TerminalRegistry defaultRegistry = null;
+    private final TerminalFactory factory;
+    private final CardTerminals terminals;
+    private volatile Map<String, CardTerminal> byName = null;
+    private volatile boolean stale = false;
+
+    /**
+     * Creates registry over TerminalFactory given by FACTORY_PROPERTY.
+     */
+    private TerminalRegistry() {
+        this(createFactory());
+    }
+
+    /**
+     * Creates registry over given TerminalFactory.
+     *
+     * @param factory factory whose terminals are registered
+     */
+    public TerminalRegistry(TerminalFactory factory) {
+        this.factory = factory;
+        this.terminals = factory.terminals();
+    }
+
+    /**
+     * Returns registry shared by whole process.
+     *
+     * @return registry over default TerminalFactory
+     */
+    public static synchronized TerminalRegistry getDefault() {
+        if (defaultRegistry == null) {
+            defaultRegistry = new TerminalRegistry();
+        }
+        return defaultRegistry;
+    }
+
+    /**
+     * Getter for TerminalFactory of this registry.
+     *
+     * @return TerminalFactory
+     */
+    public TerminalFactory getFactory() {
+        return factory;
+    }
+
+    /**
+     * Getter for CardTerminals of this registry, used for waiting for
+     * insertions and removals of cards.
+     *
+     * @return CardTerminals of TerminalFactory of this registry
+     */
+    public CardTerminals getCardTerminals() {
+        return terminals;
+    }
+
+    /**
+     * Returns all known terminals. Terminals are enumerated again if none are
+     * known or registry has been invalidated, otherwise they are taken from
+     * registry.
+     *
+     * @return List of terminals in order given by PC/SC
+     * @throws NoReaderFoundException if no PC/SC reader was found
+     */
+    public List<CardTerminal> list() throws NoReaderFoundException {
+        Map<String, CardTerminal> current = byName;
+        if (current == null || current.isEmpty() || stale) {
+            current = enumerate();
+        }
+        if (current.isEmpty()) {
+            throw new NoReaderFoundException();
+        }
+        return new ArrayList<>(current.values());
+    }
+
+    /**
+     * Enumerates terminals again. Known terminals keep their CardTerminal
+     * objects, new terminals are added and detached ones are dropped.
+     *
+     * @return List of terminals in order given by PC/SC
+     * @throws NoReaderFoundException if no PC/SC reader was found
+     */
+    public List<CardTerminal> refresh() throws NoReaderFoundException {
+        Map<String, CardTerminal> current = enumerate();
+        if (current.isEmpty()) {
+            throw new NoReaderFoundException();
+        }
+        return new ArrayList<>(current.values());
+    }
+
+    /**
+     * Returns terminal with given name. Terminals are enumerated again only if
+     * no such terminal is known or registry has been invalidated.
+     *
+     * @param name name of terminal
+     * @return terminal with given name, null if there is none
+     */
+    public CardTerminal find(String name) {
+        Map<String, CardTerminal> current = byName;
+        if (current == null || !current.containsKey(name) || stale) {
+            current = enumerate();
+        }
+        return current.get(name);
+    }
+
+    /**
+     * Returns all terminals whose names contain match of given regular
+     * expression, for example "ACS" or "Reader [0-3]$".
+     *
+     * @param pattern regular expression
+     * @return List of matching terminals, empty if there are none
+     */
+    public List<CardTerminal> findMatching(String pattern) {
+        return findMatching(Pattern.compile(pattern));
+    }
+
+    /**
+     * Returns all terminals whose names contain match of given pattern.
+     *
+     * @param pattern pattern of names
+     * @return List of matching terminals, empty if there are none
+     */
+    public List<CardTerminal> findMatching(Pattern pattern) {
+        Map<String, CardTerminal> current = byName;
+        if (current == null || stale) {
+            current = enumerate();
+        }
+        List<CardTerminal> matching = new ArrayList<>();
+        for (Map.Entry<String, CardTerminal> entry : current.entrySet()) {
+            if (pattern.matcher(entry.getKey()).find()) {
+                matching.add(entry.getValue());
+            }
+        }
+        return matching;
+    }
+
+    /**
+     * Marks known terminals as outdated, so they are enumerated again when
+     * registry is used next time.
+     */
+    public void invalidate() {
+        stale = true;
+    }
+
+    /**
+     * Invalidates default registry if given terminal has been taken from it.
+     * Called by session when terminal fails, reader could have been detached.
+     *
+     * @param terminal terminal that failed
+     */
+    static synchronized void terminalFailed(CardTerminal terminal) {
+        if (defaultRegistry != null && defaultRegistry.byName != null
+                && defaultRegistry.byName.get(terminal.getName()) == terminal) {
+            defaultRegistry.invalidate();
+        }
+    }
+
+    private static TerminalFactory createFactory() {
+        if (SimulatorProvider.TYPE.equals(System.getProperty(FACTORY_PROPERTY))) {
+            return SimulatorProvider.getTerminalFactory(null);
+        }
+        if (ReplayProvider.TYPE.equals(System.getProperty(FACTORY_PROPERTY))) {
+            return ReplayProvider.getTerminalFactory(null);
+        }
+        try {
+            return TerminalFactory.getInstance(TerminalFactory.getDefaultType(), null);
+        } catch (NoSuchAlgorithmException ex) {
+            return TerminalFactory.getDefault();
+        }
+    }
+
+    private synchronized Map<String, CardTerminal> enumerate() {
+        Map<String, CardTerminal> previous = byName;
+        stale = false;
+        List<CardTerminal> attached;
+        try {
+            attached = terminals.list();
+        } catch (CardException ex) {
+            Logger.getLogger(TerminalRegistry.class.getName()).log(Level.SEVERE, null, ex);
+            attached = Collections.emptyList();
+        }
+        Map<String, CardTerminal> current = new LinkedHashMap<>();
+        for (CardTerminal terminal : attached) {
+            String name = terminal.getName();
+            if (previous != null && previous.containsKey(name)) {
+                current.put(name, previous.get(name));
+            } else {
+                current.put(name, terminal);
+            }
+        }
+        byName = Collections.unmodifiableMap(current);
+        return byName;
+    }
+}
@@ -3,12 +3,15 @@ package cz.muni.fi.uco359952.simplesimreader;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import cz.muni.fi.uco359952.simplesimreader.data.DatabaseOfEF;
 import cz.muni.fi.uco359952.simplesimreader.data.ICCID;
 import cz.muni.fi.uco359952.simplesimreader.data.IMSI;
 import cz.muni.fi.uco359952.simplesimreader.data.LOCI;
+import cz.muni.fi.uco359952.simplesimreader.data.SecurityStatus;
 
 /**
  * Writes data on System.out while using class Getters
@@ -20,14 +23,24 @@ public class WriteIntoSystemOut {
     /**
      * Stores variable with class Getters
      */
-    public static Getters getters;
+    public final Getters getters;
 
     /**
-     * Constructor for WriteIntoSystemOut - creates one instance of Getters for
-     * further use.
+     * Constructor for WriteIntoSystemOut - creates one instance of Getters
+     * with its own session for further use.
      */
     public WriteIntoSystemOut() {
-        getters = new Getters();
+        this(new CardSession());
+    }
+
+    /**
+     * Constructor for WriteIntoSystemOut - creates one instance of Getters
+     * bound to given session for further use.
+     *
+     * @param session session with card whose data are written
+     */
+    public WriteIntoSystemOut(CardSession session) {
+        getters = new Getters(session);
     }
 
     /**
@@ -57,8 +70,13 @@ public class WriteIntoSystemOut {
      * initialization and number of their tries left.
      */
     public void numberOfPasswordTriesLeftAndTheirInitialization() {
-        boolean[] arePasswordsInitialised = getters.arePasswordsInitialised();
-        int[] numberOfPasswordTriesLeft = getters.numberOfPasswordTriesLeftArray();
+        SecurityStatus status = getters.getSecurityStatus(); //one SELECT MF for both
+        if (status == null) {
+            System.out.println("Status of PINs and PUKs is not available");
+            return;
+        }
+        boolean[] arePasswordsInitialised = status.areInitialised();
+        int[] numberOfPasswordTriesLeft = status.getTriesLeft();
 
         for (int i = 0; i < 4; i++) {
             String typeOfCurrentPassword = "";
@@ -104,9 +122,7 @@ public class WriteIntoSystemOut {
         OutputStream output = new ByteArrayOutputStream();
         try {
             output.write((DatabaseOfEF.EF_SST.getLongName() + ": \n").getBytes());
-            byte[] input = getters.getEFBytes(DatabaseOfEF.EF_SST);
-            byte[] SST = new byte[input.length - 2];
-            System.arraycopy(input, 0, SST, 0, input.length - 2);
+            byte[] SST = getters.getEFData(DatabaseOfEF.EF_SST);
             for (int i = 1; i <= SST.length; i++) {
                 int toConvertToBinary = ((int) SST[i - 1] << 24) >>> 24;
                 String binary = Integer.toBinaryString(toConvertToBinary);
@@ -160,9 +176,7 @@ public class WriteIntoSystemOut {
      */
     public void writeLP() {
 
-        byte[] input = getters.getEFBytes(DatabaseOfEF.EF_LP);
-        byte[] LP = new byte[input.length - 2];
-        System.arraycopy(input, 0, LP, 0, input.length - 2);
+        byte[] LP = getters.getEFData(DatabaseOfEF.EF_LP);
 
         System.out.println("Preferred languages:");
         for (int i = 0; i < LP.length; i++) {
@@ -181,7 +195,8 @@ public class WriteIntoSystemOut {
     public void WriteAllLND(boolean writeAlsoInHex) {
         System.out.println("Last numbers dialed: ");
 
-        for (int i = 1; i <= DatabaseOfEF.EF_LND.getNumberOfEntries(); i++) {
+        int numberOfEntries = getters.getNumberOfEntries(DatabaseOfEF.EF_LND);
+        for (int i = 1; i <= numberOfEntries; i++) {
             if (!getters.getLNDString(i, false).isEmpty()) { //print only valid data, not FF
                 if (writeAlsoInHex) {
                     System.out.println(i + " in hex: " + getters.getLNDString(i, true));
@@ -199,7 +214,8 @@ public class WriteIntoSystemOut {
      * interpretation. If false, writes only human readable form.
      */
     public void writeAllMSISDNData(boolean writeAlsoInHex) {
-        for (int i = 1; i <= DatabaseOfEF.EF_MSISDN.getNumberOfEntries(); i++) {
+        int numberOfEntries = getters.getNumberOfEntries(DatabaseOfEF.EF_MSISDN);
+        for (int i = 1; i <= numberOfEntries; i++) {
             if (!getters.getMSISDNString(i, false).isEmpty()) {
                 if (writeAlsoInHex) {
                     System.out.println("MSISDN n." + i + " in hex: " + getters.getMSISDNString(i, true));
@@ -213,23 +229,74 @@ public class WriteIntoSystemOut {
      * Writes complex information about all data that can be obtained from SIM
      * with knowledge of correct PIN, on System.out. <p>Writes IMSI, LOCI,
      * MSISDN, LND, KC, KCGPRS, HPLMN, SST, ADN and SMS in human readable form.
+     * <p>Files of DF_GSM are read on logical channel at the same time as files
+     * of DF_TELECOM are read on basic channel, if card supports logical
+     * channels. Otherwise files of DF_GSM are read first.
      */
     public void writeDataWithAuthentication() {
         System.out.println("\nWITH PIN:\n");
-        IMSI imsi = getters.getIMSI();
-        System.out.println(imsi.writeAllInfoIntoOutputStream() + "\n");
-        LOCI loci = getters.getLOCI();
-        System.out.println(loci.writeAllInfoIntoOutputStream() + "\n");
-        writeAllMSISDNData(true);
-        System.out.println();
-        WriteAllLND(true);
-        System.out.println();
+        ChannelScheduler scheduler = new ChannelScheduler(getters.worker.manager.getSession());
+        try {
+            Future<IMSI> imsi = scheduler.submit(DatabaseOfEF.DF_GSM, new CardJob<IMSI>() {
 
-        System.out.println((DatabaseOfEF.EF_KC.getLongName() + ": " + getters.getKCKeyString() + "\n"));
-        System.out.println((DatabaseOfEF.EF_KCGPRS.getLongName() + ": " + getters.getKCGPRSKeyString() + "\n"));
-        System.out.println((DatabaseOfEF.EF_HPLMN.getLongName() + ": " + getters.getHPLMN() + " minutes\n"));
-        writeSST(true, false);
-        System.out.println();
+                @Override
+                public IMSI run(CardSession session) {
+                    return new Getters(session).getIMSI();
+                }
+            });
+            Future<LOCI> loci = scheduler.submit(DatabaseOfEF.DF_GSM, new CardJob<LOCI>() {
+
+                @Override
+                public LOCI run(CardSession session) {
+                    return new Getters(session).getLOCI();
+                }
+            });
+            Future<String> kc = scheduler.submit(DatabaseOfEF.DF_GSM, new CardJob<String>() {
+
+                @Override
+                public String run(CardSession session) {
+                    return new Getters(session).getKCKeyString();
+                }
+            });
+            Future<String> kcgprs = scheduler.submit(DatabaseOfEF.DF_GSM, new CardJob<String>() {
+
+                @Override
+                public String run(CardSession session) {
+                    return new Getters(session).getKCGPRSKeyString();
+                }
+            });
+            Future<String> hplmn = scheduler.submit(DatabaseOfEF.DF_GSM, new CardJob<String>() {
+
+                @Override
+                public String run(CardSession session) {
+                    return new Getters(session).getHPLMN();
+                }
+            });
+            Future<OutputStream> sst = scheduler.submit(DatabaseOfEF.DF_GSM, new CardJob<OutputStream>() {
+
+                @Override
+                public OutputStream run(CardSession session) {
+                    return new WriteIntoSystemOut(session).writeSST(true, false);
+                }
+            });
+
+            System.out.println(imsi.get().writeAllInfoIntoOutputStream() + "\n");
+            System.out.println(loci.get().writeAllInfoIntoOutputStream() + "\n");
+            writeAllMSISDNData(true);
+            System.out.println();
+            WriteAllLND(true);
+            System.out.println();
+
+            System.out.println((DatabaseOfEF.EF_KC.getLongName() + ": " + kc.get() + "\n"));
+            System.out.println((DatabaseOfEF.EF_KCGPRS.getLongName() + ": " + kcgprs.get() + "\n"));
+            System.out.println((DatabaseOfEF.EF_HPLMN.getLongName() + ": " + hplmn.get() + " minutes\n"));
+            System.out.println(sst.get());
+            System.out.println();
+        } catch (InterruptedException | ExecutionException ex) {
+            Logger.getLogger(WriteIntoSystemOut.class.getName()).log(Level.SEVERE, null, ex);
+        } finally {
+            scheduler.close();
+        }
 
         //System.out.println(DatabaseOfEF.EF_PLMNsel.getLongName() + ": " );
         getters.getListOfTelephoneBookRecord();
@@ -0,0 +1,104 @@
+package cz.muni.fi.uco359952.simplesimreader.data;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Walks contiguous buffer with all records of EF_ADN, for example content of
+ * record EF in CardImage, and skips empty slots by their length of number
+ * only. One ContactView is moved from record to record:
+ * <pre>
+ * AdnDecoder decoder = new AdnDecoder(records, recordLength);
+ * while (decoder.next()) {
+ *     ContactView contact = decoder.getContact();
+ *     ...
+ * }
+ * </pre>
+ *
+ * @author Andrej Simko
+ */
+public class AdnDecoder {
+
+    private final ByteBuffer records;
+    private final int recordLength;
+    private final int numberOfRecords;
+    private final ContactView view = new ContactView();
+    private int next = 0;
+
+    /**
+     * Creates decoder of records between position and limit of buffer.
+     *
+     * @param records buffer with records of EF_ADN one after another
+     * @param recordLength length of one record
+     */
+    public AdnDecoder(ByteBuffer records, int recordLength) {
+        if (recordLength < ContactView.NUMBER_PART_LENGTH) {
+            throw new IllegalArgumentException("Record of " + recordLength + " bytes is too short for ADN");
+        }
+        this.records = records;
+        this.recordLength = recordLength;
+        this.numberOfRecords = records.remaining() / recordLength;
+    }
+
+    /**
+     * Creates decoder of records in array.
+     *
+     * @param records records of EF_ADN one after another
+     * @param recordLength length of one record
+     */
+    public AdnDecoder(byte[] records, int recordLength) {
+        this(ByteBuffer.wrap(records), recordLength);
+    }
+
+    /**
+     * Moves to next record that is not empty.
+     *
+     * @return true if there is such record, false at end of buffer
+     */
+    public boolean next() {
+        int alphaLength = recordLength - ContactView.NUMBER_PART_LENGTH;
+        while (next < numberOfRecords) {
+            int offset = records.position() + next * recordLength;
+            next++;
+            int length = records.get(offset + alphaLength) & 0xff;
+            if (length != 0 && length != 0xFF) {
+                view.reset(records, offset, recordLength);
+                view.setIndex(next);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns view of current record. It is the same object for all records.
+     *
+     * @return view of record found by last next(), with its index set
+     */
+    public ContactView getContact() {
+        return view;
+    }
+
+    /**
+     * Getter for number of all records in buffer, including empty ones.
+     *
+     * @return number of records
+     */
+    public int getNumberOfRecords() {
+        return numberOfRecords;
+    }
+
+    /**
+     * Decodes all remaining records that are not empty into Contacts.
+     *
+     * @return List of Contacts, with their indexes set
+     */
+    public List<Contact> decodeAll() {
+        List<Contact> contacts = new ArrayList<>();
+        while (next()) {
+            contacts.add(view.toContact());
+        }
+        return contacts;
+    }
+}
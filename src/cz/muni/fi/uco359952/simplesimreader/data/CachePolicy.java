@@ -0,0 +1,32 @@
+package cz.muni.fi.uco359952.simplesimreader.data;
+
+/**
+ * Determines how long content of EF read from card can be kept in memory of
+ * session and served again without reading it from card.
+ *
+ * @author Andrej Simko
+ */
+public enum CachePolicy {
+
+    /**
+     * Content is always read from card.
+     */
+    NONE,
+    /**
+     * Content can be written only by administrator (ICCID, PHASE, SST), so it
+     * is kept for whole session.
+     */
+    IMMUTABLE,
+    /**
+     * Content is changed by card when it communicates with network (LOCI,
+     * KC), so it is kept until RUN GSM ALGORITHM or SIM Toolkit command is
+     * sent to card, or until EF is updated.
+     */
+    UNTIL_NETWORK_ACTIVITY,
+    /**
+     * Content is changed only when EF is updated (SMS, ADN), so it is kept
+     * until UPDATE command is sent to it or SIM Toolkit command is sent to
+     * card.
+     */
+    UNTIL_UPDATE
+}
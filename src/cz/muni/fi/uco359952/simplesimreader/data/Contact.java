@@ -49,6 +49,20 @@ public class Contact {
 
     }
 
+    /**
+     * Constructor for Contact whose name and phone number have already been
+     * decoded, for example by ContactView.
+     *
+     * @param name name of contact
+     * @param phoneNumber phone number of contact
+     * @param index Index of ADN entry in EF_ADN
+     */
+    Contact(String name, String phoneNumber, int index) {
+        this.name = name;
+        this.phoneNumber = phoneNumber;
+        this.index = index;
+    }
+
     /**
      * Getter for phone number of contact.
      *
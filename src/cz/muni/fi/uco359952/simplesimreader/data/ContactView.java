@@ -0,0 +1,276 @@
+package cz.muni.fi.uco359952.simplesimreader.data;
+
+import cz.muni.fi.uco359952.simplesimreader.Converter;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import net.freeutils.charset.CharsetProvider;
+
+/**
+ * View of one record of EF_ADN (or EF_MSISDN, EF_LND, which have the same
+ * structure) that decodes name and number only when they are asked for,
+ * straight from bytes of record. Record is alpha identifier followed by 14
+ * bytes: length of number, type of number, 10 bytes of BCD digits, capability
+ * and extension identifiers. Length of alpha identifier is length of record
+ * minus 14, as GSM 11.11 says; Contact assumes 14 bytes of it, so the two
+ * differ for records that are not 28 bytes long. View can be moved over all
+ * records of EF in one buffer, see AdnDecoder.
+ * <p>Name in GSM default alphabet is decoded through lookup tables that are
+ * built once from the same charset Converter.getNameFromADNEntry() uses;
+ * names in UCS2 (first byte '80', '81' or '82') are decoded as in GSM 11.11,
+ * annex B. Name and number into char array allocate nothing. View is not
+ * thread-safe.
+ *
+ * @author Andrej Simko
+ */
+public class ContactView {
+
+    /**
+     * Number of bytes of record after alpha identifier.
+     */
+    public static final int NUMBER_PART_LENGTH = 14;
+    /**
+     * Maximum length of decoded telephone number, with "00" of international
+     * number.
+     */
+    public static final int MAX_NUMBER_LENGTH = 22;
+    private static final int MAX_DIGITS_LENGTH = 10;
+    private static final int INTERNATIONAL = 0x91;
+    private static final int ESCAPE = 0x1B;
+    private ByteBuffer buffer;
+    private int offset;
+    private int recordLength;
+    private int index = -1;
+
+    /**
+     * Lookup tables of GSM default alphabet, created when name is decoded the
+     * first time.
+     */
+    private static class GSMAlphabet {
+
+        private static final char[] BASIC = new char[256];
+        private static final char[] EXTENSION = new char[256];
+
+        static {
+            Charset charset = new CharsetProvider().charsetForName("GSM-default-alphabet");
+            for (int b = 0; b < 256; b++) {
+                BASIC[b] = new String(new byte[]{(byte) b}, charset).charAt(0);
+                EXTENSION[b] = new String(new byte[]{(byte) ESCAPE, (byte) b}, charset).charAt(0);
+            }
+        }
+    }
+
+    /**
+     * Creates view that is not over any record yet, see reset().
+     */
+    public ContactView() {
+    }
+
+    /**
+     * Creates view of record obtained with "READ RECORD" APDU command.
+     *
+     * @param record one record of EF_ADN
+     */
+    public ContactView(byte[] record) {
+        this(ByteBuffer.wrap(record), 0, record.length);
+    }
+
+    /**
+     * Creates view of record in buffer.
+     *
+     * @param buffer buffer with records of EF_ADN
+     * @param offset absolute position of first byte of record in buffer
+     * @param recordLength length of record, at least NUMBER_PART_LENGTH
+     */
+    public ContactView(ByteBuffer buffer, int offset, int recordLength) {
+        reset(buffer, offset, recordLength);
+    }
+
+    /**
+     * Moves view to another record. Index of contact is left as it is.
+     *
+     * @param buffer buffer with records of EF_ADN
+     * @param offset absolute position of first byte of record in buffer
+     * @param recordLength length of record, at least NUMBER_PART_LENGTH
+     * @return this view
+     */
+    public ContactView reset(ByteBuffer buffer, int offset, int recordLength) {
+        if (recordLength < NUMBER_PART_LENGTH) {
+            throw new IllegalArgumentException("Record of " + recordLength + " bytes is too short for ADN");
+        }
+        this.buffer = buffer;
+        this.offset = offset;
+        this.recordLength = recordLength;
+        return this;
+    }
+
+    /**
+     * Getter for length of alpha identifier, which is also maximum length of
+     * decoded name.
+     *
+     * @return number of bytes of name in record
+     */
+    public int getAlphaLength() {
+        return recordLength - NUMBER_PART_LENGTH;
+    }
+
+    private int numberOffset() {
+        return offset + getAlphaLength();
+    }
+
+    /**
+     * Deduces if slot is empty from length of number only.
+     *
+     * @return TRUE if record has no number
+     */
+    public boolean isEmpty() {
+        int length = buffer.get(numberOffset()) & 0xff;
+        return length == 0 || length == 0xFF;
+    }
+
+    /**
+     * Writes name of contact into char array.
+     *
+     * @param name array with at least getAlphaLength() free characters
+     * @param nameOffset position in array of first character
+     * @return number of characters written
+     */
+    public int getName(char[] name, int nameOffset) {
+        int alphaLength = getAlphaLength();
+        if (alphaLength == 0) {
+            return 0;
+        }
+        switch (buffer.get(offset) & 0xff) {
+            case 0x80:
+                return getUCS2Name(name, nameOffset);
+            case 0x81:
+                return getUCS2Name(name, nameOffset, 3, (buffer.get(offset + 2) & 0xff) << 7);
+            case 0x82:
+                return getUCS2Name(name, nameOffset, 4, ((buffer.get(offset + 2) & 0xff) << 8) | (buffer.get(offset + 3) & 0xff));
+            default:
+                return getGSMName(name, nameOffset);
+        }
+    }
+
+    private int getGSMName(char[] name, int nameOffset) {
+        int end = numberOffset();
+        int written = 0;
+        for (int i = offset; i < end; i++) {
+            int b = buffer.get(i) & 0xff;
+            if (b == 0xFF) {
+                break;
+            }
+            if (b == ESCAPE && i + 1 < end && buffer.get(i + 1) != (byte) 0xFF) {
+                name[nameOffset + written++] = GSMAlphabet.EXTENSION[buffer.get(++i) & 0xff];
+            } else {
+                name[nameOffset + written++] = GSMAlphabet.BASIC[b];
+            }
+        }
+        return written;
+    }
+
+    /**
+     * Name of 16-bit characters after '80', ended by 'FF'.
+     */
+    private int getUCS2Name(char[] name, int nameOffset) {
+        int end = numberOffset();
+        int written = 0;
+        for (int i = offset + 1; i + 1 < end; i += 2) {
+            int high = buffer.get(i) & 0xff;
+            int low = buffer.get(i + 1) & 0xff;
+            if (high == 0xFF || low == 0xFF) {
+                break;
+            }
+            name[nameOffset + written++] = (char) ((high << 8) | low);
+        }
+        return written;
+    }
+
+    /**
+     * Name after '81' or '82': number of characters, base of 16-bit
+     * characters, then characters - 7-bit ones in GSM default alphabet, ones
+     * with 8th bit set as offset from base.
+     */
+    private int getUCS2Name(char[] name, int nameOffset, int start, int base) {
+        int numberOfCharacters = Math.min(buffer.get(offset + 1) & 0xff, numberOffset() - offset - start);
+        for (int i = 0; i < numberOfCharacters; i++) {
+            int b = buffer.get(offset + start + i) & 0xff;
+            name[nameOffset + i] = b >= 0x80 ? (char) (base + (b & 0x7F)) : GSMAlphabet.BASIC[b];
+        }
+        return Math.max(0, numberOfCharacters);
+    }
+
+    /**
+     * Getter for name of contact.
+     *
+     * @return name of contact
+     */
+    public String getName() {
+        char[] name = new char[getAlphaLength()];
+        return new String(name, 0, getName(name, 0));
+    }
+
+    /**
+     * Writes phone number of contact into char array. Filler 'F' is left out,
+     * 'A' and 'B' are written as '*' and '#'.
+     *
+     * @param digits array with at least MAX_NUMBER_LENGTH free characters
+     * @param digitsOffset position in array of first character
+     * @return number of characters written, 0 for empty slot
+     */
+    public int getPhoneNumber(char[] digits, int digitsOffset) {
+        if (isEmpty()) {
+            return 0;
+        }
+        int position = numberOffset();
+        int written = 0;
+        if ((buffer.get(position + 1) & 0xff) == INTERNATIONAL) {
+            digits[digitsOffset] = '0';
+            digits[digitsOffset + 1] = '0';
+            written = 2;
+        }
+        int length = Math.min((buffer.get(position) & 0xff) - 1, MAX_DIGITS_LENGTH);
+        return written + Converter.decodeBCD(buffer, position + 2, length, digits, digitsOffset + written, true);
+    }
+
+    /**
+     * Getter for phone number of contact.
+     *
+     * @return phone number of contact, empty for empty slot
+     */
+    public String getPhoneNumber() {
+        char[] digits = new char[MAX_NUMBER_LENGTH];
+        return new String(digits, 0, getPhoneNumber(digits, 0));
+    }
+
+    /**
+     * Getter for Index of ADN entry.
+     *
+     * @return Index of ADN entry in EF_ADN.
+     */
+    public int getIndex() {
+        return index;
+    }
+
+    /**
+     * Setter for Index of current ADN record in EF_ADN structure.
+     *
+     * @param index Index of current ADN record in EF_ADN structure.
+     */
+    public void setIndex(int index) {
+        this.index = index;
+    }
+
+    /**
+     * Decodes record into Contact, only name and number are allocated.
+     *
+     * @return Contact with the same index
+     */
+    public Contact toContact() {
+        return new Contact(getName(), getPhoneNumber(), index);
+    }
+
+    @Override
+    public String toString() {
+        return index + ".: " + getName() + ", " + getPhoneNumber();
+    }
+}
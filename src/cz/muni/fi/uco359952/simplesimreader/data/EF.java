@@ -22,6 +22,7 @@ public class EF {
     private int sizeOfEntireEF = -1;
     private int sizeOfOneEntry = -1;
     private int numberOfEntries = -1;
+    private CachePolicy cachePolicy = CachePolicy.NONE;
 
     /**
      *
@@ -46,6 +47,24 @@ public class EF {
 
     }
 
+    /**
+     *
+     * @param longName long name of Elementary File (for example "International
+     * mobile subscriber identity")
+     * @param shortName short name of Elementary File (for example "IMSI")
+     * @param DF superior Dedicated File that Elementary File belongs to
+     * @param FID File ID of Elementary File
+     * @param readAccess access rights to read Elementary File
+     * @param writeAccess access rights to write Elementary File
+     * @param structure structure of Elementary File - transparent, linear fixed
+     * or cyclic
+     * @param cachePolicy how long content of Elementary File can be cached
+     */
+    public EF(String longName, String shortName, DF DF, byte[] FID, String readAccess, String writeAccess, String structure, CachePolicy cachePolicy) {
+        this(longName, shortName, DF, FID, readAccess, writeAccess, structure);
+        this.cachePolicy = cachePolicy;
+    }
+
     /**
      * Getter of superior Dedicated File that Elementary File belongs to.
      *
@@ -141,6 +160,15 @@ public class EF {
         return structure;
     }
 
+    /**
+     * Getter of policy of caching of content of Elementary File.
+     *
+     * @return how long content of Elementary File can be cached
+     */
+    public CachePolicy getCachePolicy() {
+        return cachePolicy;
+    }
+
     /**
      * Getter of access right to write in Elementary File.
      *
@@ -0,0 +1,239 @@
+package cz.muni.fi.uco359952.simplesimreader.data;
+
+/**
+ * Holds parsed response data of Elementary File, which card returns on GET
+ * RESPONSE command after selecting EF (GSM 11.11, chapter 9.2.1) - size of
+ * file, File ID, access conditions, structure and length of record. Response
+ * to SELECT in ISO class with P2 = '04' is FCP template (ETSI TS 102 221,
+ * chapter 11.1.1.3) instead; it is recognised by its tag '62' and the same
+ * information is taken from its data objects.
+ *
+ * @author Andrej Simko
+ */
+public class FileInfo {
+
+    /**
+     * Tag of FCP template.
+     */
+    public static final int FCP_TAG = 0x62;
+    private static final int FILE_DESCRIPTOR_TAG = 0x82;
+    private static final int FILE_IDENTIFIER_TAG = 0x83;
+    private static final int FILE_SIZE_TAG = 0x80;
+    private static final int LIFE_CYCLE_STATUS_TAG = 0x8A;
+
+    private final byte[] response;
+    private final int size;
+    private final byte[] FID;
+    private final int typeOfFile;
+    private final byte[] accessConditions;
+    private final int fileStatus;
+    private final String structure;
+    private final int recordLength;
+
+    /**
+     * Constructor that parses FileInfo from Response APDU.
+     *
+     * @param response Response APDU after GET RESPONSE command of EF,
+     * including Status Word - GSM response data or FCP template
+     * @throws IllegalArgumentException if response is shorter than 15 bytes
+     * of data and Status Word, or FCP template is malformed
+     */
+    public FileInfo(byte[] response) {
+        this.response = response;
+        if (response.length > 2 && (response[0] & 0xff) == FCP_TAG) {
+            int[] fields = parseFCP(response);
+            size = fields[0];
+            FID = new byte[]{(byte) (fields[1] >>> 8), (byte) fields[1]};
+            typeOfFile = fields[2];
+            accessConditions = new byte[0];
+            fileStatus = fields[3];
+            structure = fields[4] == 0x01 ? DatabaseOfEF.linearFixed : fields[4] == 0x03 ? DatabaseOfEF.cyclic : DatabaseOfEF.transparent;
+            recordLength = fields[5];
+            return;
+        }
+        if (response.length < 17) {
+            throw new IllegalArgumentException("Response of EF is too short: " + response.length + " bytes");
+        }
+        size = ((response[2] & 0xff) << 8) | (response[3] & 0xff);
+        FID = new byte[]{response[4], response[5]};
+        typeOfFile = response[6] & 0xff;
+        accessConditions = new byte[]{response[8], response[9], response[10]};
+        fileStatus = response[11] & 0xff;
+        switch (response[13]) {
+            case 0x01:
+                structure = DatabaseOfEF.linearFixed;
+                break;
+            case 0x03:
+                structure = DatabaseOfEF.cyclic;
+                break;
+            default:
+                structure = DatabaseOfEF.transparent;
+        }
+        recordLength = response[14] & 0xff;
+    }
+
+    /**
+     * Parses data objects of FCP template into size, File ID, type of file,
+     * file status, structure and length of record coded as in GSM response.
+     */
+    private static int[] parseFCP(byte[] response) {
+        int end = Math.min(response.length - 2, 2 + (response[1] & 0xff));
+        int size = -1;
+        int FID = 0;
+        int typeOfFile = 0x04;
+        int fileStatus = 0x01;
+        int structure = 0x00;
+        int recordLength = 0;
+        int numberOfRecords = 0;
+        boolean described = false;
+        int position = 2;
+        while (position + 1 < end) {
+            int tag = response[position] & 0xff;
+            int length = response[position + 1] & 0xff;
+            int value = position + 2;
+            if (value + length > end) {
+                throw new IllegalArgumentException("Data object " + Integer.toHexString(tag) + " of FCP is truncated");
+            }
+            switch (tag) {
+                case FILE_DESCRIPTOR_TAG:
+                    if (length < 2) {
+                        throw new IllegalArgumentException("File descriptor of FCP is too short");
+                    }
+                    int descriptor = response[value] & 0xff;
+                    described = true;
+                    if ((descriptor & 0x38) == 0x38) { //DF or ADF
+                        typeOfFile = 0x02;
+                    } else if ((descriptor & 0x07) == 0x02) {
+                        structure = 0x01;
+                    } else if ((descriptor & 0x07) == 0x06) {
+                        structure = 0x03;
+                    }
+                    if (structure != 0x00 && length >= 5) {
+                        recordLength = ((response[value + 2] & 0xff) << 8) | (response[value + 3] & 0xff);
+                        numberOfRecords = response[value + 4] & 0xff;
+                    }
+                    break;
+                case FILE_IDENTIFIER_TAG:
+                    if (length == 2) {
+                        FID = ((response[value] & 0xff) << 8) | (response[value + 1] & 0xff);
+                    }
+                    break;
+                case FILE_SIZE_TAG:
+                    size = 0;
+                    for (int i = 0; i < length; i++) {
+                        size = (size << 8) | (response[value + i] & 0xff);
+                    }
+                    break;
+                case LIFE_CYCLE_STATUS_TAG:
+                    if (length == 1) {
+                        fileStatus = response[value] & 0x01; //'05' activated, '04' deactivated
+                    }
+                    break;
+                default:
+                    break;
+            }
+            position = value + length;
+        }
+        if (!described) {
+            throw new IllegalArgumentException("FCP has no file descriptor");
+        }
+        if (typeOfFile == 0x02 && FID == 0x3F00) {
+            typeOfFile = 0x01;
+        }
+        if (size < 0) {
+            size = recordLength * numberOfRecords;
+        }
+        return new int[]{size, FID, typeOfFile, fileStatus, structure, recordLength};
+    }
+
+    /**
+     * Getter of Response APDU this FileInfo was parsed from.
+     *
+     * @return Response APDU after GET RESPONSE command, including Status Word
+     */
+    public byte[] getResponse() {
+        return response;
+    }
+
+    /**
+     * Getter of size of entire Elementary File.
+     *
+     * @return size of entire Elementary File in bytes
+     */
+    public int getSize() {
+        return size;
+    }
+
+    /**
+     * Getter of File ID of Elementary File.
+     *
+     * @return File ID of Elementary File
+     */
+    public byte[] getFID() {
+        return FID;
+    }
+
+    /**
+     * Getter of type of file (0x01 for MF, 0x02 for DF, 0x04 for EF).
+     *
+     * @return type of file
+     */
+    public int getTypeOfFile() {
+        return typeOfFile;
+    }
+
+    /**
+     * Getter of access conditions - 3 bytes with conditions for READ, UPDATE,
+     * INCREASE, REHABILITATE and INVALIDATE.
+     *
+     * @return access conditions, empty for FCP template, whose security
+     * attributes are coded differently
+     */
+    public byte[] getAccessConditions() {
+        return accessConditions;
+    }
+
+    /**
+     * Determines whether file is invalidated.
+     *
+     * @return true if file is invalidated
+     */
+    public boolean isInvalidated() {
+        return (fileStatus & 0x01) == 0;
+    }
+
+    /**
+     * Getter of structure of Elementary File.
+     *
+     * @return structure of Elementary File - transparent, linear fixed or
+     * cyclic
+     */
+    public String getStructure() {
+        return structure;
+    }
+
+    /**
+     * Getter of length of one record.
+     *
+     * @return length of one record, 0 for transparent file
+     */
+    public int getRecordLength() {
+        if (structure.equals(DatabaseOfEF.transparent)) {
+            return 0;
+        }
+        return recordLength;
+    }
+
+    /**
+     * Getter of number of records.
+     *
+     * @return number of records, 0 for transparent file
+     */
+    public int getNumberOfRecords() {
+        int length = getRecordLength();
+        if (length == 0) {
+            return 0;
+        }
+        return size / length;
+    }
+}
@@ -1,5 +1,6 @@
 package cz.muni.fi.uco359952.simplesimreader.data;
 
+import cz.muni.fi.uco359952.simplesimreader.Converter;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
@@ -44,6 +45,28 @@ public class LOCI {
         locationAreaCode = LAI.substring(6, 10);
     }
 
+    /**
+     * Constructor that creates LOCI from content of EF_LOCI.
+     *
+     * @param input content of EF_LOCI, 11 bytes
+     */
+    public LOCI(byte[] input) {
+        this(toLOCIString(input));
+    }
+
+    private static String toLOCIString(byte[] input) {
+        StringBuilder loci = new StringBuilder(input.length * 2);
+        for (int i = 0; i < input.length; i++) {
+            String b = Converter.byteToHex(input[i]);
+            if ((i > 3) && i <= 8) { //swap only LAI
+                loci.append(Converter.swapString(b));
+            } else {
+                loci.append(b);
+            }
+        }
+        return loci.toString();
+    }
+
     /**
      * Getter of entire unparsed LOCI number.
      *
@@ -0,0 +1,163 @@
+package cz.muni.fi.uco359952.simplesimreader.data;
+
+/**
+ * Holds parsed response data of MF, which card returns on GET RESPONSE
+ * command after selecting MF (GSM 11.11, chapter 9.2.1) - file
+ * characteristics and status of CHV1, UNBLOCK CHV1, CHV2 and UNBLOCK CHV2.
+ * Every status byte holds in b8 whether code is initialised and in b4-b1
+ * number of tries left.
+ *
+ * @author Andrej Simko
+ */
+public class SecurityStatus {
+
+    /**
+     * Index of CHV1 (PIN1).
+     */
+    public static final int CHV1 = 0;
+    /**
+     * Index of UNBLOCK CHV1 (PUK1).
+     */
+    public static final int UNBLOCK_CHV1 = 1;
+    /**
+     * Index of CHV2 (PIN2).
+     */
+    public static final int CHV2 = 2;
+    /**
+     * Index of UNBLOCK CHV2 (PUK2).
+     */
+    public static final int UNBLOCK_CHV2 = 3;
+    private static final int FIRST_CODE_STATUS = 18;
+    private final byte[] response;
+    private final int fileCharacteristics;
+    private final int numberOfDFs;
+    private final int numberOfEFs;
+    private final int numberOfCodes;
+    private final int[] triesLeft = new int[4];
+    private final boolean[] initialised = new boolean[4];
+
+    /**
+     * Constructor that parses SecurityStatus from Response APDU.
+     *
+     * @param response Response APDU after GET RESPONSE command of MF,
+     * including Status Word
+     * @throws IllegalArgumentException if response is shorter than 22 bytes
+     * of data and Status Word, or it is FCP template, which has no status of
+     * codes
+     */
+    public SecurityStatus(byte[] response) {
+        if (response.length > 0 && (response[0] & 0xff) == FileInfo.FCP_TAG) {
+            throw new IllegalArgumentException("Response of MF is FCP template without status of codes");
+        }
+        if (response.length < FIRST_CODE_STATUS + 4 + 2) {
+            throw new IllegalArgumentException("Response of MF is too short: " + response.length + " bytes");
+        }
+        this.response = response;
+        fileCharacteristics = response[13] & 0xff;
+        numberOfDFs = response[14] & 0xff;
+        numberOfEFs = response[15] & 0xff;
+        numberOfCodes = response[16] & 0xff;
+        for (int i = 0; i < 4; i++) {
+            int status = response[FIRST_CODE_STATUS + i];
+            initialised[i] = (status & 0x80) != 0;
+            triesLeft[i] = status & 0x0f;
+        }
+    }
+
+    /**
+     * Getter of Response APDU this SecurityStatus was parsed from.
+     *
+     * @return Response APDU after GET RESPONSE command, including Status Word
+     */
+    public byte[] getResponse() {
+        return response;
+    }
+
+    /**
+     * Getter of number of tries left of given code.
+     *
+     * @param code CHV1, UNBLOCK_CHV1, CHV2 or UNBLOCK_CHV2
+     * @return number of tries left
+     */
+    public int getTriesLeft(int code) {
+        return triesLeft[code];
+    }
+
+    /**
+     * Getter of numbers of tries left of all codes.
+     *
+     * @return array of integers - array[0] = PIN1; array[1] = PUK1; array[2] =
+     * PIN2; array[3] = PUK2.
+     */
+    public int[] getTriesLeft() {
+        return triesLeft.clone();
+    }
+
+    /**
+     * Determines if given code is initialised.
+     *
+     * @param code CHV1, UNBLOCK_CHV1, CHV2 or UNBLOCK_CHV2
+     * @return true if code is initialised
+     */
+    public boolean isInitialised(int code) {
+        return initialised[code];
+    }
+
+    /**
+     * Determines which codes are initialised.
+     *
+     * @return array of booleans - array[0] = PIN1; array[1] = PUK1; array[2] =
+     * PIN2; array[3] = PUK2. If code is initialised, it has value true.
+     */
+    public boolean[] areInitialised() {
+        return initialised.clone();
+    }
+
+    /**
+     * Getter of file characteristics byte of MF.
+     *
+     * @return file characteristics - clock stop, authentication algorithm and
+     * whether CHV1 is disabled
+     */
+    public int getFileCharacteristics() {
+        return fileCharacteristics;
+    }
+
+    /**
+     * Determines if CHV1 is enabled, so files with CHV1 access condition can't
+     * be read before PIN is verified. CHV1 is disabled if b8 of file
+     * characteristics is set.
+     *
+     * @return true if CHV1 is enabled
+     */
+    public boolean isCHV1Enabled() {
+        return (fileCharacteristics & 0x80) == 0;
+    }
+
+    /**
+     * Getter of number of DFs which are direct children of MF.
+     *
+     * @return number of DFs
+     */
+    public int getNumberOfDFs() {
+        return numberOfDFs;
+    }
+
+    /**
+     * Getter of number of EFs which are direct children of MF.
+     *
+     * @return number of EFs
+     */
+    public int getNumberOfEFs() {
+        return numberOfEFs;
+    }
+
+    /**
+     * Getter of number of CHVs, UNBLOCK CHVs and administrative codes.
+     *
+     * @return number of codes
+     */
+    public int getNumberOfCodes() {
+        return numberOfCodes;
+    }
+}
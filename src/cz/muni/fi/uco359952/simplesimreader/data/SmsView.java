@@ -0,0 +1,345 @@
+package cz.muni.fi.uco359952.simplesimreader.data;
+
+import cz.muni.fi.uco359952.simplesimreader.Converter;
+import java.nio.ByteBuffer;
+
+/**
+ * View of one record of EF_SMS that decodes fields only when they are asked
+ * for, straight from bytes of record. Unlike SMS, it copies nothing when it is
+ * created, and one view can be moved over all records of EF in one buffer:
+ * <pre>
+ * SmsView view = new SmsView();
+ * char[] sender = new char[SmsView.MAX_NUMBER_LENGTH];
+ * for (int i = 0; i &lt; numberOfRecords; i++) {
+ *     view.reset(records, i * SmsView.RECORD_LENGTH);
+ *     if (!view.isEmpty()) {
+ *         int length = view.getDialingNumberOfSender(sender, 0);
+ *         ...
+ *     }
+ * }
+ * </pre>
+ * Status, empty check and numbers into char array allocate nothing; methods
+ * returning String allocate only that String. View is not thread-safe.
+ *
+ * @author Andrej Simko
+ */
+public class SmsView {
+
+    /**
+     * Length of record of EF_SMS.
+     */
+    public static final int RECORD_LENGTH = 176;
+    /**
+     * Maximum length of decoded telephone number, with "00" of international
+     * number.
+     */
+    public static final int MAX_NUMBER_LENGTH = 24;
+    private static final int MESSAGE_LENGTH = 140;
+    private static final int TIME_STAMP_LENGTH = 7;
+    private static final int INTERNATIONAL = 0x91;
+    private ByteBuffer buffer;
+    private int offset;
+    private int index = -1;
+
+    /**
+     * Creates view that is not over any record yet, see reset().
+     */
+    public SmsView() {
+    }
+
+    /**
+     * Creates view of record obtained with "READ RECORD" APDU command.
+     *
+     * @param record one record of EF_SMS
+     */
+    public SmsView(byte[] record) {
+        this(ByteBuffer.wrap(record), 0);
+    }
+
+    /**
+     * Creates view of record in buffer.
+     *
+     * @param buffer buffer with records of EF_SMS
+     * @param offset absolute position of first byte of record in buffer
+     */
+    public SmsView(ByteBuffer buffer, int offset) {
+        reset(buffer, offset);
+    }
+
+    /**
+     * Moves view to another record. Index of SMS is left as it is.
+     *
+     * @param buffer buffer with records of EF_SMS
+     * @param offset absolute position of first byte of record in buffer
+     * @return this view
+     */
+    public SmsView reset(ByteBuffer buffer, int offset) {
+        this.buffer = buffer;
+        this.offset = offset;
+        return this;
+    }
+
+    /**
+     * Deduces if record is empty, the same way as SMS does.
+     *
+     * @return TRUE if all bytes after status are 'FF'
+     */
+    public boolean isEmpty() {
+        for (int i = offset + 1; i < offset + RECORD_LENGTH; i++) {
+            if (buffer.get(i) != (byte) 0xFF) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Getter of status of record, see SMS.getType() for its meaning.
+     *
+     * @return first byte of record
+     */
+    public int getStatus() {
+        return buffer.get(offset) & 0xff;
+    }
+
+    /**
+     * Interprets status of record into human readable form. <p>Example:
+     * "free/deleted record" from status 0
+     *
+     * @return status of record in human readable form
+     */
+    public String getType() {
+        switch (getStatus()) {
+            case (0):
+                return "free/deleted record";
+            case (1):
+                return "message coming from the network and read";
+            case (3):
+                return "message coming from the network and still to be read";
+            case (5):
+                return "message sent to the network";
+            case (7):
+                return "message to be sent to the network";
+            default:
+                return "unknown";
+        }
+    }
+
+    private int serviceCenterLength() {
+        return buffer.get(offset + 1) & 0xff;
+    }
+
+    private int controlInformationOffset() {
+        return offset + 2 + serviceCenterLength();
+    }
+
+    private int senderLength() {
+        return buffer.get(controlInformationOffset() + 1) & 0xff;
+    }
+
+    private int protocolTagOffset() {
+        return controlInformationOffset() + 3 + (senderLength() + 1) / 2;
+    }
+
+    /**
+     * Writes SMS Service Center into char array.
+     *
+     * @param digits array with at least MAX_NUMBER_LENGTH free characters
+     * @param digitsOffset position in array of first character
+     * @return number of characters written
+     */
+    public int getShortMessageServiceCenter(char[] digits, int digitsOffset) {
+        int length = serviceCenterLength();
+        if (length == 0) {
+            return 0;
+        }
+        return number(offset + 2, length - 1, digits, digitsOffset);
+    }
+
+    /**
+     * Getter of SMS Service Center
+     *
+     * @return SMS Service Center
+     */
+    public String getShortMessageServiceCenter() {
+        char[] digits = new char[MAX_NUMBER_LENGTH];
+        return new String(digits, 0, getShortMessageServiceCenter(digits, 0));
+    }
+
+    /**
+     * Writes Dialing Number of Sender into char array.
+     *
+     * @param digits array with at least MAX_NUMBER_LENGTH free characters
+     * @param digitsOffset position in array of first character
+     * @return number of characters written
+     */
+    public int getDialingNumberOfSender(char[] digits, int digitsOffset) {
+        return number(controlInformationOffset() + 2, (senderLength() + 1) / 2, digits, digitsOffset);
+    }
+
+    /**
+     * Getter for Dialing Number of Sender
+     *
+     * @return Dialing Number of Sender
+     */
+    public String getDialingNumberOfSender() {
+        char[] digits = new char[MAX_NUMBER_LENGTH];
+        return new String(digits, 0, getDialingNumberOfSender(digits, 0));
+    }
+
+    /**
+     * Decodes number whose type of number is at given position and its digits
+     * follow.
+     */
+    private int number(int position, int length, char[] digits, int digitsOffset) {
+        int written = 0;
+        if ((buffer.get(position) & 0xff) == INTERNATIONAL) {
+            digits[digitsOffset] = '0';
+            digits[digitsOffset + 1] = '0';
+            written = 2;
+        }
+        length = Math.min(length, (MAX_NUMBER_LENGTH - written) / 2);
+        return written + Converter.decodeBCD(buffer, position + 1, length, digits, digitsOffset + written, false);
+    }
+
+    /**
+     * Getter for Control Information
+     *
+     * @return first octet of SMS-DELIVER, for example 0x04
+     */
+    public int getControlInformation() {
+        return buffer.get(controlInformationOffset()) & 0xff;
+    }
+
+    /**
+     * Deduces if SMS is multi-part SMS.
+     *
+     * @return TRUE if SMS is multi-part; FALSE if SMS isn't multi-part
+     */
+    public boolean isMultipart() {
+        int controlInformation = getControlInformation();
+        return controlInformation == 0x44 || controlInformation == 0x64;
+    }
+
+    /**
+     * Getter for Protocol Tag
+     *
+     * @return Protocol Tag
+     */
+    public int getProtocolTag() {
+        return buffer.get(protocolTagOffset()) & 0xff;
+    }
+
+    /**
+     * Getter for Data Coding
+     *
+     * @return Data Coding
+     */
+    public int getDataCoding() {
+        return buffer.get(protocolTagOffset() + 1) & 0xff;
+    }
+
+    /**
+     * Writes SMS Time Stamp into char array. Every nibble is kept, 'F' as
+     * well, as SMS does.
+     *
+     * @param digits array with at least 14 free characters
+     * @param digitsOffset position in array of first character
+     * @return number of characters written, always 14
+     */
+    public int getSMSCtimeStamp(char[] digits, int digitsOffset) {
+        return Converter.decodeSwappedHex(buffer, protocolTagOffset() + 2, TIME_STAMP_LENGTH, digits, digitsOffset);
+    }
+
+    /**
+     * Getter of SMS Time Stamp
+     *
+     * @return time of sending/receiving SMS in format YYMMDDHHMMSSZZ
+     */
+    public String getSMSCtimeStamp() {
+        char[] digits = new char[2 * TIME_STAMP_LENGTH];
+        return new String(digits, 0, getSMSCtimeStamp(digits, 0));
+    }
+
+    /**
+     * Getter of Number of Characters in message
+     *
+     * @return Number of Characters in message
+     */
+    public int getNumberOfCharacters() {
+        return buffer.get(protocolTagOffset() + 2 + TIME_STAMP_LENGTH) & 0xff;
+    }
+
+    private String getUserData() {
+        int start = protocolTagOffset() + 3 + TIME_STAMP_LENGTH;
+        byte[] septets = new byte[MESSAGE_LENGTH];
+        int length = Math.max(0, Math.min(MESSAGE_LENGTH, offset + RECORD_LENGTH - start));
+        for (int i = 0; i < length; i++) {
+            septets[i] = buffer.get(start + i);
+        }
+        return org.marre.sms.SmsPduUtil.readSeptets(septets, getNumberOfCharacters());
+    }
+
+    /**
+     * Getter for text of SMS message itself, without offset of multi-part SMS
+     *
+     * @return text of SMS
+     */
+    public String getMessage() {
+        String message = getUserData();
+        return isMultipart() ? message.substring(7) : message;
+    }
+
+    /**
+     * Getter for Offset, if the SMS is multi-part
+     *
+     * @return Offset, empty if SMS isn't multi-part
+     */
+    public String getOffset() {
+        return isMultipart() ? getUserData().substring(0, 7) : "";
+    }
+
+    /**
+     * Getter for Index of SMS message.
+     *
+     * @return Index of SMS message in EF_SMS.
+     */
+    public int getIndex() {
+        return index;
+    }
+
+    /**
+     * Setter for Index of current SMS in EF_SMS structure.
+     *
+     * @param index Index of current SMS in EF_SMS structure.
+     */
+    public void setIndex(int index) {
+        this.index = index;
+    }
+
+    /**
+     * Copies record and decodes it whole into SMS.
+     *
+     * @return SMS with the same index
+     */
+    public SMS toSMS() {
+        byte[] record = new byte[RECORD_LENGTH];
+        for (int i = 0; i < RECORD_LENGTH; i++) {
+            record[i] = buffer.get(offset + i);
+        }
+        SMS sms = new SMS(record);
+        sms.setIndex(index);
+        return sms;
+    }
+
+    @Override
+    public String toString() {
+        if (isEmpty()) {
+            return index + ".: No message";
+        }
+        String timeStamp = getSMSCtimeStamp();
+        return index + ".: " + getType() + "; YYMMDD: " + timeStamp.substring(0, 6) + ", HHMMSS: " + timeStamp.substring(6, 12)
+                + "; from: " + getDialingNumberOfSender() + "; "
+                + (isMultipart() ? "multi-part with offset \"" + getOffset() + "\"" : "single-part") + "; " + getMessage();
+    }
+}
@@ -0,0 +1,21 @@
+package cz.muni.fi.uco359952.simplesimreader.exceptions;
+
+import javax.smartcardio.CardException;
+
+/**
+ * Thrown when card or terminal hasn't answered APDU command in time and the
+ * connection to card has been dropped.
+ *
+ * @author Andrej Simko
+ */
+public class ApduTimeoutException extends CardException {
+
+    /**
+     * Constructs an ApduTimeoutException with the specified timeout.
+     *
+     * @param timeout timeout in milliseconds that has passed
+     */
+    public ApduTimeoutException(long timeout) {
+        super("Card hasn't answered within " + timeout + " ms, connection was dropped");
+    }
+}
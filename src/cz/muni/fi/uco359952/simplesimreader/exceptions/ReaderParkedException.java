@@ -0,0 +1,21 @@
+package cz.muni.fi.uco359952.simplesimreader.exceptions;
+
+import javax.smartcardio.CardException;
+
+/**
+ * Thrown when reader has failed too many times in a row and is parked, so it
+ * is not used until its park time runs out.
+ *
+ * @author Andrej Simko
+ */
+public class ReaderParkedException extends CardException {
+
+    /**
+     * Constructs a ReaderParkedException for given reader.
+     *
+     * @param terminalName name of parked reader
+     */
+    public ReaderParkedException(String terminalName) {
+        super("Reader " + terminalName + " is parked after repeated failures.");
+    }
+}
@@ -0,0 +1,154 @@
+package cz.muni.fi.uco359952.simplesimreader.image;
+
+import cz.muni.fi.uco359952.simplesimreader.ApduWorker;
+import cz.muni.fi.uco359952.simplesimreader.CardSession;
+import cz.muni.fi.uco359952.simplesimreader.data.DF;
+import cz.muni.fi.uco359952.simplesimreader.data.DatabaseOfEF;
+import cz.muni.fi.uco359952.simplesimreader.data.EF;
+import cz.muni.fi.uco359952.simplesimreader.data.FileInfo;
+import cz.muni.fi.uco359952.simplesimreader.exceptions.BadStatusWordException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import javax.smartcardio.CardException;
+
+/**
+ * Dumps whole SIM card into CardImage. Every DF of DatabaseOfEF is selected
+ * once, then all its EFs - those from DatabaseOfEF and, if scanning is on,
+ * every other File ID of range where GSM 11.11 puts EFs of that DF ('2Fxx' in
+ * MF, '6Fxx' in DF_TELECOM and DF_GSM). Transparent EFs are read whole,
+ * record EFs record by record. EFs whose content can't be read, usually
+ * because PIN wasn't verified, are kept with their FCI and Status Word. Dump
+ * runs in one exclusive scope.
+ *
+ * @author Andrej Simko
+ */
+public class CardDumper {
+
+    private final ApduWorker worker;
+    private boolean scanning = true;
+
+    /**
+     * Creates dumper of card connected in session of given ApduWorker.
+     *
+     * @param worker ApduWorker connected to card
+     */
+    public CardDumper(ApduWorker worker) {
+        this.worker = worker;
+    }
+
+    /**
+     * Determines whether File IDs that are not in DatabaseOfEF are tried.
+     *
+     * @return true if scanning is on
+     */
+    public boolean isScanning() {
+        return scanning;
+    }
+
+    /**
+     * Sets whether File IDs that are not in DatabaseOfEF are tried. Scanning
+     * takes 256 SELECT commands per DF.
+     *
+     * @param scanning true if all File IDs are to be tried
+     */
+    public void setScanning(boolean scanning) {
+        this.scanning = scanning;
+    }
+
+    /**
+     * Dumps card.
+     *
+     * @return image of card
+     * @throws CardException if there was problem communicating with card
+     */
+    public CardImage dump() throws CardException {
+        CardSession session = worker.manager.getSession();
+        List<FileImage> files = new ArrayList<>();
+        session.beginExclusive();
+        try {
+            for (DF DF : DatabaseOfEF.ALL_DF) {
+                dumpDF(DF, files);
+            }
+        } finally {
+            session.endExclusive();
+            session.invalidateSelection(); //EFs were selected by File ID only
+        }
+        return new CardImage(session.getATR(), System.currentTimeMillis(), files);
+    }
+
+    private void dumpDF(DF DF, List<FileImage> files) throws CardException {
+        byte[] response;
+        try {
+            response = worker.selectDFWithResponse(DF);
+        } catch (BadStatusWordException ex) {
+            return; //DF is not on card
+        }
+        int FID = CardImage.toInt(DF.getFID());
+        int parentFID = FID == CardImage.MF ? 0 : CardImage.MF;
+        files.add(new FileImage(true, FID, parentFID, DF.getName(), withoutStatusWord(response), FileImage.READ, new byte[0]));
+
+        Map<Integer, String> EFs = new LinkedHashMap<>();
+        for (EF EF : DatabaseOfEF.ALL_EF) {
+            if (EF.getDF() == DF) {
+                EFs.put(CardImage.toInt(EF.getFID()), EF.getShortName());
+            }
+        }
+        if (scanning) {
+            int first = FID == CardImage.MF ? 0x2F00 : 0x6F00;
+            for (int EFID = first; EFID <= first + 0xFF; EFID++) {
+                if (!EFs.containsKey(EFID)) {
+                    EFs.put(EFID, String.format("EF_%04X", EFID));
+                }
+            }
+        }
+        for (Map.Entry<Integer, String> EF : EFs.entrySet()) {
+            FileImage image = dumpEF(EF.getKey(), FID, EF.getValue());
+            if (image != null) {
+                files.add(image);
+            }
+        }
+    }
+
+    private FileImage dumpEF(int FID, int parentFID, String name) throws CardException {
+        byte[] response;
+        try {
+            response = worker.getResponse(worker.select(new byte[]{(byte) (FID >>> 8), (byte) FID}));
+        } catch (BadStatusWordException ex) {
+            return null; //EF is not on card
+        }
+        FileInfo info;
+        try {
+            info = new FileInfo(response);
+        } catch (IllegalArgumentException ex) {
+            return null; //no GSM response data or FCP template
+        }
+        if (info.getTypeOfFile() != 0x04) {
+            return null; //not EF
+        }
+        int status = FileImage.READ;
+        byte[] content;
+        try {
+            if (info.getStructure().equals(DatabaseOfEF.transparent)) {
+                content = new byte[Math.min(info.getSize(), ApduWorker.MAX_OFFSET + 1)];
+                worker.readBinary(0, content.length, content, 0);
+            } else {
+                int length = info.getRecordLength();
+                content = new byte[info.getNumberOfRecords() * length];
+                for (int i = 1; i <= info.getNumberOfRecords(); i++) {
+                    worker.readRecord(i, length, content, (i - 1) * length);
+                }
+            }
+        } catch (BadStatusWordException ex) {
+            status = worker.getLastStatusWord();
+            content = new byte[0];
+        }
+        return new FileImage(false, FID, parentFID, name, withoutStatusWord(response), status, content);
+    }
+
+    private static byte[] withoutStatusWord(byte[] response) {
+        return Arrays.copyOf(response, response.length - 2);
+    }
+}
@@ -0,0 +1,252 @@
+package cz.muni.fi.uco359952.simplesimreader.image;
+
+import cz.muni.fi.uco359952.simplesimreader.Converter;
+import cz.muni.fi.uco359952.simplesimreader.data.DF;
+import cz.muni.fi.uco359952.simplesimreader.data.EF;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Raw image of whole SIM card - Answer To Reset and FileImages of all DFs and
+ * EFs that could be selected. Image file describes itself, it doesn't depend
+ * on DatabaseOfEF:
+ * <pre>
+ * int    MAGIC, int VERSION
+ * long   time of dump, milliseconds since epoch
+ * short  length + Answer To Reset
+ * int    number of files, then for every file:
+ *   byte   1 for DF, 2 for EF
+ *   short  File ID, short File ID of parent DF (0 for MF)
+ *   UTF    short name of file
+ *   short  Status Word of reading of content
+ *   short  length + FCI
+ *   int    length + content
+ * </pre>
+ *
+ * @author Andrej Simko
+ */
+public class CardImage {
+
+    /**
+     * First four bytes of image file - "SIMG".
+     */
+    public static final int MAGIC = 0x53494D47;
+    /**
+     * Version of format.
+     */
+    public static final int VERSION = 1;
+    /**
+     * File ID of MF.
+     */
+    public static final int MF = 0x3F00;
+    private static final int EF_ICCID = 0x2FE2;
+    private static final byte TYPE_DF = 1;
+    private static final byte TYPE_EF = 2;
+    private final byte[] ATR;
+    private final long timestamp;
+    private final List<FileImage> files;
+
+    /**
+     * Creates image of card.
+     *
+     * @param ATR Answer To Reset of card
+     * @param timestamp time of dump, milliseconds since epoch
+     * @param files images of DFs and EFs
+     */
+    public CardImage(byte[] ATR, long timestamp, List<FileImage> files) {
+        this.ATR = ATR;
+        this.timestamp = timestamp;
+        this.files = new ArrayList<>(files);
+    }
+
+    /**
+     * Getter for Answer To Reset of card.
+     *
+     * @return Answer To Reset
+     */
+    public byte[] getATR() {
+        return ATR;
+    }
+
+    /**
+     * Getter for time of dump.
+     *
+     * @return milliseconds since epoch
+     */
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    /**
+     * Returns images of all files.
+     *
+     * @return List of files in order in which they were dumped
+     */
+    public List<FileImage> getFiles() {
+        return Collections.unmodifiableList(files);
+    }
+
+    /**
+     * Returns image of file with given File ID in given DF.
+     *
+     * @param FID File ID
+     * @param parentFID File ID of parent DF, 0 for MF
+     * @return image of file, null if it is not in image
+     */
+    public FileImage getFile(int FID, int parentFID) {
+        for (FileImage file : files) {
+            if (file.getFID() == FID && file.getParentFID() == parentFID) {
+                return file;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns image of given DF.
+     *
+     * @param DF Dedicated File
+     * @return image of DF, null if it is not in image
+     */
+    public FileImage getFile(DF DF) {
+        int FID = toInt(DF.getFID());
+        return getFile(FID, FID == MF ? 0 : MF);
+    }
+
+    /**
+     * Returns image of given EF.
+     *
+     * @param EF Elementary File
+     * @return image of EF, null if it is not in image
+     */
+    public FileImage getFile(EF EF) {
+        return getFile(toInt(EF.getFID()), toInt(EF.getDF().getFID()));
+    }
+
+    /**
+     * Returns files whose parent is given DF.
+     *
+     * @param parentFID File ID of DF
+     * @return List of DFs and EFs in DF
+     */
+    public List<FileImage> getChildren(int parentFID) {
+        List<FileImage> children = new ArrayList<>();
+        for (FileImage file : files) {
+            if (file.getParentFID() == parentFID && file.getFID() != MF) {
+                children.add(file);
+            }
+        }
+        return children;
+    }
+
+    /**
+     * Returns ICCID from EF_ICCID in image, decoded the same way as by
+     * Getters.getICCID().
+     *
+     * @return ICCID, null if EF_ICCID is not in image or wasn't read
+     */
+    public String getICCID() {
+        FileImage file = getFile(EF_ICCID, MF);
+        if (file == null || file.getStatus() != FileImage.READ || file.getContent().length == 0) {
+            return null;
+        }
+        StringBuilder digits = new StringBuilder();
+        for (byte b : file.getContent()) {
+            digits.append(Converter.swapString(Converter.byteToHex(b)));
+        }
+        int filler = digits.toString().toUpperCase().indexOf('F');
+        return filler < 0 ? digits.toString() : digits.substring(0, filler);
+    }
+
+    /**
+     * Writes image into file.
+     *
+     * @param file image file
+     * @throws IOException if file can't be written
+     */
+    public void write(File file) throws IOException {
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)))) {
+            writeHeader(out, ATR, timestamp, files.size());
+            for (FileImage image : files) {
+                writeFileHeader(out, image, image.getContent().length);
+                out.write(image.getContent());
+            }
+        }
+    }
+
+    /**
+     * Reads image from file.
+     *
+     * @param file image file written by write()
+     * @return image of card
+     * @throws IOException if file can't be read or isn't image file
+     */
+    public static CardImage read(File file) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            if (in.readInt() != MAGIC) {
+                throw new IOException(file + " is not image of SIM card");
+            }
+            int version = in.readInt();
+            if (version > VERSION) {
+                throw new IOException("Unsupported version of image: " + version);
+            }
+            long timestamp = in.readLong();
+            byte[] ATR = new byte[in.readUnsignedShort()];
+            in.readFully(ATR);
+            int numberOfFiles = in.readInt();
+            List<FileImage> files = new ArrayList<>();
+            for (int i = 0; i < numberOfFiles; i++) {
+                boolean DF = in.readByte() == TYPE_DF;
+                int FID = in.readUnsignedShort();
+                int parentFID = in.readUnsignedShort();
+                String name = in.readUTF();
+                int status = in.readUnsignedShort();
+                byte[] FCI = new byte[in.readUnsignedShort()];
+                in.readFully(FCI);
+                byte[] content = new byte[in.readInt()];
+                in.readFully(content);
+                files.add(new FileImage(DF, FID, parentFID, name, FCI, status, content));
+            }
+            return new CardImage(ATR, timestamp, files);
+        }
+    }
+
+    /**
+     * Writes beginning of image file, up to number of files.
+     */
+    static void writeHeader(DataOutputStream out, byte[] ATR, long timestamp, int numberOfFiles) throws IOException {
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeLong(timestamp);
+        out.writeShort(ATR.length);
+        out.write(ATR);
+        out.writeInt(numberOfFiles);
+    }
+
+    /**
+     * Writes description of file, content of given length is to follow.
+     */
+    static void writeFileHeader(DataOutputStream out, FileImage image, int contentLength) throws IOException {
+        out.writeByte(image.isDF() ? TYPE_DF : TYPE_EF);
+        out.writeShort(image.getFID());
+        out.writeShort(image.getParentFID());
+        out.writeUTF(image.getName());
+        out.writeShort(image.getStatus());
+        out.writeShort(image.getFCI().length);
+        out.write(image.getFCI());
+        out.writeInt(contentLength);
+    }
+
+    static int toInt(byte[] FID) {
+        return ((FID[0] & 0xff) << 8) | (FID[1] & 0xff);
+    }
+}
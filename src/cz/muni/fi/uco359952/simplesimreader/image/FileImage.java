@@ -0,0 +1,235 @@
+package cz.muni.fi.uco359952.simplesimreader.image;
+
+import cz.muni.fi.uco359952.simplesimreader.data.DatabaseOfEF;
+import cz.muni.fi.uco359952.simplesimreader.data.FileInfo;
+import java.util.Arrays;
+
+/**
+ * Raw image of one file of SIM card - its response to SELECT (FCI), either
+ * GSM response data or FCP template, and, for EF, its whole content. Content of record EF is all records one after
+ * another. If content couldn't be read, for example because PIN wasn't
+ * verified, Status Word of failed read is kept instead.
+ * <p>Content and every record have 64-bit FNV-1a hash, which is computed the
+ * first time it is needed, so that images can be compared without comparing
+ * their bytes.
+ *
+ * @author Andrej Simko
+ */
+public class FileImage {
+
+    /**
+     * Status Word of content that was read successfully.
+     */
+    public static final int READ = 0x9000;
+    private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+    private final boolean DF;
+    private final int FID;
+    private final int parentFID;
+    private final String name;
+    private final byte[] FCI;
+    private final int status;
+    private final byte[] content;
+    private volatile long[] recordHashes = null;
+    private volatile FileInfo info = null;
+
+    /**
+     * Creates image of file.
+     *
+     * @param DF true for DF, false for EF
+     * @param FID File ID
+     * @param parentFID File ID of parent DF, 0 for MF
+     * @param name short name of file, for example "ICCID"
+     * @param FCI response data to SELECT, without Status Word
+     * @param status Status Word of reading of content, READ if it was read
+     * @param content content of EF, empty for DF or if it wasn't read
+     */
+    public FileImage(boolean DF, int FID, int parentFID, String name, byte[] FCI, int status, byte[] content) {
+        this.DF = DF;
+        this.FID = FID;
+        this.parentFID = parentFID;
+        this.name = name;
+        this.FCI = FCI;
+        this.status = status;
+        this.content = content;
+    }
+
+    /**
+     * Determines whether file is DF.
+     *
+     * @return true for DF, false for EF
+     */
+    public boolean isDF() {
+        return DF;
+    }
+
+    /**
+     * Getter for File ID.
+     *
+     * @return File ID, for example 0x2FE2
+     */
+    public int getFID() {
+        return FID;
+    }
+
+    /**
+     * Getter for File ID of parent DF.
+     *
+     * @return File ID of parent DF, 0 for MF
+     */
+    public int getParentFID() {
+        return parentFID;
+    }
+
+    /**
+     * Getter for short name of file.
+     *
+     * @return short name of file
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Getter for response data to SELECT.
+     *
+     * @return FCI without Status Word
+     */
+    public byte[] getFCI() {
+        return FCI;
+    }
+
+    /**
+     * Getter for Status Word of reading of content.
+     *
+     * @return READ if content was read, Status Word of card otherwise
+     */
+    public int getStatus() {
+        return status;
+    }
+
+    /**
+     * Getter for content of EF.
+     *
+     * @return content, all records one after another for record EF; empty for
+     * DF or if content wasn't read
+     */
+    public byte[] getContent() {
+        return content;
+    }
+
+    /**
+     * Getter for structure of EF, from its FCI.
+     *
+     * @return 0x00 transparent, 0x01 linear fixed, 0x03 cyclic
+     */
+    public int getStructure() {
+        FileInfo parsed = getInfo();
+        if (parsed == null || parsed.getStructure().equals(DatabaseOfEF.transparent)) {
+            return 0x00;
+        }
+        return parsed.getStructure().equals(DatabaseOfEF.cyclic) ? 0x03 : 0x01;
+    }
+
+    /**
+     * Getter for length of record of EF, from its FCI.
+     *
+     * @return length of record, 0 for transparent EF
+     */
+    public int getRecordLength() {
+        FileInfo parsed = getInfo();
+        return parsed == null ? 0 : parsed.getRecordLength();
+    }
+
+    /**
+     * Parses FCI of EF the first time it is needed.
+     *
+     * @return FileInfo of EF, null for DF or if FCI can't be parsed
+     */
+    private FileInfo getInfo() {
+        FileInfo parsed = info;
+        if (parsed == null && !DF) {
+            try {
+                parsed = new FileInfo(Arrays.copyOf(FCI, FCI.length + 2)); //with dummy Status Word
+                info = parsed;
+            } catch (IllegalArgumentException ex) {
+                return null;
+            }
+        }
+        return parsed;
+    }
+
+    /**
+     * Getter for number of records in image.
+     *
+     * @return number of records, 0 for transparent EF
+     */
+    public int getNumberOfRecords() {
+        int recordLength = getRecordLength();
+        return recordLength == 0 ? 0 : content.length / recordLength;
+    }
+
+    /**
+     * Returns copy of one record of record EF.
+     *
+     * @param numberOfRecord number of record, starting from 1
+     * @return record
+     */
+    public byte[] getRecord(int numberOfRecord) {
+        int recordLength = getRecordLength();
+        int offset = (numberOfRecord - 1) * recordLength;
+        return Arrays.copyOfRange(content, offset, offset + recordLength);
+    }
+
+    /**
+     * Returns hashes of records of EF. Transparent EF has one record, its
+     * whole content; DF and EF whose content wasn't read have none.
+     *
+     * @return hash of every record, in order of records
+     */
+    public long[] getRecordHashes() {
+        long[] hashes = recordHashes;
+        if (hashes == null) {
+            int recordLength = getRecordLength();
+            if (status != READ || DF) {
+                hashes = new long[0];
+            } else if (recordLength == 0) {
+                hashes = new long[]{hash(content, 0, content.length)};
+            } else {
+                hashes = new long[getNumberOfRecords()];
+                for (int i = 0; i < hashes.length; i++) {
+                    hashes[i] = hash(content, i * recordLength, recordLength);
+                }
+            }
+            recordHashes = hashes;
+        }
+        return hashes;
+    }
+
+    /**
+     * Returns hash of whole content, computed from hashes of records.
+     *
+     * @return hash of content
+     */
+    public long getHash() {
+        long hash = FNV_OFFSET_BASIS;
+        for (long recordHash : getRecordHashes()) {
+            hash = (hash ^ recordHash) * FNV_PRIME;
+        }
+        return hash;
+    }
+
+    private static long hash(byte[] data, int offset, int length) {
+        long hash = FNV_OFFSET_BASIS;
+        for (int i = offset; i < offset + length; i++) {
+            hash = (hash ^ (data[i] & 0xff)) * FNV_PRIME;
+        }
+        return hash;
+    }
+
+    @Override
+    public String toString() {
+        return name + " (" + String.format("%04X", FID) + "): " + content.length + " bytes"
+                + (status == READ ? "" : ", not read: " + String.format("%04X", status));
+    }
+}
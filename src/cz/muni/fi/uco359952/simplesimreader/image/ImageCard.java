@@ -0,0 +1,207 @@
+package cz.muni.fi.uco359952.simplesimreader.image;
+
+import cz.muni.fi.uco359952.simplesimreader.simulator.InMemoryCard;
+import cz.muni.fi.uco359952.simplesimreader.simulator.InMemoryChannel;
+import java.util.Arrays;
+import javax.smartcardio.ATR;
+import javax.smartcardio.CardException;
+
+/**
+ * Connection to card of ImageTerminal. Answers SELECT, STATUS, GET RESPONSE,
+ * READ BINARY and READ RECORD from CardImage in both GSM class 'A0' and ISO
+ * class '00'. Image is read-only, so UPDATE commands fail with '9804'; CHV
+ * commands succeed without checking codes, because content is in image
+ * already. Content that couldn't be read during dump is answered by the same
+ * Status Word card gave then. Connection itself is that of InMemoryCard.
+ *
+ * @author Andrej Simko
+ */
+class ImageCard extends InMemoryCard {
+
+    private final ImageTerminal terminal;
+    private final CardImage image;
+    private final FileImage MF;
+
+    ImageCard(ImageTerminal terminal, CardImage image) {
+        this.terminal = terminal;
+        this.image = image;
+        this.MF = image.getFile(CardImage.MF, 0);
+    }
+
+    @Override
+    public ATR getATR() {
+        return new ATR(image.getATR());
+    }
+
+    @Override
+    protected InMemoryChannel createChannel(int channelNumber) {
+        return new ImageChannel(this, channelNumber);
+    }
+
+    @Override
+    protected byte[] process(InMemoryChannel channel, byte[] command) throws CardException {
+        checkConnected();
+        synchronized (this) {
+            checkExclusive();
+            return execute((ImageChannel) channel, command);
+        }
+    }
+
+    private byte[] execute(ImageChannel channel, byte[] command) {
+        if (command.length < 4) {
+            return statusWord(0x6700);
+        }
+        int CLA = command[0] & 0xF0;
+        if (CLA != 0xA0 && CLA != 0x00) {
+            return statusWord(0x6E00);
+        }
+        boolean ISO = CLA == 0x00;
+        int INS = command[1] & 0xff;
+        int P1 = command[2] & 0xff;
+        int P2 = command[3] & 0xff;
+        int P3 = command.length > 4 ? command[4] & 0xff : 0;
+        if (INS != 0xC0) {
+            channel.pendingResponse = null;
+        }
+        switch (INS) {
+            case 0xA4:
+                return select(channel, command.length > 5 ? Arrays.copyOfRange(command, 5, command.length) : new byte[0], ISO, P2);
+            case 0xF2:
+                return status(channel, P3);
+            case 0xC0:
+                return getResponse(channel, P3);
+            case 0xB0:
+                return readBinary(channel, (P1 << 8) | P2, P3);
+            case 0xB2:
+                return readRecord(channel, P1, P2, P3);
+            case 0x20: //VERIFY CHV
+            case 0x24: //CHANGE CHV
+            case 0x26: //DISABLE CHV
+            case 0x28: //ENABLE CHV
+            case 0x2C: //UNBLOCK CHV
+                return statusWord(0x9000);
+            case 0xD6: //UPDATE BINARY
+            case 0xDC: //UPDATE RECORD
+                return statusWord(0x9804);
+            default:
+                return statusWord(0x6D00);
+        }
+    }
+
+    /**
+     * Selects file. Response data are FCI recorded in image, whether it is
+     * GSM response data or FCP template; in ISO class P2 '0C' asks for none.
+     */
+    private byte[] select(ImageChannel channel, byte[] FID, boolean ISO, int P2) {
+        if (FID.length != 2) {
+            return statusWord(0x6700);
+        }
+        FileImage file = find(channel.currentDF == null ? MF : channel.currentDF, CardImage.toInt(FID));
+        if (file == null) {
+            return statusWord(0x9404);
+        }
+        if (file.isDF()) {
+            channel.currentDF = file;
+            channel.currentEF = null;
+        } else {
+            channel.currentEF = file;
+        }
+        channel.recordPointer = 0;
+        if (ISO && P2 == 0x0C) {
+            return statusWord(0x9000);
+        }
+        channel.pendingResponse = file.getFCI();
+        return statusWord((ISO ? 0x6100 : 0x9F00) | channel.pendingResponse.length);
+    }
+
+    /**
+     * Finds file that can be selected from given DF - MF, current DF, its
+     * parent, its children and DFs next to it (GSM 11.11, chapter 6.5).
+     */
+    private FileImage find(FileImage currentDF, int FID) {
+        if (FID == CardImage.MF) {
+            return MF;
+        }
+        if (currentDF == null) {
+            return null;
+        }
+        if (currentDF.getFID() == FID) {
+            return currentDF;
+        }
+        FileImage child = image.getFile(FID, currentDF.getFID());
+        if (child != null) {
+            return child;
+        }
+        int parentFID = currentDF.getParentFID();
+        if (parentFID != 0) {
+            if (parentFID == FID) {
+                return image.getFile(FID, parentFID == CardImage.MF ? 0 : CardImage.MF);
+            }
+            FileImage sibling = image.getFile(FID, parentFID);
+            if (sibling != null && sibling.isDF()) {
+                return sibling;
+            }
+        }
+        return null;
+    }
+
+    private byte[] status(ImageChannel channel, int length) {
+        FileImage DF = channel.currentDF == null ? MF : channel.currentDF;
+        if (DF == null) {
+            return statusWord(0x6F00);
+        }
+        return answer(DF.getFCI(), length);
+    }
+
+    private byte[] getResponse(ImageChannel channel, int length) {
+        byte[] pending = channel.pendingResponse;
+        if (pending == null) {
+            return statusWord(0x6F00);
+        }
+        if (length != 0 && length <= pending.length) {
+            channel.pendingResponse = null;
+        }
+        return answer(pending, length);
+    }
+
+    private byte[] readBinary(ImageChannel channel, int offset, int length) {
+        FileImage EF = channel.currentEF;
+        if (EF == null) {
+            return statusWord(0x9400);
+        }
+        if (EF.getStructure() != 0x00) {
+            return statusWord(0x9408);
+        }
+        if (EF.getStatus() != FileImage.READ) {
+            return statusWord(EF.getStatus());
+        }
+        return readBinary(EF.getContent(), offset, length);
+    }
+
+    private byte[] readRecord(ImageChannel channel, int numberOfRecord, int mode, int length) {
+        FileImage EF = channel.currentEF;
+        if (EF == null) {
+            return statusWord(0x9400);
+        }
+        if (EF.getStructure() == 0x00) {
+            return statusWord(0x9408);
+        }
+        if (EF.getStatus() != FileImage.READ) {
+            return statusWord(EF.getStatus());
+        }
+        int record = recordForMode(channel.recordPointer, EF.getNumberOfRecords(), EF.getStructure() == 0x03, numberOfRecord, mode);
+        if (record < 1) {
+            return statusWord(record == 0 ? 0x9402 : 0x6B00);
+        }
+        if (length != EF.getRecordLength()) {
+            return statusWord(0x6700);
+        }
+        channel.recordPointer = record;
+        return withStatusWord(EF.getContent(), (record - 1) * length, length, 0x9000);
+    }
+
+    @Override
+    public String toString() {
+        return "Image of card in " + terminal.getName();
+    }
+}
@@ -0,0 +1,21 @@
+package cz.muni.fi.uco359952.simplesimreader.image;
+
+import cz.muni.fi.uco359952.simplesimreader.simulator.InMemoryChannel;
+
+/**
+ * Channel to card of ImageTerminal. Every channel has its own selected DF and
+ * EF, as logical channels of real card.
+ *
+ * @author Andrej Simko
+ */
+class ImageChannel extends InMemoryChannel {
+
+    FileImage currentDF = null;
+    FileImage currentEF = null;
+    int recordPointer = 0;
+    byte[] pendingResponse = null;
+
+    ImageChannel(ImageCard card, int channelNumber) {
+        super(card, channelNumber);
+    }
+}
@@ -0,0 +1,159 @@
+package cz.muni.fi.uco359952.simplesimreader.image;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Differences between two images of the same card, for example image taken
+ * at intake and image of returned card. Hashes of whole EFs are compared
+ * first, then hashes of records of EFs that differ; only records with
+ * different hashes are copied into RecordChanges, and they are decoded only
+ * when asked for. Equal hashes are confirmed by comparing bytes, FNV-1a is
+ * not free of collisions; that is cheap, it is done only for hashes that
+ * match.
+ * <p>EFs whose content wasn't read in one of images are not compared, their
+ * content is unknown.
+ *
+ * @author Andrej Simko
+ */
+public class ImageDiff {
+
+    private final CardImage before;
+    private final CardImage after;
+    private final List<RecordChange> changes = new ArrayList<>();
+
+    /**
+     * Compares two images.
+     *
+     * @param before older image
+     * @param after newer image
+     */
+    public ImageDiff(CardImage before, CardImage after) {
+        this.before = before;
+        this.after = after;
+        Map<Integer, FileImage> afterFiles = new HashMap<>();
+        for (FileImage file : after.getFiles()) {
+            if (!file.isDF()) {
+                afterFiles.put(key(file), file);
+            }
+        }
+        for (FileImage file : before.getFiles()) {
+            if (!file.isDF()) {
+                compare(file, afterFiles.remove(key(file)));
+            }
+        }
+        for (FileImage file : after.getFiles()) {
+            if (afterFiles.containsKey(key(file))) {
+                compare(null, file);
+            }
+        }
+    }
+
+    private static int key(FileImage file) {
+        return (file.getParentFID() << 16) | file.getFID();
+    }
+
+    private void compare(FileImage old, FileImage now) {
+        if ((old != null && old.getStatus() != FileImage.READ) || (now != null && now.getStatus() != FileImage.READ)) {
+            return;
+        }
+        long[] oldHashes = old == null ? new long[0] : old.getRecordHashes();
+        long[] nowHashes = now == null ? new long[0] : now.getRecordHashes();
+        if (old != null && now != null && oldHashes.length == nowHashes.length && old.getHash() == now.getHash()
+                && Arrays.equals(old.getContent(), now.getContent())) {
+            return;
+        }
+        FileImage file = now == null ? old : now;
+        boolean records = file.getRecordLength() != 0 && (old == null || now == null || old.getRecordLength() == now.getRecordLength());
+        if (!records) {
+            add(file, 0, old == null ? null : old.getContent(), now == null ? null : now.getContent());
+            return;
+        }
+        int recordLength = file.getRecordLength();
+        for (int i = 0; i < Math.max(oldHashes.length, nowHashes.length); i++) {
+            if (i < oldHashes.length && i < nowHashes.length && oldHashes[i] == nowHashes[i]
+                    && equalRanges(old.getContent(), now.getContent(), i * recordLength, recordLength)) {
+                continue;
+            }
+            add(file, i + 1, i < oldHashes.length ? old.getRecord(i + 1) : null, i < nowHashes.length ? now.getRecord(i + 1) : null);
+        }
+    }
+
+    private static boolean equalRanges(byte[] a, byte[] b, int offset, int length) {
+        for (int i = offset; i < offset + length; i++) {
+            if (a[i] != b[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void add(FileImage file, int numberOfRecord, byte[] old, byte[] now) {
+        boolean oldEmpty = isEmpty(old, numberOfRecord);
+        boolean nowEmpty = isEmpty(now, numberOfRecord);
+        if (oldEmpty && nowEmpty) {
+            return; //for example deleted SMS overwritten by another deleted SMS
+        }
+        RecordChange.Kind kind = oldEmpty ? RecordChange.Kind.ADDED : nowEmpty ? RecordChange.Kind.REMOVED : RecordChange.Kind.CHANGED;
+        changes.add(new RecordChange(kind, file.getName(), file.getFID(), file.getParentFID(), numberOfRecord, old, now));
+    }
+
+    /**
+     * Record is empty if it is missing or has only 'FF' bytes. First byte of
+     * record may be '00' as well, status of free record in EF_SMS.
+     */
+    private static boolean isEmpty(byte[] record, int numberOfRecord) {
+        if (record == null) {
+            return true;
+        }
+        if (record.length > 0 && record[0] != (byte) 0xFF && (record[0] != 0x00 || numberOfRecord == 0)) {
+            return false;
+        }
+        for (int i = 1; i < record.length; i++) {
+            if (record[i] != (byte) 0xFF) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Getter for older image.
+     *
+     * @return older image
+     */
+    public CardImage getBefore() {
+        return before;
+    }
+
+    /**
+     * Getter for newer image.
+     *
+     * @return newer image
+     */
+    public CardImage getAfter() {
+        return after;
+    }
+
+    /**
+     * Returns changed records in order of files in images.
+     *
+     * @return List of changes
+     */
+    public List<RecordChange> getChanges() {
+        return Collections.unmodifiableList(changes);
+    }
+
+    /**
+     * Determines whether images have the same content.
+     *
+     * @return true if nothing has changed
+     */
+    public boolean isEmpty() {
+        return changes.isEmpty();
+    }
+}
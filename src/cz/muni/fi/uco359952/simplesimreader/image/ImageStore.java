@@ -0,0 +1,416 @@
+package cz.muni.fi.uco359952.simplesimreader.image;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Store of CardImages of many cards in which every distinct chunk - FCI of
+ * file, one record or whole content of transparent EF - is kept only once.
+ * Bytes of record EF after its last whole record, for example content of EF
+ * shorter than one record, are chunk of their own, so no byte is lost. Empty
+ * ADN slots, deleted SMS and files that are the same for whole batch of
+ * cards are therefore stored once for all cards.
+ * <p>Store is directory with two parts:
+ * <pre>
+ * chunks.dat            int MAGIC, int VERSION, then for every chunk:
+ *                         int length, 20 bytes SHA-1, data
+ * manifests/ICCID.sim   int MAGIC, int VERSION, long time of dump,
+ *                       short length + ATR, int number of files, then for
+ *                       every file:
+ *                         byte 1 for DF, 2 for EF
+ *                         short File ID, short File ID of parent DF
+ *                         UTF short name, short Status Word
+ *                         long offset of FCI chunk
+ *                         int length of content, int number of chunks,
+ *                         long offset of every chunk of content
+ * </pre>
+ * Chunks are only appended and manifest refers to them by their offset in
+ * chunks.dat, 8 bytes per record. Manifest is synced to disk together with
+ * its chunks and only then replaces previous manifest of the same card
+ * atomically.
+ * Index from SHA-1 to offset is kept in memory, it is rebuilt from chunks.dat
+ * when store is opened.
+ *
+ * @author Andrej Simko
+ */
+public class ImageStore implements Closeable {
+
+    /**
+     * First four bytes of chunks.dat - "SIMC".
+     */
+    public static final int CHUNKS_MAGIC = 0x53494D43;
+    /**
+     * First four bytes of manifest - "SIMM".
+     */
+    public static final int MANIFEST_MAGIC = 0x53494D4D;
+    /**
+     * Version of format.
+     */
+    public static final int VERSION = 1;
+    private static final int HEADER_LENGTH = 8;
+    private static final int DIGEST_LENGTH = 20;
+    private static final int CHUNK_HEADER_LENGTH = 4 + DIGEST_LENGTH;
+    private static final String MANIFEST_SUFFIX = ".sim";
+    private final File directory;
+    private final File manifests;
+    private final FileChannel chunks;
+    private final Map<ByteBuffer, Long> offsets = new HashMap<>();
+    private final MessageDigest SHA1;
+    private long storedBytes = 0;
+
+    /**
+     * Opens store in given directory, which is created if it doesn't exist.
+     * Chunk that wasn't written whole, for example because process was
+     * killed, is cut off.
+     *
+     * @param directory directory of store
+     * @throws IOException if store can't be opened
+     */
+    public ImageStore(File directory) throws IOException {
+        this.directory = directory;
+        this.manifests = new File(directory, "manifests");
+        if (!manifests.isDirectory() && !manifests.mkdirs()) {
+            throw new IOException("Directory " + manifests + " can't be created");
+        }
+        try {
+            this.SHA1 = MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IOException(ex);
+        }
+        this.chunks = FileChannel.open(new File(directory, "chunks.dat").toPath(),
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        if (chunks.size() == 0) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_LENGTH);
+            header.putInt(CHUNKS_MAGIC).putInt(VERSION).flip();
+            writeFully(header, 0);
+        } else {
+            loadIndex();
+        }
+    }
+
+    private void loadIndex() throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(Math.max(HEADER_LENGTH, CHUNK_HEADER_LENGTH));
+        header.limit(HEADER_LENGTH);
+        readFully(header, 0);
+        if (header.getInt(0) != CHUNKS_MAGIC) {
+            throw new IOException(directory + " is not store of images");
+        }
+        if (header.getInt(4) > VERSION) {
+            throw new IOException("Unsupported version of store: " + header.getInt(4));
+        }
+        long size = chunks.size();
+        long position = HEADER_LENGTH;
+        while (position + CHUNK_HEADER_LENGTH <= size) {
+            header.clear().limit(CHUNK_HEADER_LENGTH);
+            readFully(header, position);
+            int length = header.getInt(0);
+            if (length < 0 || position + CHUNK_HEADER_LENGTH + length > size) {
+                break;
+            }
+            byte[] digest = new byte[DIGEST_LENGTH];
+            header.position(4);
+            header.get(digest);
+            offsets.put(ByteBuffer.wrap(digest), position);
+            storedBytes += length;
+            position += CHUNK_HEADER_LENGTH + length;
+        }
+        if (position < size) {
+            chunks.truncate(position);
+        }
+    }
+
+    /**
+     * Puts image into store under its ICCID. Previous image of the same card
+     * is replaced.
+     *
+     * @param image image of card
+     * @return ICCID of card
+     * @throws IOException if EF_ICCID wasn't read in image or store can't be
+     * written
+     */
+    public String put(CardImage image) throws IOException {
+        String ICCID = image.getICCID();
+        if (ICCID == null) {
+            throw new IOException("Image has no ICCID");
+        }
+        put(ICCID, image);
+        return ICCID;
+    }
+
+    /**
+     * Puts image into store under given ICCID. Previous image with the same
+     * ICCID is replaced.
+     *
+     * @param ICCID ICCID of card, only hexadecimal digits
+     * @param image image of card
+     * @throws IOException if store can't be written
+     */
+    public synchronized void put(String ICCID, CardImage image) throws IOException {
+        File manifest = manifestOf(ICCID);
+        File temporary = new File(manifests, ICCID + MANIFEST_SUFFIX + ".tmp");
+        try (FileOutputStream stream = new FileOutputStream(temporary);
+                DataOutputStream out = new DataOutputStream(new BufferedOutputStream(stream))) {
+            out.writeInt(MANIFEST_MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(image.getTimestamp());
+            out.writeShort(image.getATR().length);
+            out.write(image.getATR());
+            out.writeInt(image.getFiles().size());
+            for (FileImage file : image.getFiles()) {
+                out.writeByte(file.isDF() ? 1 : 2);
+                out.writeShort(file.getFID());
+                out.writeShort(file.getParentFID());
+                out.writeUTF(file.getName());
+                out.writeShort(file.getStatus());
+                out.writeLong(store(file.getFCI(), 0, file.getFCI().length));
+                byte[] content = file.getContent();
+                int recordLength = file.getRecordLength();
+                int chunkLength = recordLength == 0 ? content.length : recordLength;
+                out.writeInt(content.length);
+                out.writeInt(content.length == 0 ? 0 : (content.length + chunkLength - 1) / chunkLength);
+                for (int offset = 0; offset < content.length; offset += chunkLength) {
+                    out.writeLong(store(content, offset, Math.min(chunkLength, content.length - offset)));
+                }
+            }
+            out.flush();
+            stream.getFD().sync(); //manifest must be whole on disk before it replaces previous one
+        } catch (IOException ex) {
+            temporary.delete();
+            throw ex;
+        }
+        chunks.force(false); //manifest must not refer to chunks that are not on disk
+        Files.move(temporary.toPath(), manifest.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Stores chunk if it isn't in store yet.
+     *
+     * @return offset of chunk in chunks.dat
+     */
+    private long store(byte[] data, int offset, int length) throws IOException {
+        SHA1.update(data, offset, length);
+        ByteBuffer digest = ByteBuffer.wrap(SHA1.digest());
+        Long stored = offsets.get(digest);
+        if (stored != null) {
+            return stored;
+        }
+        long position = chunks.size();
+        ByteBuffer chunk = ByteBuffer.allocate(CHUNK_HEADER_LENGTH + length);
+        chunk.putInt(length).put(digest.array()).put(data, offset, length).flip();
+        writeFully(chunk, position);
+        offsets.put(digest, position);
+        storedBytes += length;
+        return position;
+    }
+
+    /**
+     * Determines whether image of card is in store.
+     *
+     * @param ICCID ICCID of card
+     * @return true if store has image of card
+     */
+    public boolean contains(String ICCID) {
+        return isValid(ICCID) && manifestOf(ICCID).isFile();
+    }
+
+    /**
+     * Returns ICCIDs of all cards in store.
+     *
+     * @return List of ICCIDs, sorted
+     */
+    public List<String> getICCIDs() {
+        List<String> ICCIDs = new ArrayList<>();
+        String[] names = manifests.list();
+        if (names != null) {
+            for (String name : names) {
+                if (name.endsWith(MANIFEST_SUFFIX)) {
+                    ICCIDs.add(name.substring(0, name.length() - MANIFEST_SUFFIX.length()));
+                }
+            }
+        }
+        Collections.sort(ICCIDs);
+        return ICCIDs;
+    }
+
+    /**
+     * Reads image of card from store.
+     *
+     * @param ICCID ICCID of card
+     * @return image of card
+     * @throws IOException if image is not in store or can't be read
+     */
+    public CardImage get(String ICCID) throws IOException {
+        try (DataInputStream in = openManifest(ICCID)) {
+            long timestamp = in.readLong();
+            byte[] ATR = new byte[in.readUnsignedShort()];
+            in.readFully(ATR);
+            int numberOfFiles = in.readInt();
+            List<FileImage> files = new ArrayList<>(numberOfFiles);
+            for (int i = 0; i < numberOfFiles; i++) {
+                FileImage header = readFileHeader(in);
+                byte[] content = new byte[in.readInt()];
+                int numberOfChunks = in.readInt();
+                int position = 0;
+                for (int j = 0; j < numberOfChunks; j++) {
+                    byte[] chunk = readChunk(in.readLong());
+                    System.arraycopy(chunk, 0, content, position, chunk.length);
+                    position += chunk.length;
+                }
+                files.add(new FileImage(header.isDF(), header.getFID(), header.getParentFID(), header.getName(),
+                        header.getFCI(), header.getStatus(), content));
+            }
+            return new CardImage(ATR, timestamp, files);
+        }
+    }
+
+    /**
+     * Writes image of card in format of CardImage.write() into stream, chunk
+     * by chunk, without building whole image in memory.
+     *
+     * @param ICCID ICCID of card
+     * @param output stream, it isn't closed
+     * @throws IOException if image is not in store or can't be written
+     */
+    public void writeImage(String ICCID, OutputStream output) throws IOException {
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(output));
+        try (DataInputStream in = openManifest(ICCID)) {
+            long timestamp = in.readLong();
+            byte[] ATR = new byte[in.readUnsignedShort()];
+            in.readFully(ATR);
+            int numberOfFiles = in.readInt();
+            CardImage.writeHeader(out, ATR, timestamp, numberOfFiles);
+            for (int i = 0; i < numberOfFiles; i++) {
+                FileImage header = readFileHeader(in);
+                CardImage.writeFileHeader(out, header, in.readInt());
+                int numberOfChunks = in.readInt();
+                for (int j = 0; j < numberOfChunks; j++) {
+                    out.write(readChunk(in.readLong()));
+                }
+            }
+        }
+        out.flush();
+    }
+
+    private DataInputStream openManifest(String ICCID) throws IOException {
+        File manifest = manifestOf(ICCID);
+        if (!manifest.isFile()) {
+            throw new IOException("Image of card " + ICCID + " is not in store");
+        }
+        DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(manifest)));
+        try {
+            if (in.readInt() != MANIFEST_MAGIC) {
+                throw new IOException(manifest + " is not manifest of image");
+            }
+            int version = in.readInt();
+            if (version > VERSION) {
+                throw new IOException("Unsupported version of manifest: " + version);
+            }
+        } catch (IOException ex) {
+            in.close();
+            throw ex;
+        }
+        return in;
+    }
+
+    /**
+     * Reads description of file from manifest, up to length of content.
+     * Content of returned FileImage is empty.
+     */
+    private FileImage readFileHeader(DataInputStream in) throws IOException {
+        boolean DF = in.readByte() == 1;
+        int FID = in.readUnsignedShort();
+        int parentFID = in.readUnsignedShort();
+        String name = in.readUTF();
+        int status = in.readUnsignedShort();
+        byte[] FCI = readChunk(in.readLong());
+        return new FileImage(DF, FID, parentFID, name, FCI, status, new byte[0]);
+    }
+
+    private byte[] readChunk(long offset) throws IOException {
+        ByteBuffer length = ByteBuffer.allocate(4);
+        readFully(length, offset);
+        ByteBuffer data = ByteBuffer.allocate(length.getInt(0));
+        readFully(data, offset + CHUNK_HEADER_LENGTH);
+        return data.array();
+    }
+
+    private void readFully(ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = chunks.read(buffer, position);
+            if (read < 0) {
+                throw new EOFException("Chunk at " + position + " is not in store");
+            }
+            position += read;
+        }
+    }
+
+    private void writeFully(ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            position += chunks.write(buffer, position);
+        }
+    }
+
+    private File manifestOf(String ICCID) {
+        if (!isValid(ICCID)) {
+            throw new IllegalArgumentException("ICCID must consist only of hexadecimal digits: " + ICCID);
+        }
+        return new File(manifests, ICCID + MANIFEST_SUFFIX);
+    }
+
+    private static boolean isValid(String ICCID) {
+        return ICCID != null && ICCID.matches("[0-9A-Fa-f]+");
+    }
+
+    /**
+     * Getter for number of distinct chunks in store.
+     *
+     * @return number of chunks
+     */
+    public synchronized int getNumberOfChunks() {
+        return offsets.size();
+    }
+
+    /**
+     * Getter for size of data of all distinct chunks, without their headers.
+     *
+     * @return number of bytes
+     */
+    public synchronized long getStoredBytes() {
+        return storedBytes;
+    }
+
+    /**
+     * Getter for directory of store.
+     *
+     * @return directory of store
+     */
+    public File getDirectory() {
+        return directory;
+    }
+
+    @Override
+    public void close() throws IOException {
+        chunks.close();
+    }
+}
@@ -0,0 +1,105 @@
+package cz.muni.fi.uco359952.simplesimreader.image;
+
+import java.io.File;
+import java.io.IOException;
+import javax.smartcardio.Card;
+import javax.smartcardio.CardException;
+import javax.smartcardio.CardTerminal;
+
+/**
+ * Terminal with CardImage instead of card. Session bound to it is read by
+ * Getters and WriteIntoSystemOut as if it were the original card, without
+ * tying up any reader:
+ * <pre>
+ * CardSession session = new CardSession(ImageTerminal.open(file));
+ * session.connect();
+ * new WriteIntoSystemOut(session).writeDataWithoutAuthentication();
+ * </pre>
+ *
+ * @author Andrej Simko
+ */
+public class ImageTerminal extends CardTerminal {
+
+    private final CardImage image;
+    private final String name;
+
+    /**
+     * Creates terminal with given image.
+     *
+     * @param image image of card
+     * @param name name of terminal
+     */
+    public ImageTerminal(CardImage image, String name) {
+        this.image = image;
+        this.name = name;
+    }
+
+    /**
+     * Creates terminal with image read from file, named after the file.
+     *
+     * @param file image file
+     * @return terminal with image
+     * @throws IOException if image can't be read
+     */
+    public static ImageTerminal open(File file) throws IOException {
+        return new ImageTerminal(CardImage.read(file), "Image " + file.getName());
+    }
+
+    /**
+     * Getter for image in terminal.
+     *
+     * @return image of card
+     */
+    public CardImage getImage() {
+        return image;
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public Card connect(String protocol) throws CardException {
+        if (!protocol.equals("*") && !protocol.equals("T=0")) {
+            throw new CardException("Protocol " + protocol + " is not supported");
+        }
+        return new ImageCard(this, image);
+    }
+
+    @Override
+    public boolean isCardPresent() throws CardException {
+        return true;
+    }
+
+    @Override
+    public boolean waitForCardPresent(long timeout) throws CardException {
+        return true;
+    }
+
+    @Override
+    public boolean waitForCardAbsent(long timeout) throws CardException {
+        if (timeout < 0) {
+            throw new IllegalArgumentException("timeout must not be negative");
+        }
+        try {
+            if (timeout == 0) {
+                synchronized (this) {
+                    while (true) {
+                        wait(); //image is never removed
+                    }
+                }
+            }
+            Thread.sleep(timeout);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new CardException("Waiting for card was interrupted", ex);
+        }
+        return false;
+    }
+
+    @Override
+    public String toString() {
+        return "Image terminal: " + name;
+    }
+}
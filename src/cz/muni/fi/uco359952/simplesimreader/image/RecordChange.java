@@ -0,0 +1,188 @@
+package cz.muni.fi.uco359952.simplesimreader.image;
+
+import cz.muni.fi.uco359952.simplesimreader.Converter;
+import cz.muni.fi.uco359952.simplesimreader.data.Contact;
+import cz.muni.fi.uco359952.simplesimreader.data.DatabaseOfEF;
+import cz.muni.fi.uco359952.simplesimreader.data.EF;
+import cz.muni.fi.uco359952.simplesimreader.data.LOCI;
+import cz.muni.fi.uco359952.simplesimreader.data.SMS;
+
+/**
+ * One record or transparent EF that differs between two images of card. Raw
+ * bytes are kept as they are; they are decoded by Contact, SMS or LOCI only
+ * when decoded value is asked for.
+ *
+ * @author Andrej Simko
+ */
+public class RecordChange {
+
+    /**
+     * Kinds of changes.
+     */
+    public enum Kind {
+
+        /**
+         * Record was empty or EF didn't exist and now has data, for example
+         * new SMS or contact.
+         */
+        ADDED,
+        /**
+         * Record had data and now is empty or EF doesn't exist anymore.
+         */
+        REMOVED,
+        /**
+         * Record has different data, for example edited contact or updated
+         * LOCI.
+         */
+        CHANGED
+    }
+    private final Kind kind;
+    private final String name;
+    private final int FID;
+    private final int parentFID;
+    private final int numberOfRecord;
+    private final byte[] before;
+    private final byte[] after;
+
+    RecordChange(Kind kind, String name, int FID, int parentFID, int numberOfRecord, byte[] before, byte[] after) {
+        this.kind = kind;
+        this.name = name;
+        this.FID = FID;
+        this.parentFID = parentFID;
+        this.numberOfRecord = numberOfRecord;
+        this.before = before;
+        this.after = after;
+    }
+
+    /**
+     * Getter for kind of change.
+     *
+     * @return kind of change
+     */
+    public Kind getKind() {
+        return kind;
+    }
+
+    /**
+     * Getter for short name of EF.
+     *
+     * @return short name of EF, for example "SMS"
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Getter for File ID of EF.
+     *
+     * @return File ID of EF
+     */
+    public int getFID() {
+        return FID;
+    }
+
+    /**
+     * Getter for File ID of DF of EF.
+     *
+     * @return File ID of parent DF
+     */
+    public int getParentFID() {
+        return parentFID;
+    }
+
+    /**
+     * Getter for number of changed record.
+     *
+     * @return number of record starting from 1, 0 for transparent EF
+     */
+    public int getNumberOfRecord() {
+        return numberOfRecord;
+    }
+
+    /**
+     * Getter for record in older image.
+     *
+     * @return record or content of transparent EF, null if EF wasn't in image
+     */
+    public byte[] getBefore() {
+        return before;
+    }
+
+    /**
+     * Getter for record in newer image.
+     *
+     * @return record or content of transparent EF, null if EF isn't in image
+     */
+    public byte[] getAfter() {
+        return after;
+    }
+
+    /**
+     * Returns record in older image decoded by parser of its EF.
+     *
+     * @return Contact for ADN, MSISDN and LND; SMS for SMS; LOCI for LOCI;
+     * hex String for other EFs; null if EF wasn't in image
+     */
+    public Object getDecodedBefore() {
+        return decode(before);
+    }
+
+    /**
+     * Returns record in newer image decoded by parser of its EF.
+     *
+     * @return Contact for ADN, MSISDN and LND; SMS for SMS; LOCI for LOCI;
+     * hex String for other EFs; null if EF isn't in image
+     */
+    public Object getDecodedAfter() {
+        return decode(after);
+    }
+
+    private Object decode(byte[] data) {
+        if (data == null) {
+            return null;
+        }
+        try {
+            if (is(DatabaseOfEF.EF_ADN) || is(DatabaseOfEF.EF_MSISDN) || is(DatabaseOfEF.EF_LND)) {
+                Contact contact = new Contact(data);
+                contact.setIndex(numberOfRecord);
+                return contact;
+            }
+            if (is(DatabaseOfEF.EF_SMS)) {
+                SMS sms = new SMS(data);
+                sms.setIndex(numberOfRecord);
+                return sms;
+            }
+            if (is(DatabaseOfEF.EF_LOCI)) {
+                return new LOCI(data);
+            }
+        } catch (RuntimeException ex) {
+            //record doesn't have structure of its EF, it is shown in hex
+        }
+        return Converter.bytesToHex(data);
+    }
+
+    private boolean is(EF EF) {
+        return FID == CardImage.toInt(EF.getFID()) && parentFID == CardImage.toInt(EF.getDF().getFID());
+    }
+
+    @Override
+    public String toString() {
+        String where = name + " (" + String.format("%04X", FID) + ")" + (numberOfRecord == 0 ? "" : " record " + numberOfRecord);
+        Object decodedBefore = getDecodedBefore();
+        Object decodedAfter = getDecodedAfter();
+        if (decodedBefore instanceof LOCI) {
+            decodedBefore = ((LOCI) decodedBefore).getLOCI();
+        }
+        if (decodedAfter instanceof LOCI) {
+            decodedAfter = ((LOCI) decodedAfter).getLOCI();
+        }
+        switch (kind) {
+            case ADDED:
+                return kind + " " + where + ": " + decodedAfter;
+            case REMOVED:
+                return kind + " " + where + ": " + decodedBefore;
+            default:
+                return kind + " " + where + ": " + decodedBefore + " -> " + decodedAfter;
+        }
+    }
+}
@@ -0,0 +1,8 @@
+/**
+ * Contains raw images of whole SIM cards and terminals that read them
+ * offline.
+ *
+ * @author Andrej Simko
+ * 
+ */
+package cz.muni.fi.uco359952.simplesimreader.image;
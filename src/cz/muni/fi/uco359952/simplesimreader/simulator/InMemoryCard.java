@@ -0,0 +1,245 @@
+package cz.muni.fi.uco359952.simplesimreader.simulator;
+
+import javax.smartcardio.Card;
+import javax.smartcardio.CardChannel;
+import javax.smartcardio.CardException;
+
+/**
+ * Connection to card that is answered in memory instead of by reader -
+ * simulated SIM, image of card or replayed trace. Behaves as connection of
+ * PC/SC: it supports up to three logical channels and exclusive access of one
+ * thread, and it can't be used once it is disconnected. Subclass only answers
+ * commands in process(). Helpers for building responses and for addressing of
+ * records are shared by all such cards.
+ *
+ * @author Andrej Simko
+ */
+public abstract class InMemoryCard extends Card {
+
+    private static final int MAX_CHANNELS = 4;
+    private final boolean[] channelsInUse = new boolean[MAX_CHANNELS];
+    private InMemoryChannel basicChannel = null;
+    private volatile boolean connected = true;
+    private Thread exclusiveThread = null;
+
+    /**
+     * Creates channel of this card.
+     *
+     * @param channelNumber number of channel, 0 for basic channel
+     * @return new channel
+     */
+    protected abstract InMemoryChannel createChannel(int channelNumber);
+
+    /**
+     * Answers command received over given channel. Called after channel has
+     * checked it is open.
+     *
+     * @param channel channel created by createChannel()
+     * @param command whole command APDU
+     * @return response APDU with Status Word
+     * @throws CardException if card can't answer, for example because it has
+     * been removed
+     */
+    protected abstract byte[] process(InMemoryChannel channel, byte[] command) throws CardException;
+
+    @Override
+    public String getProtocol() {
+        return "T=0";
+    }
+
+    @Override
+    public synchronized CardChannel getBasicChannel() {
+        checkConnected();
+        if (basicChannel == null) {
+            basicChannel = createChannel(0);
+            channelsInUse[0] = true;
+        }
+        return basicChannel;
+    }
+
+    @Override
+    public synchronized CardChannel openLogicalChannel() throws CardException {
+        checkConnected();
+        checkExclusive();
+        for (int i = 1; i < MAX_CHANNELS; i++) {
+            if (!channelsInUse[i]) {
+                channelsInUse[i] = true;
+                return createChannel(i);
+            }
+        }
+        throw new CardException("No free logical channel");
+    }
+
+    synchronized void releaseChannel(int channelNumber) {
+        channelsInUse[channelNumber] = false;
+    }
+
+    @Override
+    public synchronized void beginExclusive() throws CardException {
+        checkConnected();
+        if (exclusiveThread != null) {
+            throw new CardException("Exclusive access has already been assigned to Thread " + exclusiveThread.getName());
+        }
+        exclusiveThread = Thread.currentThread();
+    }
+
+    @Override
+    public synchronized void endExclusive() throws CardException {
+        checkConnected();
+        if (exclusiveThread != Thread.currentThread()) {
+            throw new IllegalStateException("Exclusive access not assigned to current Thread");
+        }
+        exclusiveThread = null;
+    }
+
+    @Override
+    public byte[] transmitControlCommand(int controlCode, byte[] command) throws CardException {
+        throw new CardException("Control commands are not supported by " + this);
+    }
+
+    @Override
+    public synchronized void disconnect(boolean reset) throws CardException {
+        if (!connected) {
+            return;
+        }
+        checkExclusive();
+        connected = false;
+        exclusiveThread = null;
+        disconnected(reset);
+    }
+
+    /**
+     * Called when card is disconnected by disconnect(), with lock of card
+     * held. Does nothing by default.
+     *
+     * @param reset true if card is to be reset
+     */
+    protected void disconnected(boolean reset) {
+    }
+
+    /**
+     * Ends connection without disconnect(), for example when card has been
+     * removed from terminal.
+     */
+    protected void lost() {
+        connected = false;
+    }
+
+    /**
+     * Throws IllegalStateException if card has been disconnected.
+     */
+    protected void checkConnected() {
+        if (!connected) {
+            throw new IllegalStateException("Card has been disconnected");
+        }
+    }
+
+    /**
+     * Throws CardException if another thread has exclusive access to card.
+     * Has to be called with lock of card held.
+     *
+     * @throws CardException if exclusive access belongs to another thread
+     */
+    protected void checkExclusive() throws CardException {
+        if (exclusiveThread != null && exclusiveThread != Thread.currentThread()) {
+            throw new CardException("Exclusive access established by another Thread");
+        }
+    }
+
+    /**
+     * Creates response that is Status Word only.
+     *
+     * @param statusWord Status Word, for example 0x9000
+     * @return response of 2 bytes
+     */
+    public static byte[] statusWord(int statusWord) {
+        return new byte[]{(byte) (statusWord >>> 8), (byte) statusWord};
+    }
+
+    /**
+     * Creates response with data followed by Status Word.
+     *
+     * @param data array with data
+     * @param offset position of first byte of data in array
+     * @param length number of bytes of data
+     * @param statusWord Status Word, for example 0x9000
+     * @return response of length + 2 bytes
+     */
+    public static byte[] withStatusWord(byte[] data, int offset, int length, int statusWord) {
+        byte[] response = new byte[length + 2];
+        System.arraycopy(data, offset, response, 0, length);
+        response[length] = (byte) (statusWord >>> 8);
+        response[length + 1] = (byte) statusWord;
+        return response;
+    }
+
+    /**
+     * Answers GET RESPONSE or STATUS with given response. Wrong length is
+     * answered by '6Cxx' with length of response.
+     *
+     * @param response whole response card has ready
+     * @param length length asked for by P3
+     * @return response with '9000', or Status Word only
+     */
+    public static byte[] answer(byte[] response, int length) {
+        if (length == 0 || length > response.length) {
+            return statusWord(0x6C00 | response.length);
+        }
+        return withStatusWord(response, 0, length, 0x9000);
+    }
+
+    /**
+     * Answers READ BINARY from content of transparent EF. Access has to be
+     * checked by caller.
+     *
+     * @param content content of EF
+     * @param offset offset given by P1 and P2
+     * @param length length given by P3
+     * @return bytes read with '9000', or '9402' or '6700'
+     */
+    public static byte[] readBinary(byte[] content, int offset, int length) {
+        if (offset >= content.length) {
+            return statusWord(0x9402);
+        }
+        if (length == 0 || offset + length > content.length) {
+            return statusWord(0x6700);
+        }
+        return withStatusWord(content, offset, length, 0x9000);
+    }
+
+    /**
+     * Returns number of record addressed by mode of READ RECORD or UPDATE
+     * RECORD (GSM 11.11, chapter 9.2.5).
+     *
+     * @param recordPointer current record of channel, 0 if there is none
+     * @param numberOfRecords number of records of EF
+     * @param cyclic true if EF is cyclic, so next and previous wrap around
+     * @param numberOfRecord number of record given by P1
+     * @param mode mode given by P2 - '02' next, '03' previous, '04' absolute
+     * @return number of record, 0 if it is out of range, -1 if mode is not
+     * supported
+     */
+    public static int recordForMode(int recordPointer, int numberOfRecords, boolean cyclic, int numberOfRecord, int mode) {
+        int record;
+        switch (mode) {
+            case 0x04: //absolute
+                record = numberOfRecord;
+                break;
+            case 0x02: //next
+                record = recordPointer + 1;
+                if (cyclic && record > numberOfRecords) {
+                    record = 1;
+                }
+                break;
+            case 0x03: //previous
+                record = recordPointer == 0 ? numberOfRecords : recordPointer - 1;
+                if (cyclic && record < 1) {
+                    record = numberOfRecords;
+                }
+                break;
+            default:
+                return -1;
+        }
+        return record >= 1 && record <= numberOfRecords ? record : 0;
+    }
+}
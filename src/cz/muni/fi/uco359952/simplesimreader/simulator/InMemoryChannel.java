@@ -0,0 +1,82 @@
+package cz.muni.fi.uco359952.simplesimreader.simulator;
+
+import java.nio.ByteBuffer;
+import javax.smartcardio.Card;
+import javax.smartcardio.CardChannel;
+import javax.smartcardio.CardException;
+import javax.smartcardio.CommandAPDU;
+import javax.smartcardio.ResponseAPDU;
+
+/**
+ * Channel to InMemoryCard. Commands are handed to card, which answers them;
+ * subclass can keep state of channel, such as selected files.
+ *
+ * @author Andrej Simko
+ */
+public class InMemoryChannel extends CardChannel {
+
+    private final InMemoryCard card;
+    private final int channelNumber;
+    private volatile boolean closed = false;
+
+    /**
+     * Creates channel of given card.
+     *
+     * @param card card of channel
+     * @param channelNumber number of channel, 0 for basic channel
+     */
+    public InMemoryChannel(InMemoryCard card, int channelNumber) {
+        this.card = card;
+        this.channelNumber = channelNumber;
+    }
+
+    @Override
+    public Card getCard() {
+        return card;
+    }
+
+    @Override
+    public int getChannelNumber() {
+        checkOpen();
+        return channelNumber;
+    }
+
+    @Override
+    public ResponseAPDU transmit(CommandAPDU command) throws CardException {
+        return new ResponseAPDU(transmit(command.getBytes()));
+    }
+
+    @Override
+    public int transmit(ByteBuffer command, ByteBuffer response) throws CardException {
+        if (response.remaining() < 258) {
+            throw new IllegalArgumentException("Insufficient space in response buffer");
+        }
+        byte[] commandBytes = new byte[command.remaining()];
+        command.get(commandBytes);
+        byte[] responseBytes = transmit(commandBytes);
+        response.put(responseBytes);
+        return responseBytes.length;
+    }
+
+    private byte[] transmit(byte[] command) throws CardException {
+        checkOpen();
+        return card.process(this, command);
+    }
+
+    @Override
+    public void close() throws CardException {
+        if (channelNumber == 0) {
+            throw new IllegalStateException("Cannot close basic channel");
+        }
+        if (!closed) {
+            closed = true;
+            card.releaseChannel(channelNumber);
+        }
+    }
+
+    private void checkOpen() {
+        if (closed) {
+            throw new IllegalStateException("Logical channel has been closed");
+        }
+    }
+}
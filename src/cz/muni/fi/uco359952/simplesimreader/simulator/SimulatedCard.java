@@ -0,0 +1,65 @@
+package cz.muni.fi.uco359952.simplesimreader.simulator;
+
+import javax.smartcardio.ATR;
+import javax.smartcardio.CardException;
+
+/**
+ * Connection to simulated SIM card, created by SimulatedTerminal.connect().
+ * Behaves as connection of PC/SC (see InMemoryCard), and it stops working
+ * when card is removed from terminal.
+ *
+ * @author Andrej Simko
+ */
+class SimulatedCard extends InMemoryCard {
+
+    /**
+     * Answer To Reset of simulated card - T=0, GSM SIM.
+     */
+    static final byte[] ATR_BYTES = {(byte) 0x3B, (byte) 0x9F, (byte) 0x95, (byte) 0x80, (byte) 0x1F, (byte) 0xC3,
+        (byte) 0x80, (byte) 0x31, (byte) 0xE0, (byte) 0x73, (byte) 0xFE, (byte) 0x21, (byte) 0x13, (byte) 0x57,
+        (byte) 0x86, (byte) 0x81, (byte) 0x02, (byte) 0x86, (byte) 0x98, (byte) 0x44, (byte) 0x18, (byte) 0xA8};
+    private final SimulatedTerminal terminal;
+    private final SimulatedSim sim;
+    private final long insertion;
+
+    SimulatedCard(SimulatedTerminal terminal, SimulatedSim sim, long insertion) {
+        this.terminal = terminal;
+        this.sim = sim;
+        this.insertion = insertion;
+    }
+
+    @Override
+    public ATR getATR() {
+        return new ATR(ATR_BYTES);
+    }
+
+    @Override
+    protected InMemoryChannel createChannel(int channelNumber) {
+        return new SimulatedChannel(this, channelNumber);
+    }
+
+    @Override
+    protected void disconnected(boolean reset) {
+        if (reset) {
+            sim.reset();
+        }
+    }
+
+    @Override
+    protected byte[] process(InMemoryChannel channel, byte[] command) throws CardException {
+        checkConnected();
+        synchronized (this) {
+            checkExclusive();
+        }
+        if (!terminal.isInserted(insertion)) {
+            lost();
+            throw new CardException("Card has been removed from " + terminal.getName());
+        }
+        return sim.process((SimulatedChannel) channel, command);
+    }
+
+    @Override
+    public String toString() {
+        return "Simulated SIM " + sim.getCardNumber() + " in " + terminal.getName();
+    }
+}
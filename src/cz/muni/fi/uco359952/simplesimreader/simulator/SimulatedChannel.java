@@ -0,0 +1,19 @@
+package cz.muni.fi.uco359952.simplesimreader.simulator;
+
+/**
+ * Channel to simulated SIM card. Every channel has its own selected DF and EF,
+ * as logical channels of real card.
+ *
+ * @author Andrej Simko
+ */
+class SimulatedChannel extends InMemoryChannel {
+
+    SimulatedFile currentDF = null;
+    SimulatedFile currentEF = null;
+    int recordPointer = 0;
+    byte[] pendingResponse = null;
+
+    SimulatedChannel(SimulatedCard card, int channelNumber) {
+        super(card, channelNumber);
+    }
+}
@@ -0,0 +1,156 @@
+package cz.muni.fi.uco359952.simplesimreader.simulator;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * One file of simulated SIM card - DF with its children or EF with its
+ * content. Access conditions are coded as in GSM 11.11: 0 = always, 1 =
+ * CHV1, 2 = CHV2, 4 = ADM, F = never.
+ *
+ * @author Andrej Simko
+ */
+class SimulatedFile {
+
+    static final int ALWAYS = 0x0;
+    static final int CHV1 = 0x1;
+    static final int CHV2 = 0x2;
+    static final int ADM = 0x4;
+    static final int NEVER = 0xF;
+    static final int TRANSPARENT = 0x00;
+    static final int LINEAR_FIXED = 0x01;
+    static final int CYCLIC = 0x03;
+    final byte[] FID;
+    final SimulatedFile parent;
+    final boolean isDF;
+    final List<SimulatedFile> children = new ArrayList<>();
+    final int structure;
+    final int recordLength;
+    final int readAccess;
+    final int updateAccess;
+    final byte[] content;
+
+    /**
+     * Creates DF.
+     */
+    SimulatedFile(byte[] FID, SimulatedFile parent) {
+        this.FID = FID;
+        this.parent = parent;
+        this.isDF = true;
+        this.structure = TRANSPARENT;
+        this.recordLength = 0;
+        this.readAccess = ALWAYS;
+        this.updateAccess = NEVER;
+        this.content = new byte[0];
+        if (parent != null) {
+            parent.children.add(this);
+        }
+    }
+
+    /**
+     * Creates EF with given content. Content of record EF is all records one
+     * after another.
+     */
+    SimulatedFile(byte[] FID, SimulatedFile parent, int structure, int recordLength, int readAccess, int updateAccess, byte[] content) {
+        this.FID = FID;
+        this.parent = parent;
+        this.isDF = false;
+        this.structure = structure;
+        this.recordLength = recordLength;
+        this.readAccess = readAccess;
+        this.updateAccess = updateAccess;
+        this.content = content;
+        parent.children.add(this);
+    }
+
+    boolean hasFID(byte[] otherFID) {
+        return FID[0] == otherFID[0] && FID[1] == otherFID[1];
+    }
+
+    int getNumberOfRecords() {
+        return recordLength == 0 ? 0 : content.length / recordLength;
+    }
+
+    /**
+     * Returns response data to SELECT of this file (GSM 11.11, chapter
+     * 9.2.1).
+     */
+    byte[] getResponse(int[] codeStatus, boolean CHV1Enabled) {
+        if (isDF) {
+            byte[] response = new byte[23];
+            response[2] = (byte) 0x10; //free memory
+            response[4] = FID[0];
+            response[5] = FID[1];
+            response[6] = (byte) (parent == null ? 0x01 : 0x02);
+            response[12] = 10; //length of GSM specific data
+            response[13] = (byte) (CHV1Enabled ? 0x01 : 0x81);
+            int numberOfDFs = 0;
+            for (SimulatedFile child : children) {
+                if (child.isDF) {
+                    numberOfDFs++;
+                }
+            }
+            response[14] = (byte) numberOfDFs;
+            response[15] = (byte) (children.size() - numberOfDFs);
+            response[16] = 4; //CHV1, UNBLOCK CHV1, CHV2, UNBLOCK CHV2
+            for (int i = 0; i < 4; i++) {
+                response[18 + i] = (byte) (0x80 | codeStatus[i]);
+            }
+            return response;
+        }
+        byte[] response = new byte[15];
+        response[2] = (byte) (content.length >>> 8);
+        response[3] = (byte) content.length;
+        response[4] = FID[0];
+        response[5] = FID[1];
+        response[6] = 0x04;
+        response[8] = (byte) ((readAccess << 4) | updateAccess);
+        response[9] = (byte) 0xF0; //INCREASE never
+        response[10] = (byte) 0x44; //REHABILITATE and INVALIDATE by ADM
+        response[11] = 0x01; //not invalidated
+        response[12] = 0x02;
+        response[13] = (byte) structure;
+        response[14] = (byte) recordLength;
+        return response;
+    }
+
+    /**
+     * Returns FCP template of this file, which is response to SELECT in ISO
+     * class (ETSI TS 102 221, chapter 11.1.1.3) - file descriptor, File ID,
+     * life cycle status and, for EF, file size.
+     */
+    byte[] getFCP() {
+        byte[] descriptor;
+        if (isDF) {
+            descriptor = new byte[]{(byte) 0x78, (byte) 0x21};
+        } else if (structure == TRANSPARENT) {
+            descriptor = new byte[]{(byte) 0x41, (byte) 0x21};
+        } else {
+            descriptor = new byte[]{(byte) (structure == CYCLIC ? 0x46 : 0x42), (byte) 0x21,
+                (byte) 0x00, (byte) recordLength, (byte) getNumberOfRecords()};
+        }
+        int length = 2 + descriptor.length + 4 + 3 + (isDF ? 0 : 4);
+        byte[] FCP = new byte[2 + length];
+        int i = 0;
+        FCP[i++] = (byte) 0x62;
+        FCP[i++] = (byte) length;
+        FCP[i++] = (byte) 0x82;
+        FCP[i++] = (byte) descriptor.length;
+        System.arraycopy(descriptor, 0, FCP, i, descriptor.length);
+        i += descriptor.length;
+        FCP[i++] = (byte) 0x83;
+        FCP[i++] = 2;
+        FCP[i++] = FID[0];
+        FCP[i++] = FID[1];
+        FCP[i++] = (byte) 0x8A;
+        FCP[i++] = 1;
+        FCP[i++] = 0x05; //operational state - activated
+        if (!isDF) {
+            FCP[i++] = (byte) 0x80;
+            FCP[i++] = 2;
+            FCP[i++] = (byte) (content.length >>> 8);
+            FCP[i] = (byte) content.length;
+        }
+        return FCP;
+    }
+}
@@ -0,0 +1,531 @@
+package cz.muni.fi.uco359952.simplesimreader.simulator;
+
+import cz.muni.fi.uco359952.simplesimreader.data.DF;
+import cz.muni.fi.uco359952.simplesimreader.data.DatabaseOfEF;
+import cz.muni.fi.uco359952.simplesimreader.data.EF;
+import java.io.UnsupportedEncodingException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import org.marre.sms.SmsPduUtil;
+
+/**
+ * In-memory SIM card with GSM 11.11 file system - MF, DF_TELECOM, DF_GSM and
+ * every EF from DatabaseOfEF. Answers SELECT, STATUS, GET RESPONSE, READ
+ * BINARY, READ RECORD, UPDATE BINARY, UPDATE RECORD and VERIFY CHV in both
+ * GSM class 'A0' and ISO class '00', in which SELECT returns FCP template
+ * (P2 '04') or no data (P2 '0C'). Content of files is generated from
+ * number of card, so every simulated card has its own ICCID, IMSI and
+ * contacts.
+ *
+ * @author Andrej Simko
+ */
+public class SimulatedSim {
+
+    private static final int MAX_CHV_TRIES = 3;
+    private static final int MAX_UNBLOCK_TRIES = 10;
+    private static final int ADN_RECORD_LENGTH = 28;
+    private static final int SMS_RECORD_LENGTH = 176;
+    private final SimulatorConfig config;
+    private final int cardNumber;
+    private final SimulatedFile MF;
+    private final Map<EF, SimulatedFile> files = new HashMap<>();
+    private final byte[][] codes = new byte[2][];
+    private final int[] codeStatus = {MAX_CHV_TRIES, MAX_UNBLOCK_TRIES, MAX_CHV_TRIES, MAX_UNBLOCK_TRIES};
+    private final boolean[] verified = new boolean[2];
+    private final AtomicLong numberOfApdus = new AtomicLong();
+
+    /**
+     * Creates SIM card with given configuration.
+     *
+     * @param config configuration of record counts, PINs and timing
+     * @param cardNumber number of card, used for generating its content
+     */
+    public SimulatedSim(SimulatorConfig config, int cardNumber) {
+        this.config = config;
+        this.cardNumber = cardNumber;
+        codes[0] = padCode(config.getPIN());
+        codes[1] = padCode(config.getPIN2());
+
+        Map<DF, SimulatedFile> DFs = new HashMap<>();
+        MF = new SimulatedFile(DatabaseOfEF.MF.getFID(), null);
+        DFs.put(DatabaseOfEF.MF, MF);
+        DFs.put(DatabaseOfEF.DF_TELECOM, new SimulatedFile(DatabaseOfEF.DF_TELECOM.getFID(), MF));
+        DFs.put(DatabaseOfEF.DF_GSM, new SimulatedFile(DatabaseOfEF.DF_GSM.getFID(), MF));
+        for (EF EF : DatabaseOfEF.ALL_EF) {
+            byte[] content = createContent(EF);
+            int structure;
+            switch (EF.getStructure()) {
+                case DatabaseOfEF.linearFixed:
+                    structure = SimulatedFile.LINEAR_FIXED;
+                    break;
+                case DatabaseOfEF.cyclic:
+                    structure = SimulatedFile.CYCLIC;
+                    break;
+                default:
+                    structure = SimulatedFile.TRANSPARENT;
+            }
+            int recordLength = structure == SimulatedFile.TRANSPARENT ? 0 : getRecordLength(EF);
+            files.put(EF, new SimulatedFile(EF.getFID(), DFs.get(EF.getDF()), structure, recordLength,
+                    accessCode(EF.getReadAccess()), accessCode(EF.getWriteAccess()), content));
+        }
+    }
+
+    /**
+     * Getter for number of this card.
+     *
+     * @return number of card
+     */
+    public int getCardNumber() {
+        return cardNumber;
+    }
+
+    /**
+     * Getter for number of APDUs this card has processed.
+     *
+     * @return number of APDUs
+     */
+    public long getNumberOfApdus() {
+        return numberOfApdus.get();
+    }
+
+    /**
+     * Returns copy of current content of given EF, all records one after
+     * another for record EFs.
+     *
+     * @param EF Elementary File
+     * @return content of EF
+     */
+    public synchronized byte[] getContent(EF EF) {
+        return files.get(EF).content.clone();
+    }
+
+    /**
+     * Forgets verified CHVs, as after reset of card.
+     */
+    synchronized void reset() {
+        verified[0] = false;
+        verified[1] = false;
+    }
+
+    /**
+     * Processes command APDU received over given channel and waits as long
+     * as real card would take.
+     */
+    byte[] process(SimulatedChannel channel, byte[] command) {
+        numberOfApdus.incrementAndGet();
+        byte[] response;
+        synchronized (this) {
+            response = execute(channel, command);
+        }
+        long micros = config.getApduLatency() + (command.length + response.length) * config.getByteTime();
+        if (micros > 0) {
+            LockSupport.parkNanos(TimeUnit.MICROSECONDS.toNanos(micros));
+        }
+        return response;
+    }
+
+    private byte[] execute(SimulatedChannel channel, byte[] command) {
+        if (command.length < 4) {
+            return InMemoryCard.statusWord(0x6700);
+        }
+        int CLA = command[0] & 0xF0;
+        if (CLA != 0xA0 && CLA != 0x00) {
+            return InMemoryCard.statusWord(0x6E00);
+        }
+        boolean ISO = CLA == 0x00;
+        int INS = command[1] & 0xff;
+        int P1 = command[2] & 0xff;
+        int P2 = command[3] & 0xff;
+        int P3 = command.length > 4 ? command[4] & 0xff : 0;
+        byte[] data = command.length > 5 ? Arrays.copyOfRange(command, 5, command.length) : new byte[0];
+        if (INS != 0xC0) {
+            channel.pendingResponse = null;
+        }
+        switch (INS) {
+            case 0xA4:
+                return select(channel, data, ISO, P2);
+            case 0xF2:
+                return status(channel, P3, ISO);
+            case 0xC0:
+                return getResponse(channel, P3);
+            case 0xB0:
+                return readBinary(channel, (P1 << 8) | P2, P3);
+            case 0xB2:
+                return readRecord(channel, P1, P2, P3);
+            case 0xD6:
+                return updateBinary(channel, (P1 << 8) | P2, data);
+            case 0xDC:
+                return updateRecord(channel, P1, P2, data);
+            case 0x20:
+                return verify(P2, data);
+            default:
+                return InMemoryCard.statusWord(0x6D00);
+        }
+    }
+
+    /**
+     * Selects file. In ISO class P2 '04' asks for FCP template and '0C' for
+     * no response data; otherwise GSM response data are returned.
+     */
+    private byte[] select(SimulatedChannel channel, byte[] FID, boolean ISO, int P2) {
+        if (FID.length != 2) {
+            return InMemoryCard.statusWord(0x6700);
+        }
+        SimulatedFile file = find(channel.currentDF == null ? MF : channel.currentDF, FID);
+        if (file == null) {
+            return InMemoryCard.statusWord(0x9404);
+        }
+        if (file.isDF) {
+            channel.currentDF = file;
+            channel.currentEF = null;
+        } else {
+            channel.currentEF = file;
+        }
+        channel.recordPointer = 0;
+        if (ISO && P2 == 0x0C) {
+            return InMemoryCard.statusWord(0x9000);
+        }
+        channel.pendingResponse = ISO && P2 == 0x04 ? file.getFCP() : file.getResponse(codeStatus, true);
+        return InMemoryCard.statusWord((ISO ? 0x6100 : 0x9F00) | channel.pendingResponse.length);
+    }
+
+    /**
+     * Finds file that can be selected from given DF - MF, current DF, its
+     * parent, its children and DFs next to it (GSM 11.11, chapter 6.5).
+     */
+    private SimulatedFile find(SimulatedFile currentDF, byte[] FID) {
+        if (MF.hasFID(FID)) {
+            return MF;
+        }
+        if (currentDF.hasFID(FID)) {
+            return currentDF;
+        }
+        for (SimulatedFile child : currentDF.children) {
+            if (child.hasFID(FID)) {
+                return child;
+            }
+        }
+        if (currentDF.parent != null) {
+            if (currentDF.parent.hasFID(FID)) {
+                return currentDF.parent;
+            }
+            for (SimulatedFile sibling : currentDF.parent.children) {
+                if (sibling.isDF && sibling.hasFID(FID)) {
+                    return sibling;
+                }
+            }
+        }
+        return null;
+    }
+
+    private byte[] status(SimulatedChannel channel, int length, boolean ISO) {
+        SimulatedFile DF = channel.currentDF == null ? MF : channel.currentDF;
+        return InMemoryCard.answer(ISO ? DF.getFCP() : DF.getResponse(codeStatus, true), length);
+    }
+
+    private byte[] getResponse(SimulatedChannel channel, int length) {
+        byte[] pending = channel.pendingResponse;
+        if (pending == null) {
+            return InMemoryCard.statusWord(0x6F00);
+        }
+        if (length != 0 && length <= pending.length) {
+            channel.pendingResponse = null;
+        }
+        return InMemoryCard.answer(pending, length);
+    }
+
+    private byte[] readBinary(SimulatedChannel channel, int offset, int length) {
+        SimulatedFile EF = channel.currentEF;
+        if (EF == null) {
+            return InMemoryCard.statusWord(0x9400);
+        }
+        if (EF.structure != SimulatedFile.TRANSPARENT) {
+            return InMemoryCard.statusWord(0x9408);
+        }
+        if (!isAllowed(EF.readAccess)) {
+            return InMemoryCard.statusWord(0x9804);
+        }
+        return InMemoryCard.readBinary(EF.content, offset, length);
+    }
+
+    private byte[] readRecord(SimulatedChannel channel, int numberOfRecord, int mode, int length) {
+        SimulatedFile EF = channel.currentEF;
+        if (EF == null) {
+            return InMemoryCard.statusWord(0x9400);
+        }
+        if (EF.structure == SimulatedFile.TRANSPARENT) {
+            return InMemoryCard.statusWord(0x9408);
+        }
+        if (!isAllowed(EF.readAccess)) {
+            return InMemoryCard.statusWord(0x9804);
+        }
+        int record = recordForMode(channel, EF, numberOfRecord, mode);
+        if (record < 1) {
+            return InMemoryCard.statusWord(record == 0 ? 0x9402 : 0x6B00);
+        }
+        if (length != EF.recordLength) {
+            return InMemoryCard.statusWord(0x6700);
+        }
+        channel.recordPointer = record;
+        return InMemoryCard.withStatusWord(EF.content, (record - 1) * EF.recordLength, length, 0x9000);
+    }
+
+    private byte[] updateBinary(SimulatedChannel channel, int offset, byte[] data) {
+        SimulatedFile EF = channel.currentEF;
+        if (EF == null) {
+            return InMemoryCard.statusWord(0x9400);
+        }
+        if (EF.structure != SimulatedFile.TRANSPARENT) {
+            return InMemoryCard.statusWord(0x9408);
+        }
+        if (!isAllowed(EF.updateAccess)) {
+            return InMemoryCard.statusWord(0x9804);
+        }
+        if (data.length == 0 || offset + data.length > EF.content.length) {
+            return InMemoryCard.statusWord(offset >= EF.content.length ? 0x9402 : 0x6700);
+        }
+        System.arraycopy(data, 0, EF.content, offset, data.length);
+        return InMemoryCard.statusWord(0x9000);
+    }
+
+    private byte[] updateRecord(SimulatedChannel channel, int numberOfRecord, int mode, byte[] data) {
+        SimulatedFile EF = channel.currentEF;
+        if (EF == null) {
+            return InMemoryCard.statusWord(0x9400);
+        }
+        if (EF.structure == SimulatedFile.TRANSPARENT) {
+            return InMemoryCard.statusWord(0x9408);
+        }
+        if (!isAllowed(EF.updateAccess)) {
+            return InMemoryCard.statusWord(0x9804);
+        }
+        if (data.length != EF.recordLength) {
+            return InMemoryCard.statusWord(0x6700);
+        }
+        if (EF.structure == SimulatedFile.CYCLIC) {
+            if (mode != 0x03) {
+                return InMemoryCard.statusWord(0x6B00);
+            }
+            //oldest record is overwritten and becomes record 1
+            System.arraycopy(EF.content, 0, EF.content, EF.recordLength, EF.content.length - EF.recordLength);
+            System.arraycopy(data, 0, EF.content, 0, data.length);
+            channel.recordPointer = 1;
+            return InMemoryCard.statusWord(0x9000);
+        }
+        int record = recordForMode(channel, EF, numberOfRecord, mode);
+        if (record < 1) {
+            return InMemoryCard.statusWord(record == 0 ? 0x9402 : 0x6B00);
+        }
+        System.arraycopy(data, 0, EF.content, (record - 1) * EF.recordLength, data.length);
+        channel.recordPointer = record;
+        return InMemoryCard.statusWord(0x9000);
+    }
+
+    /**
+     * Returns number of record addressed by mode, 0 if it is out of range, -1
+     * if mode is not supported.
+     */
+    private static int recordForMode(SimulatedChannel channel, SimulatedFile EF, int numberOfRecord, int mode) {
+        return InMemoryCard.recordForMode(channel.recordPointer, EF.getNumberOfRecords(), EF.structure == SimulatedFile.CYCLIC, numberOfRecord, mode);
+    }
+
+    private byte[] verify(int CHV, byte[] data) {
+        if (CHV != 1 && CHV != 2) {
+            return InMemoryCard.statusWord(0x6B00);
+        }
+        if (data.length != 8) {
+            return InMemoryCard.statusWord(0x6700);
+        }
+        int status = (CHV - 1) * 2;
+        if (codeStatus[status] == 0) {
+            return InMemoryCard.statusWord(0x9840);
+        }
+        if (!Arrays.equals(data, codes[CHV - 1])) {
+            codeStatus[status]--;
+            return InMemoryCard.statusWord(codeStatus[status] == 0 ? 0x9840 : 0x9804);
+        }
+        codeStatus[status] = MAX_CHV_TRIES;
+        verified[CHV - 1] = true;
+        return InMemoryCard.statusWord(0x9000);
+    }
+
+    private boolean isAllowed(int accessCondition) {
+        switch (accessCondition) {
+            case SimulatedFile.ALWAYS:
+                return true;
+            case SimulatedFile.CHV1:
+                return verified[0];
+            case SimulatedFile.CHV2:
+                return verified[1];
+            default:
+                return false;
+        }
+    }
+
+    private static byte[] padCode(String code) {
+        byte[] padded = new byte[8];
+        Arrays.fill(padded, (byte) 0xFF);
+        for (int i = 0; i < code.length() && i < 8; i++) {
+            padded[i] = (byte) code.charAt(i);
+        }
+        return padded;
+    }
+
+    private static int accessCode(String access) {
+        switch (access) {
+            case DatabaseOfEF.always:
+                return SimulatedFile.ALWAYS;
+            case DatabaseOfEF.CHV1:
+                return SimulatedFile.CHV1;
+            case DatabaseOfEF.ADM:
+                return SimulatedFile.ADM;
+            default:
+                return SimulatedFile.NEVER;
+        }
+    }
+
+    private int getRecordLength(EF EF) {
+        return EF == DatabaseOfEF.EF_SMS ? SMS_RECORD_LENGTH : ADN_RECORD_LENGTH;
+    }
+
+    private byte[] createContent(EF EF) {
+        String number = String.format("%09d", cardNumber);
+        if (EF == DatabaseOfEF.EF_ICCID) {
+            return swappedBCD("8942001" + number + "000", 10);
+        }
+        if (EF == DatabaseOfEF.EF_IMSI) {
+            byte[] IMSI = new byte[9];
+            IMSI[0] = 0x08;
+            byte[] digits = swappedBCD("9230010" + number, 8); //'9' = odd number of digits
+            System.arraycopy(digits, 0, IMSI, 1, 8);
+            return IMSI;
+        }
+        if (EF == DatabaseOfEF.EF_KC || EF == DatabaseOfEF.EF_KCGPRS) {
+            byte[] KC = new byte[9];
+            for (int i = 0; i < 8; i++) {
+                KC[i] = (byte) (cardNumber * 31 + i * 17 + (EF == DatabaseOfEF.EF_KC ? 0 : 101));
+            }
+            KC[8] = 0x07; //no key available
+            return KC;
+        }
+        if (EF == DatabaseOfEF.EF_SPN) {
+            return padded(gsmBytes("Simulated SIM"), 1, 17, (byte) 0x01);
+        }
+        if (EF == DatabaseOfEF.EF_PHASE) {
+            return new byte[]{0x02};
+        }
+        if (EF == DatabaseOfEF.EF_LOCI) {
+            return new byte[]{(byte) 0x12, (byte) 0x34, (byte) 0x56, (byte) cardNumber,
+                (byte) 0x32, (byte) 0xF0, (byte) 0x10, (byte) 0x04, (byte) 0xD2, (byte) 0xFF, 0x00};
+        }
+        if (EF == DatabaseOfEF.EF_HPLMN) {
+            return new byte[]{0x0A};
+        }
+        if (EF == DatabaseOfEF.EF_LP) {
+            return new byte[]{0x01, (byte) 0xFF}; //English
+        }
+        if (EF == DatabaseOfEF.EF_SST) {
+            byte[] SST = new byte[10];
+            Arrays.fill(SST, (byte) 0xFF); //all services allocated and activated
+            return SST;
+        }
+        if (EF == DatabaseOfEF.EF_ADN) {
+            return createDialingNumbers(config.getNumberOfADNRecords(), config.getNumberOfContacts(), "Contact ", "+42060");
+        }
+        if (EF == DatabaseOfEF.EF_MSISDN) {
+            return createDialingNumbers(config.getNumberOfMSISDNRecords(), 1, "Own number ", "+42077");
+        }
+        if (EF == DatabaseOfEF.EF_LND) {
+            return createDialingNumbers(config.getNumberOfLNDRecords(), Math.min(3, config.getNumberOfLNDRecords()), "", "+42073");
+        }
+        if (EF == DatabaseOfEF.EF_SMS) {
+            return createMessages();
+        }
+        return new byte[1];
+    }
+
+    private byte[] createDialingNumbers(int numberOfRecords, int numberOfFilled, String name, String prefix) {
+        byte[] content = new byte[numberOfRecords * ADN_RECORD_LENGTH];
+        Arrays.fill(content, (byte) 0xFF);
+        for (int i = 0; i < Math.min(numberOfRecords, numberOfFilled); i++) {
+            int offset = i * ADN_RECORD_LENGTH;
+            byte[] alpha = gsmBytes(name + (i + 1));
+            System.arraycopy(alpha, 0, content, offset, Math.min(alpha.length, 14));
+            String digits = prefix.substring(1) + String.format("%04d%03d", cardNumber % 10000, i);
+            byte[] number = swappedBCD(digits, 10);
+            content[offset + 14] = (byte) (1 + (digits.length() + 1) / 2);
+            content[offset + 15] = (byte) 0x91; //international number
+            System.arraycopy(number, 0, content, offset + 16, 10);
+        }
+        return content;
+    }
+
+    private byte[] createMessages() {
+        int numberOfRecords = config.getNumberOfSMSRecords();
+        byte[] content = new byte[numberOfRecords * SMS_RECORD_LENGTH];
+        Arrays.fill(content, (byte) 0xFF);
+        for (int i = 0; i < numberOfRecords; i++) {
+            int offset = i * SMS_RECORD_LENGTH;
+            if (i >= config.getNumberOfMessages()) {
+                content[offset] = 0x00; //free record
+                continue;
+            }
+            String text = "Message " + (i + 1) + " for card " + cardNumber;
+            byte[] record = new byte[SMS_RECORD_LENGTH];
+            Arrays.fill(record, (byte) 0xFF);
+            record[0] = 0x01; //received and read
+            record[1] = 0x07; //length of SMSC address
+            record[2] = (byte) 0x91;
+            System.arraycopy(swappedBCD("420603052000", 6), 0, record, 3, 6);
+            record[9] = 0x04; //SMS-DELIVER
+            record[10] = 12; //number of digits of sender
+            record[11] = (byte) 0x91;
+            System.arraycopy(swappedBCD("420602" + String.format("%06d", i), 6), 0, record, 12, 6);
+            record[18] = 0x00; //protocol identifier
+            record[19] = 0x00; //default alphabet
+            System.arraycopy(swappedBCD("14010112000000", 7), 0, record, 20, 7);
+            record[27] = (byte) text.length();
+            byte[] septets = SmsPduUtil.getSeptets(text);
+            System.arraycopy(septets, 0, record, 28, septets.length);
+            System.arraycopy(record, 0, content, offset, SMS_RECORD_LENGTH);
+        }
+        return content;
+    }
+
+    private static byte[] gsmBytes(String text) {
+        try {
+            return text.getBytes("US-ASCII"); //letters, digits and space are the same in GSM default alphabet
+        } catch (UnsupportedEncodingException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    private static byte[] padded(byte[] data, int offset, int length, byte first) {
+        byte[] result = new byte[length];
+        Arrays.fill(result, (byte) 0xFF);
+        result[0] = first;
+        System.arraycopy(data, 0, result, offset, Math.min(data.length, length - offset));
+        return result;
+    }
+
+    /**
+     * Encodes digits as BCD with swapped nibbles, padded with 'F'.
+     */
+    private static byte[] swappedBCD(String digits, int length) {
+        byte[] result = new byte[length];
+        Arrays.fill(result, (byte) 0xFF);
+        for (int i = 0; i < digits.length() && i / 2 < length; i++) {
+            int digit = Character.digit(digits.charAt(i), 16);
+            if (i % 2 == 0) {
+                result[i / 2] = (byte) (0xF0 | digit);
+            } else {
+                result[i / 2] = (byte) ((result[i / 2] & 0x0F) | (digit << 4));
+            }
+        }
+        return result;
+    }
+}
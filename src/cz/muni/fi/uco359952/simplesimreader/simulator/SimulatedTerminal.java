@@ -0,0 +1,131 @@
+package cz.muni.fi.uco359952.simplesimreader.simulator;
+
+import javax.smartcardio.Card;
+import javax.smartcardio.CardException;
+import javax.smartcardio.CardNotPresentException;
+import javax.smartcardio.CardTerminal;
+
+/**
+ * Simulated reader with one SimulatedSim. Card can be removed and inserted
+ * again, connections made before removal stop working, as with real reader.
+ *
+ * @author Andrej Simko
+ */
+public class SimulatedTerminal extends CardTerminal {
+
+    private final String name;
+    private final SimulatedSim sim;
+    private final SimulatedTerminals terminals;
+    private boolean cardPresent = true;
+    private long insertion = 0;
+
+    SimulatedTerminal(String name, SimulatedSim sim, SimulatedTerminals terminals) {
+        this.name = name;
+        this.sim = sim;
+        this.terminals = terminals;
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Getter for SIM card of this reader.
+     *
+     * @return simulated SIM card
+     */
+    public SimulatedSim getSim() {
+        return sim;
+    }
+
+    @Override
+    public Card connect(String protocol) throws CardException {
+        if (!protocol.equals("*") && !protocol.equals("T=0")) {
+            throw new CardException("Protocol " + protocol + " is not supported");
+        }
+        synchronized (terminals) {
+            if (!cardPresent) {
+                throw new CardNotPresentException("No card present in " + name);
+            }
+            return new SimulatedCard(this, sim, insertion);
+        }
+    }
+
+    @Override
+    public boolean isCardPresent() throws CardException {
+        synchronized (terminals) {
+            return cardPresent;
+        }
+    }
+
+    /**
+     * Inserts card into reader, if it isn't inserted already.
+     */
+    public void insertCard() {
+        synchronized (terminals) {
+            if (!cardPresent) {
+                cardPresent = true;
+                insertion++;
+                sim.reset();
+                terminals.notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Removes card from reader, if it is inserted. Existing connections fail
+     * on their next command.
+     */
+    public void removeCard() {
+        synchronized (terminals) {
+            if (cardPresent) {
+                cardPresent = false;
+                terminals.notifyAll();
+            }
+        }
+    }
+
+    boolean isInserted(long connectedInsertion) {
+        synchronized (terminals) {
+            return cardPresent && insertion == connectedInsertion;
+        }
+    }
+
+    @Override
+    public boolean waitForCardPresent(long timeout) throws CardException {
+        return waitForCard(true, timeout);
+    }
+
+    @Override
+    public boolean waitForCardAbsent(long timeout) throws CardException {
+        return waitForCard(false, timeout);
+    }
+
+    private boolean waitForCard(boolean present, long timeout) throws CardException {
+        if (timeout < 0) {
+            throw new IllegalArgumentException("timeout must not be negative");
+        }
+        long deadline = System.currentTimeMillis() + timeout;
+        synchronized (terminals) {
+            while (cardPresent != present) {
+                long remaining = timeout == 0 ? 0 : deadline - System.currentTimeMillis();
+                if (timeout != 0 && remaining <= 0) {
+                    return false;
+                }
+                try {
+                    terminals.wait(remaining);
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                    throw new CardException("Waiting for card was interrupted", ex);
+                }
+            }
+            return true;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "Simulated terminal: " + name;
+    }
+}
@@ -0,0 +1,31 @@
+package cz.muni.fi.uco359952.simplesimreader.simulator;
+
+import javax.smartcardio.CardTerminals;
+import javax.smartcardio.TerminalFactorySpi;
+
+/**
+ * TerminalFactorySpi of type "Simulator", registered by SimulatorProvider.
+ * Every factory has its own simulated readers.
+ *
+ * @author Andrej Simko
+ */
+public class SimulatedTerminalFactorySpi extends TerminalFactorySpi {
+
+    private final SimulatedTerminals terminals;
+
+    /**
+     * Creates factory with simulated readers.
+     *
+     * @param params SimulatorConfig, or null for configuration from system
+     * properties
+     */
+    public SimulatedTerminalFactorySpi(Object params) {
+        SimulatorConfig config = params instanceof SimulatorConfig ? (SimulatorConfig) params : SimulatorConfig.fromSystemProperties();
+        terminals = new SimulatedTerminals(config);
+    }
+
+    @Override
+    protected CardTerminals engineTerminals() {
+        return terminals;
+    }
+}
@@ -0,0 +1,109 @@
+package cz.muni.fi.uco359952.simplesimreader.simulator;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import javax.smartcardio.CardException;
+import javax.smartcardio.CardTerminal;
+import javax.smartcardio.CardTerminals;
+
+/**
+ * Set of simulated readers, one SimulatedSim in each. Readers are named
+ * "Simulated Reader 0", "Simulated Reader 1" and so on.
+ *
+ * @author Andrej Simko
+ */
+public class SimulatedTerminals extends CardTerminals {
+
+    private final List<SimulatedTerminal> terminals = new ArrayList<>();
+    private Map<SimulatedTerminal, Boolean> lastStates = null;
+    private final List<CardTerminal> insertions = new ArrayList<>();
+    private final List<CardTerminal> removals = new ArrayList<>();
+
+    /**
+     * Creates readers with cards according to given configuration.
+     *
+     * @param config configuration of readers and cards
+     */
+    public SimulatedTerminals(SimulatorConfig config) {
+        for (int i = 0; i < config.getNumberOfReaders(); i++) {
+            terminals.add(new SimulatedTerminal("Simulated Reader " + i, new SimulatedSim(config, i), this));
+        }
+    }
+
+    /**
+     * Returns simulated reader with given number.
+     *
+     * @param number number of reader
+     * @return simulated reader
+     */
+    public SimulatedTerminal getTerminal(int number) {
+        return terminals.get(number);
+    }
+
+    @Override
+    public synchronized List<CardTerminal> list(State state) throws CardException {
+        List<CardTerminal> result = new ArrayList<>();
+        switch (state) {
+            case CARD_INSERTION:
+                return Collections.unmodifiableList(new ArrayList<>(insertions));
+            case CARD_REMOVAL:
+                return Collections.unmodifiableList(new ArrayList<>(removals));
+            default:
+                for (SimulatedTerminal terminal : terminals) {
+                    boolean present = terminal.isCardPresent();
+                    if (state == State.ALL || (state == State.CARD_PRESENT) == present) {
+                        result.add(terminal);
+                    }
+                }
+                return Collections.unmodifiableList(result);
+        }
+    }
+
+    @Override
+    public synchronized boolean waitForChange(long timeout) throws CardException {
+        if (timeout < 0) {
+            throw new IllegalArgumentException("timeout must not be negative");
+        }
+        if (lastStates == null) { //first call only records state and waits
+            lastStates = currentStates();
+        }
+        long deadline = System.currentTimeMillis() + timeout;
+        while (true) {
+            Map<SimulatedTerminal, Boolean> states = currentStates();
+            if (!states.equals(lastStates)) {
+                insertions.clear();
+                removals.clear();
+                for (SimulatedTerminal terminal : terminals) {
+                    if (states.get(terminal) && !lastStates.get(terminal)) {
+                        insertions.add(terminal);
+                    } else if (!states.get(terminal) && lastStates.get(terminal)) {
+                        removals.add(terminal);
+                    }
+                }
+                lastStates = states;
+                return true;
+            }
+            long remaining = timeout == 0 ? 0 : deadline - System.currentTimeMillis();
+            if (timeout != 0 && remaining <= 0) {
+                return false;
+            }
+            try {
+                wait(remaining);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                throw new CardException("Waiting for change was interrupted", ex);
+            }
+        }
+    }
+
+    private Map<SimulatedTerminal, Boolean> currentStates() throws CardException {
+        Map<SimulatedTerminal, Boolean> states = new HashMap<>();
+        for (SimulatedTerminal terminal : terminals) {
+            states.put(terminal, terminal.isCardPresent());
+        }
+        return states;
+    }
+}
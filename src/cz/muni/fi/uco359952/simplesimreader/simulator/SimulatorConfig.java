@@ -0,0 +1,273 @@
+package cz.muni.fi.uco359952.simplesimreader.simulator;
+
+/**
+ * Configuration of simulated readers and SIM cards - number of readers,
+ * number of records in record EFs, PINs and timing. Every value can be set by
+ * system property "simplesimreader.simulator.NAME", for example
+ * "simplesimreader.simulator.readers=8".
+ *
+ * @author Andrej Simko
+ */
+public class SimulatorConfig {
+
+    /**
+     * Prefix of system properties read by fromSystemProperties().
+     */
+    public static final String PROPERTY_PREFIX = "simplesimreader.simulator.";
+    private int numberOfReaders = 1;
+    private int numberOfADNRecords = 250;
+    private int numberOfContacts = 50;
+    private int numberOfSMSRecords = 10;
+    private int numberOfMessages = 5;
+    private int numberOfLNDRecords = 10;
+    private int numberOfMSISDNRecords = 2;
+    private String PIN = "1234";
+    private String PIN2 = "4321";
+    private long apduLatency = 0;
+    private long byteTime = 0;
+
+    /**
+     * Returns configuration with values from system properties, values that
+     * are not set are default.
+     *
+     * @return configuration from system properties
+     */
+    public static SimulatorConfig fromSystemProperties() {
+        SimulatorConfig config = new SimulatorConfig();
+        config.numberOfReaders = Integer.getInteger(PROPERTY_PREFIX + "readers", config.numberOfReaders);
+        config.numberOfADNRecords = Integer.getInteger(PROPERTY_PREFIX + "adnRecords", config.numberOfADNRecords);
+        config.numberOfContacts = Integer.getInteger(PROPERTY_PREFIX + "contacts", config.numberOfContacts);
+        config.numberOfSMSRecords = Integer.getInteger(PROPERTY_PREFIX + "smsRecords", config.numberOfSMSRecords);
+        config.numberOfMessages = Integer.getInteger(PROPERTY_PREFIX + "messages", config.numberOfMessages);
+        config.numberOfLNDRecords = Integer.getInteger(PROPERTY_PREFIX + "lndRecords", config.numberOfLNDRecords);
+        config.numberOfMSISDNRecords = Integer.getInteger(PROPERTY_PREFIX + "msisdnRecords", config.numberOfMSISDNRecords);
+        config.PIN = System.getProperty(PROPERTY_PREFIX + "pin", config.PIN);
+        config.PIN2 = System.getProperty(PROPERTY_PREFIX + "pin2", config.PIN2);
+        config.apduLatency = Long.getLong(PROPERTY_PREFIX + "apduLatency", config.apduLatency);
+        config.byteTime = Long.getLong(PROPERTY_PREFIX + "byteTime", config.byteTime);
+        return config;
+    }
+
+    /**
+     * Getter for number of simulated readers, each with one SIM card.
+     *
+     * @return number of readers
+     */
+    public int getNumberOfReaders() {
+        return numberOfReaders;
+    }
+
+    /**
+     * Setter for number of simulated readers.
+     *
+     * @param numberOfReaders number of readers
+     * @return this configuration
+     */
+    public SimulatorConfig setNumberOfReaders(int numberOfReaders) {
+        this.numberOfReaders = numberOfReaders;
+        return this;
+    }
+
+    /**
+     * Getter for number of records of EF_ADN.
+     *
+     * @return number of records
+     */
+    public int getNumberOfADNRecords() {
+        return numberOfADNRecords;
+    }
+
+    /**
+     * Setter for number of records of EF_ADN.
+     *
+     * @param numberOfADNRecords number of records, 1-255
+     * @return this configuration
+     */
+    public SimulatorConfig setNumberOfADNRecords(int numberOfADNRecords) {
+        this.numberOfADNRecords = numberOfADNRecords;
+        return this;
+    }
+
+    /**
+     * Getter for number of filled records of EF_ADN.
+     *
+     * @return number of contacts
+     */
+    public int getNumberOfContacts() {
+        return numberOfContacts;
+    }
+
+    /**
+     * Setter for number of filled records of EF_ADN, the rest is empty.
+     *
+     * @param numberOfContacts number of contacts
+     * @return this configuration
+     */
+    public SimulatorConfig setNumberOfContacts(int numberOfContacts) {
+        this.numberOfContacts = numberOfContacts;
+        return this;
+    }
+
+    /**
+     * Getter for number of records of EF_SMS.
+     *
+     * @return number of records
+     */
+    public int getNumberOfSMSRecords() {
+        return numberOfSMSRecords;
+    }
+
+    /**
+     * Setter for number of records of EF_SMS.
+     *
+     * @param numberOfSMSRecords number of records, 1-255
+     * @return this configuration
+     */
+    public SimulatorConfig setNumberOfSMSRecords(int numberOfSMSRecords) {
+        this.numberOfSMSRecords = numberOfSMSRecords;
+        return this;
+    }
+
+    /**
+     * Getter for number of filled records of EF_SMS.
+     *
+     * @return number of messages
+     */
+    public int getNumberOfMessages() {
+        return numberOfMessages;
+    }
+
+    /**
+     * Setter for number of filled records of EF_SMS, the rest is free.
+     *
+     * @param numberOfMessages number of messages
+     * @return this configuration
+     */
+    public SimulatorConfig setNumberOfMessages(int numberOfMessages) {
+        this.numberOfMessages = numberOfMessages;
+        return this;
+    }
+
+    /**
+     * Getter for number of records of EF_LND.
+     *
+     * @return number of records
+     */
+    public int getNumberOfLNDRecords() {
+        return numberOfLNDRecords;
+    }
+
+    /**
+     * Setter for number of records of EF_LND.
+     *
+     * @param numberOfLNDRecords number of records, 1-255
+     * @return this configuration
+     */
+    public SimulatorConfig setNumberOfLNDRecords(int numberOfLNDRecords) {
+        this.numberOfLNDRecords = numberOfLNDRecords;
+        return this;
+    }
+
+    /**
+     * Getter for number of records of EF_MSISDN.
+     *
+     * @return number of records
+     */
+    public int getNumberOfMSISDNRecords() {
+        return numberOfMSISDNRecords;
+    }
+
+    /**
+     * Setter for number of records of EF_MSISDN.
+     *
+     * @param numberOfMSISDNRecords number of records, 1-255
+     * @return this configuration
+     */
+    public SimulatorConfig setNumberOfMSISDNRecords(int numberOfMSISDNRecords) {
+        this.numberOfMSISDNRecords = numberOfMSISDNRecords;
+        return this;
+    }
+
+    /**
+     * Getter for PIN (CHV1) of simulated cards.
+     *
+     * @return PIN
+     */
+    public String getPIN() {
+        return PIN;
+    }
+
+    /**
+     * Setter for PIN (CHV1) of simulated cards.
+     *
+     * @param PIN PIN of 4-8 digits
+     * @return this configuration
+     */
+    public SimulatorConfig setPIN(String PIN) {
+        this.PIN = PIN;
+        return this;
+    }
+
+    /**
+     * Getter for PIN2 (CHV2) of simulated cards.
+     *
+     * @return PIN2
+     */
+    public String getPIN2() {
+        return PIN2;
+    }
+
+    /**
+     * Setter for PIN2 (CHV2) of simulated cards.
+     *
+     * @param PIN2 PIN2 of 4-8 digits
+     * @return this configuration
+     */
+    public SimulatorConfig setPIN2(String PIN2) {
+        this.PIN2 = PIN2;
+        return this;
+    }
+
+    /**
+     * Getter for fixed time every APDU takes, regardless of its length.
+     *
+     * @return latency in microseconds
+     */
+    public long getApduLatency() {
+        return apduLatency;
+    }
+
+    /**
+     * Setter for fixed time every APDU takes - processing in card and
+     * turnaround of reader.
+     *
+     * @param apduLatency latency in microseconds
+     * @return this configuration
+     */
+    public SimulatorConfig setApduLatency(long apduLatency) {
+        this.apduLatency = apduLatency;
+        return this;
+    }
+
+    /**
+     * Getter for time transfer of one byte takes.
+     *
+     * @return time of one byte in microseconds
+     */
+    public long getByteTime() {
+        return byteTime;
+    }
+
+    /**
+     * Setter for time transfer of one byte takes, both in command and in
+     * response. With T=0 one byte is 12 etu, at default 372 clocks per etu
+     * and 3.57 MHz (9600 bit/s) it is about 1250 microseconds.
+     *
+     * @param byteTime time of one byte in microseconds
+     * @return this configuration
+     */
+    public SimulatorConfig setByteTime(long byteTime) {
+        this.byteTime = byteTime;
+        return this;
+    }
+}
@@ -0,0 +1,42 @@
+package cz.muni.fi.uco359952.simplesimreader.simulator;
+
+import java.security.NoSuchAlgorithmException;
+import java.security.Provider;
+import javax.smartcardio.TerminalFactory;
+
+/**
+ * Security provider that offers TerminalFactory of type "Simulator" with
+ * simulated readers and SIM cards.
+ *
+ * @author Andrej Simko
+ */
+public class SimulatorProvider extends Provider {
+
+    /**
+     * Type of TerminalFactory with simulated readers.
+     */
+    public static final String TYPE = "Simulator";
+
+    /**
+     * Creates provider.
+     */
+    public SimulatorProvider() {
+        super("SimpleSimReaderSimulator", 1.0, "Simulated SIM cards and readers");
+        put("TerminalFactory." + TYPE, SimulatedTerminalFactorySpi.class.getName());
+    }
+
+    /**
+     * Creates TerminalFactory with simulated readers.
+     *
+     * @param config configuration of readers and cards, null for
+     * configuration from system properties
+     * @return TerminalFactory of type "Simulator"
+     */
+    public static TerminalFactory getTerminalFactory(SimulatorConfig config) {
+        try {
+            return TerminalFactory.getInstance(TYPE, config, new SimulatorProvider());
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+}
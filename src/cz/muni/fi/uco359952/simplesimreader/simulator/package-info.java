@@ -0,0 +1,7 @@
+/**
+ * Contains simulated SIM cards and readers, which are offered as TerminalFactory of type "Simulator", so reading can be tried and measured without hardware.
+ *
+ * @author Andrej Simko
+ * 
+ */
+package cz.muni.fi.uco359952.simplesimreader.simulator;
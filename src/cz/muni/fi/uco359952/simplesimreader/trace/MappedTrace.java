@@ -0,0 +1,189 @@
+package cz.muni.fi.uco359952.simplesimreader.trace;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reader of trace file and its TraceIndex, both memory-mapped. Sessions are
+ * found in index without reading trace file; commands of one session or of
+ * whole file are scanned directly in mapped trace file, so even archives of
+ * many gigabytes don't go through heap. Index is created first if it doesn't
+ * exist. Files are read as they were when MappedTrace was opened.
+ *
+ * @author Andrej Simko
+ */
+public class MappedTrace implements Closeable {
+
+    /**
+     * Instruction that matches all commands in scan().
+     */
+    public static final int ALL_INSTRUCTIONS = -1;
+    private final TraceMapping trace;
+    private final FileChannel indexChannel;
+    private final MappedByteBuffer index;
+    private final int numberOfSessions;
+
+    /**
+     * Maps trace file and its index.
+     *
+     * @param trace trace file written by TraceRecorder
+     * @throws IOException if files can't be mapped or are not trace and
+     * index files
+     */
+    public MappedTrace(File trace) throws IOException {
+        File indexFile = TraceIndex.indexFileOf(trace);
+        if (!indexFile.exists()) {
+            TraceIndex.rebuild(trace);
+        }
+        this.trace = new TraceMapping(trace);
+        this.indexChannel = FileChannel.open(indexFile.toPath(), StandardOpenOption.READ);
+        try {
+            long size = indexChannel.size();
+            if (size > Integer.MAX_VALUE) {
+                throw new IOException("Index " + indexFile + " is too large");
+            }
+            this.index = indexChannel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            if (size < TraceIndex.HEADER_LENGTH || index.getInt(0) != TraceIndex.MAGIC || index.getInt(8) != TraceIndex.ENTRY_SIZE) {
+                throw new IOException(indexFile + " is not index of APDU trace");
+            }
+            this.numberOfSessions = (int) ((size - TraceIndex.HEADER_LENGTH) / TraceIndex.ENTRY_SIZE);
+        } catch (IOException ex) {
+            close();
+            throw ex;
+        }
+    }
+
+    /**
+     * Getter for number of sessions in index.
+     *
+     * @return number of sessions
+     */
+    public int getNumberOfSessions() {
+        return numberOfSessions;
+    }
+
+    /**
+     * Returns session with given number.
+     *
+     * @param number number of entry in index, from 0
+     * @return session
+     * @throws IndexOutOfBoundsException if there is no such entry
+     */
+    public TraceSession getSession(int number) {
+        if (number < 0 || number >= numberOfSessions) {
+            throw new IndexOutOfBoundsException("No session " + number + " in index");
+        }
+        return new TraceSession(index, TraceIndex.HEADER_LENGTH + number * TraceIndex.ENTRY_SIZE);
+    }
+
+    /**
+     * Returns all sessions.
+     *
+     * @return List of sessions in order in which they ended
+     */
+    public List<TraceSession> getSessions() {
+        List<TraceSession> sessions = new ArrayList<>(numberOfSessions);
+        for (int i = 0; i < numberOfSessions; i++) {
+            sessions.add(getSession(i));
+        }
+        return sessions;
+    }
+
+    /**
+     * Returns sessions with card of given ICCID.
+     *
+     * @param ICCID ICCID as returned by Getters.getICCID()
+     * @return List of sessions, empty if there are none
+     */
+    public List<TraceSession> findByICCID(String ICCID) {
+        List<TraceSession> sessions = new ArrayList<>();
+        for (int i = 0; i < numberOfSessions; i++) {
+            TraceSession session = getSession(i);
+            if (ICCID.equalsIgnoreCase(session.getICCID())) {
+                sessions.add(session);
+            }
+        }
+        return sessions;
+    }
+
+    /**
+     * Reads frame at given offset into heap.
+     *
+     * @param offset offset of frame, for example from TraceVisitor
+     * @return frame, null if there is no complete frame at offset
+     * @throws IOException if trace file can't be mapped
+     */
+    public TraceFrame readFrame(long offset) throws IOException {
+        ByteBuffer frame = trace.frameAt(offset);
+        return frame == null ? null : TraceFrame.decode(frame);
+    }
+
+    /**
+     * Scans all commands of trace file.
+     *
+     * @param instruction INS of commands that are passed to visitor, or
+     * ALL_INSTRUCTIONS
+     * @param visitor receiver of commands
+     * @throws IOException if trace file can't be mapped
+     */
+    public void scan(int instruction, TraceVisitor visitor) throws IOException {
+        scan(TraceFrame.HEADER_LENGTH, trace.size(), 0, instruction, visitor);
+    }
+
+    /**
+     * Scans commands of one session.
+     *
+     * @param session session from index
+     * @param instruction INS of commands that are passed to visitor, or
+     * ALL_INSTRUCTIONS
+     * @param visitor receiver of commands
+     * @throws IOException if trace file can't be mapped
+     */
+    public void scan(TraceSession session, int instruction, TraceVisitor visitor) throws IOException {
+        scan(session.getStartOffset(), session.getEndOffset(), session.getSessionId(), instruction, visitor);
+    }
+
+    private void scan(long start, long end, int sessionId, int instruction, TraceVisitor visitor) throws IOException {
+        long offset = start;
+        ByteBuffer frame;
+        while (offset < end && (frame = trace.frameAt(offset)) != null) {
+            int p = frame.position();
+            int id = frame.getInt(p + TraceFrame.SESSION_ID_OFFSET);
+            if (frame.get(p + TraceFrame.TYPE_OFFSET) == TraceFrame.EXCHANGE && (sessionId == 0 || id == sessionId)) {
+                int commandLength = frame.getShort(p + TraceFrame.COMMAND_OFFSET) & 0xffff;
+                int command = p + TraceFrame.COMMAND_OFFSET + 2;
+                if (instruction == ALL_INSTRUCTIONS || (commandLength >= 2 && (frame.get(command + 1) & 0xff) == instruction)) {
+                    int responseLength = frame.getShort(command + commandLength) & 0xffff;
+                    if (!visitor.exchange(offset, id, frame.getLong(p + TraceFrame.TIMESTAMP_OFFSET), frame.getLong(p + TraceFrame.ELAPSED_OFFSET),
+                            slice(frame, command, commandLength), slice(frame, command + commandLength + 2, responseLength))) {
+                        return;
+                    }
+                }
+            }
+            offset += frame.remaining();
+        }
+    }
+
+    private static ByteBuffer slice(ByteBuffer frame, int position, int length) {
+        ByteBuffer slice = frame.duplicate();
+        slice.position(position);
+        slice.limit(position + length);
+        return slice.slice();
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            trace.close();
+        } finally {
+            indexChannel.close();
+        }
+    }
+}
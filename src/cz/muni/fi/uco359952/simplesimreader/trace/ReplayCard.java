@@ -0,0 +1,114 @@
+package cz.muni.fi.uco359952.simplesimreader.trace;
+
+import cz.muni.fi.uco359952.simplesimreader.Converter;
+import cz.muni.fi.uco359952.simplesimreader.simulator.InMemoryCard;
+import cz.muni.fi.uco359952.simplesimreader.simulator.InMemoryChannel;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.locks.LockSupport;
+import javax.smartcardio.ATR;
+import javax.smartcardio.CardException;
+
+/**
+ * Connection to card of ReplayTerminal. Commands of all channels are matched
+ * against recorded session in order: command that is at current position is
+ * answered by its recorded response; otherwise it is looked for among next
+ * LOOKAHEAD recorded commands, and then anywhere in session. All channels
+ * share position in recorded session, because channel bits of CLA are not
+ * recorded, so they are plain InMemoryChannels.
+ *
+ * @author Andrej Simko
+ */
+class ReplayCard extends InMemoryCard {
+
+    /**
+     * Number of recorded commands that are searched when command doesn't
+     * match current position.
+     */
+    static final int LOOKAHEAD = 64;
+    private static final byte[] NOT_RECORDED = {(byte) 0x6F, (byte) 0x00};
+    private final ReplayTerminal terminal;
+    private final byte[] ATR;
+    private int position = 0;
+
+    ReplayCard(ReplayTerminal terminal, byte[] ATR) {
+        this.terminal = terminal;
+        this.ATR = ATR;
+    }
+
+    @Override
+    public ATR getATR() {
+        return new ATR(ATR);
+    }
+
+    @Override
+    protected InMemoryChannel createChannel(int channelNumber) {
+        return new InMemoryChannel(this, channelNumber);
+    }
+
+    @Override
+    protected byte[] process(InMemoryChannel channel, byte[] command) throws CardException {
+        checkConnected();
+        long start = System.nanoTime();
+        TraceFrame frame;
+        synchronized (this) {
+            checkExclusive();
+            frame = match(TraceFrame.mask(command));
+        }
+        if (frame == null) {
+            if (terminal.isStrict()) {
+                throw new CardException("Command was not recorded: " + Converter.bytesToHex(TraceFrame.mask(command)).trim());
+            }
+            return NOT_RECORDED.clone();
+        }
+        if (terminal.isRealTime()) {
+            long remaining = frame.getElapsedNanos() - (System.nanoTime() - start);
+            if (remaining > 0) {
+                LockSupport.parkNanos(remaining);
+            }
+        }
+        if (frame.isFailed()) {
+            throw new CardException("Command failed when it was recorded");
+        }
+        return frame.getResponse().clone();
+    }
+
+    private TraceFrame match(byte[] command) {
+        List<TraceFrame> exchanges = terminal.getExchanges();
+        byte[] expected = position < exchanges.size() ? exchanges.get(position).getCommand() : null;
+        if (expected != null && Arrays.equals(expected, command)) {
+            return answer(exchanges, position);
+        }
+        int limit = Math.min(exchanges.size(), position + LOOKAHEAD);
+        for (int i = position + 1; i < limit; i++) {
+            if (Arrays.equals(exchanges.get(i).getCommand(), command)) {
+                terminal.addDivergence(new ReplayDivergence(ReplayDivergence.Kind.SKIPPED, position, expected, command));
+                return answer(exchanges, i);
+            }
+        }
+        List<Integer> positions = terminal.getPositions(command);
+        if (positions == null) {
+            terminal.addDivergence(new ReplayDivergence(ReplayDivergence.Kind.UNKNOWN, position, expected, command));
+            return null;
+        }
+        terminal.addDivergence(new ReplayDivergence(ReplayDivergence.Kind.OUT_OF_ORDER, position, expected, command));
+        int nearest = positions.get(0);
+        for (int i : positions) {
+            if (i < position) {
+                nearest = i; //latest response before current position is most likely still valid
+            }
+        }
+        return exchanges.get(nearest);
+    }
+
+    private TraceFrame answer(List<TraceFrame> exchanges, int index) {
+        position = index + 1;
+        terminal.setNumberOfReplayed(position);
+        return exchanges.get(index);
+    }
+
+    @Override
+    public String toString() {
+        return "Replayed card in " + terminal.getName();
+    }
+}
@@ -0,0 +1,85 @@
+package cz.muni.fi.uco359952.simplesimreader.trace;
+
+import cz.muni.fi.uco359952.simplesimreader.Converter;
+
+/**
+ * Place where replayed commands differ from recorded session.
+ *
+ * @author Andrej Simko
+ */
+public class ReplayDivergence {
+
+    /**
+     * Kinds of divergences.
+     */
+    public enum Kind {
+
+        /**
+         * Some recorded commands were not sent, command was found further in
+         * recorded session.
+         */
+        SKIPPED,
+        /**
+         * Command was not found at its place, it was answered by response of
+         * the same command from other place of recorded session.
+         */
+        OUT_OF_ORDER,
+        /**
+         * Command was never recorded in session.
+         */
+        UNKNOWN
+    }
+    private final Kind kind;
+    private final int position;
+    private final byte[] expected;
+    private final byte[] actual;
+
+    ReplayDivergence(Kind kind, int position, byte[] expected, byte[] actual) {
+        this.kind = kind;
+        this.position = position;
+        this.expected = expected;
+        this.actual = actual;
+    }
+
+    /**
+     * Getter for kind of divergence.
+     *
+     * @return kind of divergence
+     */
+    public Kind getKind() {
+        return kind;
+    }
+
+    /**
+     * Getter for position in recorded session where command was expected.
+     *
+     * @return index of recorded command, starting from 0
+     */
+    public int getPosition() {
+        return position;
+    }
+
+    /**
+     * Getter for command that was recorded at position.
+     *
+     * @return recorded command, null if session had already ended
+     */
+    public byte[] getExpected() {
+        return expected;
+    }
+
+    /**
+     * Getter for command that was sent.
+     *
+     * @return sent command
+     */
+    public byte[] getActual() {
+        return actual;
+    }
+
+    @Override
+    public String toString() {
+        return kind + " at " + position + ": expected " + (expected == null ? "end of session" : Converter.bytesToHex(expected))
+                + ", sent " + Converter.bytesToHex(actual);
+    }
+}
@@ -0,0 +1,42 @@
+package cz.muni.fi.uco359952.simplesimreader.trace;
+
+import java.security.NoSuchAlgorithmException;
+import java.security.Provider;
+import javax.smartcardio.TerminalFactory;
+
+/**
+ * Security provider that offers TerminalFactory of type "Replay" with
+ * terminals that replay sessions of trace file.
+ *
+ * @author Andrej Simko
+ */
+public class ReplayProvider extends Provider {
+
+    /**
+     * Type of TerminalFactory with replay terminals.
+     */
+    public static final String TYPE = "Replay";
+
+    /**
+     * Creates provider.
+     */
+    public ReplayProvider() {
+        super("SimpleSimReaderReplay", 1.0, "Replay of recorded APDU traces");
+        put("TerminalFactory." + TYPE, ReplayTerminalFactorySpi.class.getName());
+    }
+
+    /**
+     * Creates TerminalFactory with replay terminals.
+     *
+     * @param terminals terminals that are to be replayed, null for terminals
+     * given by system properties
+     * @return TerminalFactory of type "Replay"
+     */
+    public static TerminalFactory getTerminalFactory(ReplayTerminals terminals) {
+        try {
+            return TerminalFactory.getInstance(TYPE, terminals, new ReplayProvider());
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+}
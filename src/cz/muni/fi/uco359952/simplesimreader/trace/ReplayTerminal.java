@@ -0,0 +1,213 @@
+package cz.muni.fi.uco359952.simplesimreader.trace;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.smartcardio.Card;
+import javax.smartcardio.CardException;
+import javax.smartcardio.CardTerminal;
+
+/**
+ * Terminal that replays one session recorded in trace file. Card in terminal
+ * answers commands by responses recorded for the same commands, so ApduWorker
+ * and Getters run as with real card, only without card. Commands that differ
+ * from recorded session are collected as ReplayDivergences.
+ * <p>By default responses come immediately, so replay measures only time
+ * spent in this program. In real time mode every response comes after the
+ * same time it took when it was recorded.
+ *
+ * @author Andrej Simko
+ */
+public class ReplayTerminal extends CardTerminal {
+
+    private final int sessionId;
+    private final String originalName;
+    private final byte[] ATR;
+    private final List<TraceFrame> exchanges;
+    private final Map<ByteBuffer, List<Integer>> positions = new HashMap<>();
+    private final List<ReplayDivergence> divergences = Collections.synchronizedList(new ArrayList<ReplayDivergence>());
+    private volatile boolean realTime = false;
+    private volatile boolean strict = false;
+    private volatile int replayed = 0;
+
+    ReplayTerminal(int sessionId, String originalName, byte[] ATR, List<TraceFrame> exchanges) {
+        this.sessionId = sessionId;
+        this.originalName = originalName;
+        this.ATR = ATR;
+        this.exchanges = exchanges;
+        for (int i = 0; i < exchanges.size(); i++) {
+            ByteBuffer key = ByteBuffer.wrap(exchanges.get(i).getCommand());
+            List<Integer> list = positions.get(key);
+            if (list == null) {
+                list = new ArrayList<>();
+                positions.put(key, list);
+            }
+            list.add(i);
+        }
+    }
+
+    @Override
+    public String getName() {
+        return "Replay " + sessionId + ": " + originalName;
+    }
+
+    /**
+     * Getter for ID of recorded session.
+     *
+     * @return ID of session in trace file
+     */
+    public int getSessionId() {
+        return sessionId;
+    }
+
+    /**
+     * Getter for name of terminal where session was recorded.
+     *
+     * @return name of original terminal
+     */
+    public String getOriginalName() {
+        return originalName;
+    }
+
+    /**
+     * Getter for number of recorded commands.
+     *
+     * @return number of commands in session
+     */
+    public int getNumberOfExchanges() {
+        return exchanges.size();
+    }
+
+    /**
+     * Getter for number of commands answered during last connection.
+     *
+     * @return number of replayed commands
+     */
+    public int getNumberOfReplayed() {
+        return replayed;
+    }
+
+    /**
+     * Returns divergences found since terminal was created or cleared.
+     *
+     * @return List of divergences in order in which they were found
+     */
+    public List<ReplayDivergence> getDivergences() {
+        synchronized (divergences) {
+            return new ArrayList<>(divergences);
+        }
+    }
+
+    /**
+     * Forgets found divergences.
+     */
+    public void clearDivergences() {
+        divergences.clear();
+    }
+
+    /**
+     * Determines whether responses come after recorded time.
+     *
+     * @return true in real time mode
+     */
+    public boolean isRealTime() {
+        return realTime;
+    }
+
+    /**
+     * Sets real time mode.
+     *
+     * @param realTime true if responses are to come after recorded time,
+     * false if they are to come immediately
+     */
+    public void setRealTime(boolean realTime) {
+        this.realTime = realTime;
+    }
+
+    /**
+     * Determines whether command that was not recorded fails.
+     *
+     * @return true if such command throws CardException, false if it is
+     * answered by Status Word 6F00
+     */
+    public boolean isStrict() {
+        return strict;
+    }
+
+    /**
+     * Sets whether command that was not recorded fails.
+     *
+     * @param strict true if such command is to throw CardException, false if
+     * it is to be answered by Status Word 6F00
+     */
+    public void setStrict(boolean strict) {
+        this.strict = strict;
+    }
+
+    List<TraceFrame> getExchanges() {
+        return exchanges;
+    }
+
+    List<Integer> getPositions(byte[] command) {
+        return positions.get(ByteBuffer.wrap(command));
+    }
+
+    void addDivergence(ReplayDivergence divergence) {
+        divergences.add(divergence);
+        Logger.getLogger(ReplayTerminal.class.getName()).log(Level.FINE, "{0}: {1}", new Object[]{getName(), divergence});
+    }
+
+    void setNumberOfReplayed(int replayed) {
+        this.replayed = replayed;
+    }
+
+    @Override
+    public Card connect(String protocol) throws CardException {
+        if (!protocol.equals("*") && !protocol.equals("T=0")) {
+            throw new CardException("Protocol " + protocol + " is not supported");
+        }
+        replayed = 0;
+        return new ReplayCard(this, ATR);
+    }
+
+    @Override
+    public boolean isCardPresent() throws CardException {
+        return true;
+    }
+
+    @Override
+    public boolean waitForCardPresent(long timeout) throws CardException {
+        return true;
+    }
+
+    @Override
+    public boolean waitForCardAbsent(long timeout) throws CardException {
+        if (timeout < 0) {
+            throw new IllegalArgumentException("timeout must not be negative");
+        }
+        try {
+            if (timeout == 0) {
+                synchronized (this) {
+                    while (true) {
+                        wait(); //card is never removed
+                    }
+                }
+            }
+            Thread.sleep(timeout);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new CardException("Waiting for card was interrupted", ex);
+        }
+        return false;
+    }
+
+    @Override
+    public String toString() {
+        return "Replay terminal: " + getName();
+    }
+}
@@ -0,0 +1,29 @@
+package cz.muni.fi.uco359952.simplesimreader.trace;
+
+import javax.smartcardio.CardTerminals;
+import javax.smartcardio.TerminalFactorySpi;
+
+/**
+ * TerminalFactorySpi of type "Replay", registered by ReplayProvider.
+ *
+ * @author Andrej Simko
+ */
+public class ReplayTerminalFactorySpi extends TerminalFactorySpi {
+
+    private final ReplayTerminals terminals;
+
+    /**
+     * Creates factory with replay terminals.
+     *
+     * @param params ReplayTerminals, or null for terminals given by system
+     * properties
+     */
+    public ReplayTerminalFactorySpi(Object params) {
+        terminals = params instanceof ReplayTerminals ? (ReplayTerminals) params : ReplayTerminals.fromSystemProperties();
+    }
+
+    @Override
+    protected CardTerminals engineTerminals() {
+        return terminals;
+    }
+}
@@ -0,0 +1,178 @@
+package cz.muni.fi.uco359952.simplesimreader.trace;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import javax.smartcardio.CardException;
+import javax.smartcardio.CardTerminal;
+import javax.smartcardio.CardTerminals;
+
+/**
+ * Set of ReplayTerminals, one for every session of trace file. Cards are
+ * always present and never change.
+ *
+ * @author Andrej Simko
+ */
+public class ReplayTerminals extends CardTerminals {
+
+    /**
+     * System property with name of trace file that is replayed by factory of
+     * type "Replay".
+     */
+    public static final String REPLAY_PROPERTY = "simplesimreader.replay";
+    /**
+     * System property that turns real time mode on, "true" or "false".
+     */
+    public static final String REAL_TIME_PROPERTY = "simplesimreader.replay.realTime";
+    /**
+     * System property that makes commands which were not recorded fail,
+     * "true" or "false".
+     */
+    public static final String STRICT_PROPERTY = "simplesimreader.replay.strict";
+    private final List<ReplayTerminal> terminals;
+
+    /**
+     * Creates set of given terminals.
+     *
+     * @param terminals replay terminals
+     */
+    public ReplayTerminals(List<ReplayTerminal> terminals) {
+        this.terminals = new ArrayList<>(terminals);
+    }
+
+    /**
+     * Reads trace file and creates terminal for every session in it.
+     * Sessions without commands are skipped.
+     *
+     * @param trace trace file written by TraceRecorder
+     * @return terminals in order in which sessions were recorded
+     * @throws IOException if trace file can't be read
+     */
+    public static ReplayTerminals load(File trace) throws IOException {
+        List<TraceFrame> sessions = new ArrayList<>();
+        List<List<TraceFrame>> exchanges = new ArrayList<>();
+        Map<Integer, Integer> open = new HashMap<>(); //ID of session -> its index in lists
+        try (TraceReader reader = new TraceReader(trace)) {
+            TraceFrame frame;
+            while ((frame = reader.next()) != null) {
+                if (frame.getType() == TraceFrame.SESSION) { //ID can be used again by later recording into the same file
+                    open.put(frame.getSessionId(), sessions.size());
+                    sessions.add(frame);
+                    exchanges.add(new ArrayList<TraceFrame>());
+                } else if (frame.getType() == TraceFrame.END) {
+                    open.remove(frame.getSessionId());
+                } else if (open.containsKey(frame.getSessionId())) {
+                    exchanges.get(open.get(frame.getSessionId())).add(frame);
+                }
+            }
+        }
+        List<ReplayTerminal> terminals = new ArrayList<>();
+        for (int i = 0; i < sessions.size(); i++) {
+            TraceFrame session = sessions.get(i);
+            if (!exchanges.get(i).isEmpty()) {
+                terminals.add(new ReplayTerminal(session.getSessionId(), session.getTerminalName(), session.getATR(), exchanges.get(i)));
+            }
+        }
+        return new ReplayTerminals(terminals);
+    }
+
+    /**
+     * Creates terminals from trace file and modes given by system properties.
+     *
+     * @return terminals of trace file given by REPLAY_PROPERTY
+     * @throws IllegalStateException if REPLAY_PROPERTY is not set or trace
+     * file can't be read
+     */
+    public static ReplayTerminals fromSystemProperties() {
+        String name = System.getProperty(REPLAY_PROPERTY);
+        if (name == null) {
+            throw new IllegalStateException("System property " + REPLAY_PROPERTY + " with trace file is not set");
+        }
+        ReplayTerminals replay;
+        try {
+            replay = load(new File(name));
+        } catch (IOException ex) {
+            throw new IllegalStateException(ex);
+        }
+        replay.setRealTime(Boolean.getBoolean(REAL_TIME_PROPERTY));
+        replay.setStrict(Boolean.getBoolean(STRICT_PROPERTY));
+        return replay;
+    }
+
+    /**
+     * Returns all terminals.
+     *
+     * @return List of replay terminals
+     */
+    public List<ReplayTerminal> getTerminals() {
+        return Collections.unmodifiableList(terminals);
+    }
+
+    /**
+     * Sets real time mode of all terminals.
+     *
+     * @param realTime true if responses are to come after recorded time
+     */
+    public void setRealTime(boolean realTime) {
+        for (ReplayTerminal terminal : terminals) {
+            terminal.setRealTime(realTime);
+        }
+    }
+
+    /**
+     * Sets whether commands that were not recorded fail, in all terminals.
+     *
+     * @param strict true if such commands are to throw CardException
+     */
+    public void setStrict(boolean strict) {
+        for (ReplayTerminal terminal : terminals) {
+            terminal.setStrict(strict);
+        }
+    }
+
+    /**
+     * Returns divergences found in all terminals.
+     *
+     * @return List of divergences, terminal by terminal
+     */
+    public List<ReplayDivergence> getDivergences() {
+        List<ReplayDivergence> divergences = new ArrayList<>();
+        for (ReplayTerminal terminal : terminals) {
+            divergences.addAll(terminal.getDivergences());
+        }
+        return divergences;
+    }
+
+    @Override
+    public List<CardTerminal> list(State state) throws CardException {
+        if (state == State.CARD_INSERTION || state == State.CARD_REMOVAL || state == State.CARD_ABSENT) {
+            return Collections.emptyList();
+        }
+        return Collections.<CardTerminal>unmodifiableList(terminals);
+    }
+
+    @Override
+    public boolean waitForChange(long timeout) throws CardException {
+        if (timeout < 0) {
+            throw new IllegalArgumentException("timeout must not be negative");
+        }
+        try {
+            synchronized (this) {
+                if (timeout == 0) {
+                    while (true) {
+                        wait(); //cards never change
+                    }
+                }
+                wait(timeout);
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new CardException("Waiting for change was interrupted", ex);
+        }
+        return false;
+    }
+}
@@ -0,0 +1,336 @@
+package cz.muni.fi.uco359952.simplesimreader.trace;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+
+/**
+ * One frame of APDU trace file. Trace file starts with MAGIC and VERSION and
+ * continues with frames, each prefixed by its length:
+ * <pre>
+ * int    length of rest of frame
+ * byte   type - SESSION, EXCHANGE or END
+ * byte   flags - MASKED, FAILED
+ * long   timestamp, milliseconds since epoch
+ * int    session ID
+ * SESSION:  short length + UTF-8 name of terminal, short length + ATR
+ * EXCHANGE: long elapsed nanoseconds, short length + command APDU,
+ *           short length + Response APDU
+ * END:      nothing more
+ * </pre> All numbers are big-endian. SESSION frame is written when session
+ * connects to card, EXCHANGE frame for every command sent in that session and
+ * END frame when session disconnects.
+ *
+ * @author Andrej Simko
+ */
+public class TraceFrame {
+
+    /**
+     * First four bytes of trace file - "APDT".
+     */
+    public static final int MAGIC = 0x41504454;
+    /**
+     * Version of format, written after MAGIC.
+     */
+    public static final int VERSION = 2;
+    /**
+     * Length of MAGIC and VERSION at start of file.
+     */
+    public static final int HEADER_LENGTH = 8;
+    /**
+     * Type of frame written when session connects to card.
+     */
+    public static final byte SESSION = 1;
+    /**
+     * Type of frame with one command and its response.
+     */
+    public static final byte EXCHANGE = 2;
+    /**
+     * Type of frame written when session disconnects from card.
+     */
+    public static final byte END = 3;
+    /**
+     * Flag of frame whose command data have been masked.
+     */
+    public static final byte MASKED = 1;
+    /**
+     * Flag of frame whose command has failed with exception, response is
+     * empty.
+     */
+    public static final byte FAILED = 2;
+    static final int TYPE_OFFSET = 4;
+    static final int TIMESTAMP_OFFSET = 6;
+    static final int SESSION_ID_OFFSET = 14;
+    static final int NAME_OFFSET = 18;
+    static final int ELAPSED_OFFSET = 18;
+    static final int COMMAND_OFFSET = 26;
+    static final Charset UTF8 = Charset.forName("UTF-8");
+    private final byte type;
+    private final byte flags;
+    private final long timestamp;
+    private final int sessionId;
+    private final String terminalName;
+    private final byte[] ATR;
+    private final long elapsedNanos;
+    private final byte[] command;
+    private final byte[] response;
+
+    private TraceFrame(byte type, byte flags, long timestamp, int sessionId, String terminalName, byte[] ATR, long elapsedNanos, byte[] command, byte[] response) {
+        this.type = type;
+        this.flags = flags;
+        this.timestamp = timestamp;
+        this.sessionId = sessionId;
+        this.terminalName = terminalName;
+        this.ATR = ATR;
+        this.elapsedNanos = elapsedNanos;
+        this.command = command;
+        this.response = response;
+    }
+
+    /**
+     * Creates SESSION frame.
+     *
+     * @param timestamp time of connection, milliseconds since epoch
+     * @param sessionId ID of session
+     * @param terminalName name of terminal
+     * @param ATR Answer To Reset of card
+     * @return SESSION frame
+     */
+    public static TraceFrame session(long timestamp, int sessionId, String terminalName, byte[] ATR) {
+        return new TraceFrame(SESSION, (byte) 0, timestamp, sessionId, terminalName, ATR, 0, null, null);
+    }
+
+    /**
+     * Creates END frame.
+     *
+     * @param timestamp time of disconnection, milliseconds since epoch
+     * @param sessionId ID of session
+     * @return END frame
+     */
+    public static TraceFrame end(long timestamp, int sessionId) {
+        return new TraceFrame(END, (byte) 0, timestamp, sessionId, null, null, 0, null, null);
+    }
+
+    /**
+     * Creates EXCHANGE frame. Data of commands with PIN or PUK are masked.
+     *
+     * @param timestamp time when command was sent, milliseconds since epoch
+     * @param sessionId ID of session
+     * @param elapsedNanos time until response came, in nanoseconds
+     * @param command command APDU
+     * @param response Response APDU, null if command has failed
+     * @return EXCHANGE frame
+     */
+    public static TraceFrame exchange(long timestamp, int sessionId, long elapsedNanos, byte[] command, byte[] response) {
+        byte flags = 0;
+        if (isSensitive(command)) {
+            command = mask(command);
+            flags |= MASKED;
+        }
+        if (response == null) {
+            response = new byte[0];
+            flags |= FAILED;
+        }
+        return new TraceFrame(EXCHANGE, flags, timestamp, sessionId, null, null, elapsedNanos, command, response);
+    }
+
+    /**
+     * Determines whether command carries secret code - VERIFY, CHANGE,
+     * DISABLE, ENABLE or UNBLOCK CHV.
+     *
+     * @param command command APDU
+     * @return true if data of command have to be masked
+     */
+    public static boolean isSensitive(byte[] command) {
+        if (command.length < 2) {
+            return false;
+        }
+        switch (command[1] & 0xff) {
+            case 0x20:
+            case 0x24:
+            case 0x26:
+            case 0x28:
+            case 0x2C:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * Returns command as it is stored in trace - data of command with PIN or
+     * PUK are replaced by 0xFF, other commands are returned unchanged.
+     *
+     * @param command command APDU
+     * @return masked copy of command, or the same command
+     */
+    public static byte[] mask(byte[] command) {
+        if (!isSensitive(command)) {
+            return command;
+        }
+        byte[] masked = command.clone();
+        for (int i = 5; i < masked.length; i++) {
+            masked[i] = (byte) 0xFF;
+        }
+        return masked;
+    }
+
+    /**
+     * Encodes frame, including its length prefix.
+     *
+     * @return bytes of frame
+     */
+    public byte[] encode() {
+        byte[] name = type == SESSION ? terminalName.getBytes(UTF8) : null;
+        int length = 1 + 1 + 8 + 4;
+        if (type == SESSION) {
+            length += 2 + name.length + 2 + ATR.length;
+        } else if (type == EXCHANGE) {
+            length += 8 + 2 + command.length + 2 + response.length;
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(4 + length);
+        buffer.putInt(length);
+        buffer.put(type);
+        buffer.put(flags);
+        buffer.putLong(timestamp);
+        buffer.putInt(sessionId);
+        if (type == SESSION) {
+            buffer.putShort((short) name.length).put(name);
+            buffer.putShort((short) ATR.length).put(ATR);
+        } else if (type == EXCHANGE) {
+            buffer.putLong(elapsedNanos);
+            buffer.putShort((short) command.length).put(command);
+            buffer.putShort((short) response.length).put(response);
+        }
+        return buffer.array();
+    }
+
+    /**
+     * Decodes frame which starts at position of given buffer, including its
+     * length prefix. Position is moved behind frame.
+     *
+     * @param buffer buffer with encoded frames
+     * @return decoded frame
+     * @throws IllegalArgumentException if frame is of unknown type
+     * @throws java.nio.BufferUnderflowException if frame is not complete
+     */
+    public static TraceFrame decode(ByteBuffer buffer) {
+        int length = buffer.getInt();
+        int end = buffer.position() + length;
+        byte type = buffer.get();
+        byte flags = buffer.get();
+        long timestamp = buffer.getLong();
+        int sessionId = buffer.getInt();
+        TraceFrame frame;
+        if (type == SESSION) {
+            byte[] name = new byte[buffer.getShort() & 0xffff];
+            buffer.get(name);
+            byte[] ATR = new byte[buffer.getShort() & 0xffff];
+            buffer.get(ATR);
+            frame = new TraceFrame(type, flags, timestamp, sessionId, new String(name, UTF8), ATR, 0, null, null);
+        } else if (type == EXCHANGE) {
+            long elapsedNanos = buffer.getLong();
+            byte[] command = new byte[buffer.getShort() & 0xffff];
+            buffer.get(command);
+            byte[] response = new byte[buffer.getShort() & 0xffff];
+            buffer.get(response);
+            frame = new TraceFrame(type, flags, timestamp, sessionId, null, null, elapsedNanos, command, response);
+        } else if (type == END) {
+            frame = new TraceFrame(type, flags, timestamp, sessionId, null, null, 0, null, null);
+        } else {
+            throw new IllegalArgumentException("Unknown type of trace frame: " + type);
+        }
+        buffer.position(end); //skips fields added by later versions
+        return frame;
+    }
+
+    /**
+     * Getter for type of frame.
+     *
+     * @return SESSION, EXCHANGE or END
+     */
+    public byte getType() {
+        return type;
+    }
+
+    /**
+     * Determines whether data of command have been masked.
+     *
+     * @return true if command is masked
+     */
+    public boolean isMasked() {
+        return (flags & MASKED) != 0;
+    }
+
+    /**
+     * Determines whether command has failed with exception.
+     *
+     * @return true if command has failed
+     */
+    public boolean isFailed() {
+        return (flags & FAILED) != 0;
+    }
+
+    /**
+     * Getter for time of frame.
+     *
+     * @return milliseconds since epoch
+     */
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    /**
+     * Getter for ID of session.
+     *
+     * @return ID of session
+     */
+    public int getSessionId() {
+        return sessionId;
+    }
+
+    /**
+     * Getter for name of terminal of SESSION frame.
+     *
+     * @return name of terminal, null for other frames
+     */
+    public String getTerminalName() {
+        return terminalName;
+    }
+
+    /**
+     * Getter for Answer To Reset of SESSION frame.
+     *
+     * @return Answer To Reset, null for other frames
+     */
+    public byte[] getATR() {
+        return ATR;
+    }
+
+    /**
+     * Getter for time until response came.
+     *
+     * @return nanoseconds
+     */
+    public long getElapsedNanos() {
+        return elapsedNanos;
+    }
+
+    /**
+     * Getter for command APDU of EXCHANGE frame.
+     *
+     * @return command APDU, null for other frames
+     */
+    public byte[] getCommand() {
+        return command;
+    }
+
+    /**
+     * Getter for Response APDU of EXCHANGE frame.
+     *
+     * @return Response APDU, empty if command has failed, null for other
+     * frames
+     */
+    public byte[] getResponse() {
+        return response;
+    }
+}
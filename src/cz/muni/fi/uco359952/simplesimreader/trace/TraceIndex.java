@@ -0,0 +1,135 @@
+package cz.muni.fi.uco359952.simplesimreader.trace;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Sidecar index of trace file, stored next to it with suffix ".idx". Index
+ * starts with MAGIC, VERSION and ENTRY_SIZE and continues with entries of
+ * fixed size, one for every session, in order in which sessions ended:
+ * <pre>
+ * int     session ID
+ * int     flags - COMPLETE if END frame of session was written
+ * long    offset of SESSION frame in trace file
+ * long    offset behind last frame of session
+ * long    time of connection, milliseconds since epoch
+ * long    time of last frame
+ * int     number of commands
+ * long    sum of elapsed nanoseconds of all commands
+ * byte[10] raw content of EF_ICCID, 0xFF if it wasn't read in session
+ * short   length of name of terminal
+ * byte[64] UTF-8 name of terminal, truncated
+ * int[24] number of commands with every instruction of INSTRUCTIONS, the last
+ *         one counts all other instructions
+ * </pre> Frames of sessions that ran at once are interleaved, so frames
+ * between the two offsets have to be filtered by session ID. Because entries
+ * have fixed size, index can be memory-mapped and entry i read directly (see
+ * MappedTrace).
+ *
+ * @author Andrej Simko
+ */
+public class TraceIndex {
+
+    /**
+     * First four bytes of index file - "APDI".
+     */
+    public static final int MAGIC = 0x41504449;
+    /**
+     * Version of format.
+     */
+    public static final int VERSION = 1;
+    /**
+     * Length of MAGIC, VERSION and ENTRY_SIZE at start of file.
+     */
+    public static final int HEADER_LENGTH = 12;
+    /**
+     * Size of one entry in bytes.
+     */
+    public static final int ENTRY_SIZE = 224;
+    /**
+     * Flag of session whose END frame was written.
+     */
+    public static final int COMPLETE = 1;
+    /**
+     * Suffix of index file.
+     */
+    public static final String SUFFIX = ".idx";
+    /**
+     * Instructions counted in index: SELECT, STATUS, READ BINARY, UPDATE
+     * BINARY, READ RECORD, UPDATE RECORD, SEEK, INCREASE, VERIFY CHV, CHANGE
+     * CHV, DISABLE CHV, ENABLE CHV, UNBLOCK CHV, INVALIDATE, REHABILITATE, RUN
+     * GSM ALGORITHM, SLEEP, GET RESPONSE, TERMINAL PROFILE, ENVELOPE, FETCH,
+     * TERMINAL RESPONSE, MANAGE CHANNEL.
+     */
+    public static final int[] INSTRUCTIONS = {0xA4, 0xF2, 0xB0, 0xD6, 0xB2, 0xDC, 0xA2, 0x32, 0x20, 0x24, 0x26,
+        0x28, 0x2C, 0x04, 0x44, 0x88, 0xFA, 0xC0, 0x10, 0xC2, 0x12, 0x14, 0x70};
+    /**
+     * Number of counters of instructions - INSTRUCTIONS and one for all other.
+     */
+    public static final int NUMBER_OF_COUNTERS = INSTRUCTIONS.length + 1;
+    static final int ICCID_LENGTH = 10;
+    static final int MAX_NAME_LENGTH = 64;
+    static final int ICCID_OFFSET = 52;
+    static final int NAME_LENGTH_OFFSET = 62;
+    static final int NAME_OFFSET = 64;
+    static final int COUNTERS_OFFSET = 128;
+    private static final int[] COUNTER_OF_INSTRUCTION = new int[256];
+
+    static {
+        for (int i = 0; i < COUNTER_OF_INSTRUCTION.length; i++) {
+            COUNTER_OF_INSTRUCTION[i] = INSTRUCTIONS.length;
+        }
+        for (int i = 0; i < INSTRUCTIONS.length; i++) {
+            COUNTER_OF_INSTRUCTION[INSTRUCTIONS[i]] = i;
+        }
+    }
+
+    private TraceIndex() {
+    }
+
+    /**
+     * Returns index file of given trace file.
+     *
+     * @param trace trace file
+     * @return index file next to trace file
+     */
+    public static File indexFileOf(File trace) {
+        return new File(trace.getPath() + SUFFIX);
+    }
+
+    /**
+     * Returns number of counter of given instruction.
+     *
+     * @param instruction INS byte of command
+     * @return index into counters of entry
+     */
+    public static int counterOf(int instruction) {
+        return COUNTER_OF_INSTRUCTION[instruction & 0xff];
+    }
+
+    /**
+     * Creates index of trace file again from its frames, for example when
+     * recording was interrupted before sessions ended. Trace file is
+     * memory-mapped, not read into heap. Existing index is replaced.
+     *
+     * @param trace trace file
+     * @throws IOException if trace file can't be read or index can't be
+     * written
+     */
+    public static void rebuild(File trace) throws IOException {
+        File index = indexFileOf(trace);
+        if (index.exists() && !index.delete()) {
+            throw new IOException("Index " + index + " can't be deleted");
+        }
+        try (TraceMapping mapping = new TraceMapping(trace);
+                TraceIndexWriter writer = new TraceIndexWriter(index)) {
+            long offset = TraceFrame.HEADER_LENGTH;
+            ByteBuffer frame;
+            while ((frame = mapping.frameAt(offset)) != null) {
+                writer.frame(offset, frame);
+                offset += frame.remaining();
+            }
+        }
+    }
+}
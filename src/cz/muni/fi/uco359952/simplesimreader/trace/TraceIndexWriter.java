@@ -0,0 +1,194 @@
+package cz.muni.fi.uco359952.simplesimreader.trace;
+
+import cz.muni.fi.uco359952.simplesimreader.ApduWorker;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Builds entries of TraceIndex from frames of trace file, as they are written
+ * or scanned. Entry of session is completed by its END frame; entries of
+ * sessions that haven't ended are written when writer is closed. Not thread
+ * safe, used by one thread at a time.
+ *
+ * @author Andrej Simko
+ */
+class TraceIndexWriter implements Closeable {
+
+    private static final int FILE_ID_EF_ICCID = 0x2FE2;
+    private final FileChannel out;
+    private final Map<Integer, Entry> open = new LinkedHashMap<>();
+    private final List<ByteBuffer> completed = new ArrayList<>();
+
+    /**
+     * Opens index file for appending, header is written if file is new.
+     */
+    TraceIndexWriter(File index) throws IOException {
+        this.out = FileChannel.open(index.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        if (out.size() == 0) {
+            ByteBuffer header = ByteBuffer.allocate(TraceIndex.HEADER_LENGTH);
+            header.putInt(TraceIndex.MAGIC).putInt(TraceIndex.VERSION).putInt(TraceIndex.ENTRY_SIZE).flip();
+            write(header);
+        }
+    }
+
+    /**
+     * Takes one frame into account.
+     *
+     * @param offset offset of frame in trace file
+     * @param frame buffer with frame, including its length prefix, at its
+     * position
+     */
+    void frame(long offset, ByteBuffer frame) {
+        int p = frame.position();
+        int length = frame.getInt(p);
+        long end = offset + 4 + length;
+        byte type = frame.get(p + TraceFrame.TYPE_OFFSET);
+        long timestamp = frame.getLong(p + TraceFrame.TIMESTAMP_OFFSET);
+        int sessionId = frame.getInt(p + TraceFrame.SESSION_ID_OFFSET);
+        if (type == TraceFrame.SESSION) {
+            Entry previous = open.remove(sessionId);
+            if (previous != null) { //ID is used again by later recording into the same file
+                completed.add(previous.encode());
+            }
+            Entry entry = new Entry(sessionId, offset, timestamp);
+            int nameLength = frame.getShort(p + TraceFrame.NAME_OFFSET) & 0xffff;
+            entry.name = new byte[Math.min(nameLength, TraceIndex.MAX_NAME_LENGTH)];
+            for (int i = 0; i < entry.name.length; i++) {
+                entry.name[i] = frame.get(p + TraceFrame.NAME_OFFSET + 2 + i);
+            }
+            entry.end = end;
+            open.put(sessionId, entry);
+            return;
+        }
+        Entry entry = open.get(sessionId);
+        if (entry == null) {
+            return; //session started before index was created
+        }
+        entry.end = end;
+        entry.lastTimestamp = timestamp;
+        if (type == TraceFrame.END) {
+            entry.complete = true;
+            completed.add(open.remove(sessionId).encode());
+        } else if (type == TraceFrame.EXCHANGE) {
+            exchange(entry, frame, p);
+        }
+    }
+
+    private void exchange(Entry entry, ByteBuffer frame, int p) {
+        entry.numberOfExchanges++;
+        entry.elapsedNanos += frame.getLong(p + TraceFrame.ELAPSED_OFFSET);
+        int commandLength = frame.getShort(p + TraceFrame.COMMAND_OFFSET) & 0xffff;
+        int command = p + TraceFrame.COMMAND_OFFSET + 2;
+        if (commandLength < 2) {
+            entry.counters[TraceIndex.NUMBER_OF_COUNTERS - 1]++;
+            return;
+        }
+        int instruction = frame.get(command + 1) & 0xff;
+        entry.counters[TraceIndex.counterOf(instruction)]++;
+        if (instruction == 0xA4) {
+            entry.ICCIDSelected = commandLength >= 7 && (frame.getShort(command + 5) & 0xffff) == FILE_ID_EF_ICCID;
+        } else if (instruction == 0xB0 && entry.ICCIDSelected && entry.ICCID == null) {
+            int responseLength = frame.getShort(command + commandLength) & 0xffff;
+            int response = command + commandLength + 2;
+            if (responseLength >= TraceIndex.ICCID_LENGTH + 2
+                    && ApduWorker.isSuccess(frame.getShort(response + responseLength - 2) & 0xffff)) {
+                entry.ICCID = new byte[TraceIndex.ICCID_LENGTH];
+                for (int i = 0; i < entry.ICCID.length; i++) {
+                    entry.ICCID[i] = frame.get(response + i);
+                }
+            }
+        }
+    }
+
+    /**
+     * Writes entries of sessions that have ended since last flush.
+     */
+    void flush() throws IOException {
+        for (ByteBuffer entry : completed) {
+            write(entry);
+        }
+        completed.clear();
+    }
+
+    /**
+     * Writes entries of all sessions, including those that haven't ended, and
+     * closes index file.
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            for (Entry entry : open.values()) {
+                completed.add(entry.encode());
+            }
+            open.clear();
+            flush();
+        } finally {
+            out.close();
+        }
+    }
+
+    private void write(ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            out.write(buffer);
+        }
+    }
+
+    private static class Entry {
+
+        private final int sessionId;
+        private final long start;
+        private final long timestamp;
+        private long end;
+        private long lastTimestamp;
+        private boolean complete = false;
+        private int numberOfExchanges = 0;
+        private long elapsedNanos = 0;
+        private byte[] ICCID = null;
+        private boolean ICCIDSelected = false;
+        private byte[] name;
+        private final int[] counters = new int[TraceIndex.NUMBER_OF_COUNTERS];
+
+        Entry(int sessionId, long start, long timestamp) {
+            this.sessionId = sessionId;
+            this.start = start;
+            this.timestamp = timestamp;
+            this.lastTimestamp = timestamp;
+        }
+
+        ByteBuffer encode() {
+            ByteBuffer buffer = ByteBuffer.allocate(TraceIndex.ENTRY_SIZE);
+            buffer.putInt(sessionId);
+            buffer.putInt(complete ? TraceIndex.COMPLETE : 0);
+            buffer.putLong(start);
+            buffer.putLong(end);
+            buffer.putLong(timestamp);
+            buffer.putLong(lastTimestamp);
+            buffer.putInt(numberOfExchanges);
+            buffer.putLong(elapsedNanos);
+            if (ICCID != null) {
+                buffer.put(ICCID);
+            } else {
+                byte[] unknown = new byte[TraceIndex.ICCID_LENGTH];
+                Arrays.fill(unknown, (byte) 0xFF);
+                buffer.put(unknown);
+            }
+            buffer.putShort((short) name.length);
+            buffer.put(name);
+            buffer.position(TraceIndex.COUNTERS_OFFSET);
+            for (int counter : counters) {
+                buffer.putInt(counter);
+            }
+            buffer.flip();
+            return buffer;
+        }
+    }
+}
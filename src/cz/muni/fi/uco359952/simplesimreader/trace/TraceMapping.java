@@ -0,0 +1,88 @@
+package cz.muni.fi.uco359952.simplesimreader.trace;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Trace file mapped into memory by windows of WINDOW_SIZE bytes, so files
+ * larger than 2 GB can be read. Window is moved when frame doesn't fit into
+ * it. Size of file is taken when mapping is created, frames appended later
+ * are not seen.
+ *
+ * @author Andrej Simko
+ */
+class TraceMapping implements Closeable {
+
+    /**
+     * Size of one mapped window of trace file.
+     */
+    static final long WINDOW_SIZE = 256L * 1024 * 1024;
+    private final FileChannel in;
+    private final long size;
+    private MappedByteBuffer window = null;
+    private long windowStart = 0;
+
+    TraceMapping(File trace) throws IOException {
+        this.in = FileChannel.open(trace.toPath(), StandardOpenOption.READ);
+        this.size = in.size();
+        ByteBuffer header = ByteBuffer.allocate(TraceFrame.HEADER_LENGTH);
+        while (header.hasRemaining()) {
+            if (in.read(header) < 0) {
+                break;
+            }
+        }
+        if (header.position() < TraceFrame.HEADER_LENGTH || header.getInt(0) != TraceFrame.MAGIC) {
+            in.close();
+            throw new IOException(trace + " is not APDU trace file");
+        }
+    }
+
+    /**
+     * Getter for size of mapped file.
+     */
+    long size() {
+        return size;
+    }
+
+    /**
+     * Returns frame that starts at given offset.
+     *
+     * @param offset offset of frame in file
+     * @return read-only buffer with frame, including its length prefix,
+     * between its position and limit; null if there is no complete frame
+     */
+    ByteBuffer frameAt(long offset) throws IOException {
+        if (offset + 4 > size) {
+            return null;
+        }
+        map(offset, 4);
+        int length = window.getInt((int) (offset - windowStart));
+        if (length < 0 || offset + 4 + length > size) {
+            return null; //incomplete frame at end of interrupted recording
+        }
+        map(offset, 4 + length);
+        ByteBuffer frame = window.asReadOnlyBuffer();
+        int position = (int) (offset - windowStart);
+        frame.limit(position + 4 + length);
+        frame.position(position);
+        return frame;
+    }
+
+    private void map(long offset, int length) throws IOException {
+        if (window == null || offset < windowStart || offset + length > windowStart + window.limit()) {
+            windowStart = offset;
+            window = in.map(FileChannel.MapMode.READ_ONLY, windowStart, Math.min(WINDOW_SIZE, size - windowStart));
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        window = null;
+        in.close();
+    }
+}
@@ -0,0 +1,73 @@
+package cz.muni.fi.uco359952.simplesimreader.trace;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Reads frames of trace file written by TraceRecorder one after another.
+ * Frame that is not complete, because recording was interrupted, is treated
+ * as end of file.
+ *
+ * @author Andrej Simko
+ */
+public class TraceReader implements Closeable {
+
+    private final DataInputStream in;
+
+    /**
+     * Opens trace file and checks its header.
+     *
+     * @param file trace file
+     * @throws IOException if file can't be read or isn't trace file
+     */
+    public TraceReader(File file) throws IOException {
+        this.in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+        try {
+            if (in.readInt() != TraceFrame.MAGIC) {
+                throw new IOException(file + " is not APDU trace file");
+            }
+            int version = in.readInt();
+            if (version > TraceFrame.VERSION) {
+                throw new IOException("Unsupported version of APDU trace file: " + version);
+            }
+        } catch (IOException ex) {
+            in.close();
+            throw ex;
+        }
+    }
+
+    /**
+     * Reads next frame.
+     *
+     * @return next frame, null at end of file
+     * @throws IOException if file can't be read
+     */
+    public TraceFrame next() throws IOException {
+        int length;
+        try {
+            length = in.readInt();
+        } catch (EOFException ex) {
+            return null;
+        }
+        ByteBuffer frame = ByteBuffer.allocate(4 + length);
+        frame.putInt(length);
+        try {
+            in.readFully(frame.array(), 4, length);
+        } catch (EOFException ex) {
+            return null;
+        }
+        frame.rewind();
+        return TraceFrame.decode(frame);
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+}
@@ -0,0 +1,296 @@
+package cz.muni.fi.uco359952.simplesimreader.trace;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Records APDUs exchanged with cards into append-only trace file (see
+ * TraceFrame for its format). Thread that sends command only encodes frame
+ * and puts it into lock-free queue; frames are written to file by background
+ * thread, so recording doesn't wait for disk. If disk can't keep up and
+ * MAX_PENDING frames are waiting, further frames are dropped and counted
+ * instead of slowing communication with cards down. Data of commands with PIN
+ * or PUK are masked before they are queued.
+ * <p>Background thread also writes TraceIndex next to trace file; entry of
+ * session is written once trace file holds all frames of session. If trace
+ * file already has frames but no index, index is created from them first.
+ * <p>If system property "simplesimreader.trace" holds name of file, default
+ * recorder writes into it and all sessions use it.
+ *
+ * @author Andrej Simko
+ */
+public class TraceRecorder implements Closeable {
+
+    /**
+     * System property with name of trace file of default recorder.
+     */
+    public static final String TRACE_PROPERTY = "simplesimreader.trace";
+    /**
+     * Maximum number of frames waiting to be written.
+     */
+    public static final int MAX_PENDING = 65536;
+    private static final int FLUSH_THRESHOLD = 256;
+    private static final long FLUSH_INTERVAL = TimeUnit.MILLISECONDS.toNanos(100);
+    private static final int WRITE_BUFFER_SIZE = 64 * 1024;
+    private static final AtomicInteger NEXT_SESSION_ID = new AtomicInteger();
+    private static TraceRecorder defaultRecorder = null;
+    private static boolean defaultCreated = false;
+    private final File file;
+    private final FileChannel out;
+    private final TraceIndexWriter index;
+    private long position;
+    private final ByteBuffer writeBuffer = ByteBuffer.allocateDirect(WRITE_BUFFER_SIZE);
+    private final ConcurrentLinkedQueue<byte[]> queue = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger pending = new AtomicInteger();
+    private final AtomicLong dropped = new AtomicLong();
+    private final Thread flusher;
+    private volatile boolean closed = false;
+
+    /**
+     * Creates recorder that appends frames to given file and their index to
+     * index file next to it. Header of format is written if file is new or
+     * empty.
+     *
+     * @param file trace file
+     * @throws IOException if file can't be opened
+     */
+    public TraceRecorder(File file) throws IOException {
+        this.file = file;
+        File indexFile = TraceIndex.indexFileOf(file);
+        if (file.length() > TraceFrame.HEADER_LENGTH && !indexFile.exists()) {
+            TraceIndex.rebuild(file);
+        }
+        this.out = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        if (out.size() == 0) {
+            ByteBuffer header = ByteBuffer.allocate(TraceFrame.HEADER_LENGTH);
+            header.putInt(TraceFrame.MAGIC).putInt(TraceFrame.VERSION).flip();
+            while (header.hasRemaining()) {
+                out.write(header);
+            }
+        }
+        this.position = out.size();
+        this.index = new TraceIndexWriter(indexFile);
+        this.flusher = new Thread(new Runnable() {
+
+            @Override
+            public void run() {
+                flushLoop();
+            }
+        }, "APDU trace " + file.getName());
+        flusher.setDaemon(true);
+        flusher.start();
+    }
+
+    /**
+     * Returns recorder shared by whole process, which is created the first
+     * time from TRACE_PROPERTY. Recorder is closed when JVM shuts down.
+     *
+     * @return default recorder, null if TRACE_PROPERTY is not set or file
+     * can't be opened
+     */
+    public static synchronized TraceRecorder getDefault() {
+        if (!defaultCreated) {
+            defaultCreated = true;
+            String name = System.getProperty(TRACE_PROPERTY);
+            if (name != null && !name.isEmpty()) {
+                try {
+                    defaultRecorder = new TraceRecorder(new File(name));
+                    final TraceRecorder recorder = defaultRecorder;
+                    Runtime.getRuntime().addShutdownHook(new Thread(new Runnable() {
+
+                        @Override
+                        public void run() {
+                            recorder.close();
+                        }
+                    }));
+                } catch (IOException ex) {
+                    Logger.getLogger(TraceRecorder.class.getName()).log(Level.SEVERE, null, ex);
+                }
+            }
+        }
+        return defaultRecorder;
+    }
+
+    /**
+     * Returns new ID of session, unique within process.
+     *
+     * @return ID of session
+     */
+    public static int nextSessionId() {
+        return NEXT_SESSION_ID.incrementAndGet();
+    }
+
+    /**
+     * Records that session has connected to card.
+     *
+     * @param sessionId ID of session, from nextSessionId()
+     * @param terminalName name of terminal
+     * @param ATR Answer To Reset of card
+     */
+    public void recordSession(int sessionId, String terminalName, byte[] ATR) {
+        offer(TraceFrame.session(System.currentTimeMillis(), sessionId, terminalName, ATR));
+    }
+
+    /**
+     * Records that session has disconnected from card.
+     *
+     * @param sessionId ID of session
+     */
+    public void recordEnd(int sessionId) {
+        offer(TraceFrame.end(System.currentTimeMillis(), sessionId));
+    }
+
+    /**
+     * Records one command and its response. Buffers are not changed.
+     *
+     * @param sessionId ID of session
+     * @param timestamp time when command was sent, milliseconds since epoch
+     * @param elapsedNanos time until response came, in nanoseconds
+     * @param command buffer with command APDU between its position and limit
+     * @param response buffer with Response APDU between its position and
+     * limit, null if command has failed
+     */
+    public void recordExchange(int sessionId, long timestamp, long elapsedNanos, ByteBuffer command, ByteBuffer response) {
+        offer(TraceFrame.exchange(timestamp, sessionId, elapsedNanos, toArray(command), response == null ? null : toArray(response)));
+    }
+
+    private static byte[] toArray(ByteBuffer buffer) {
+        byte[] array = new byte[buffer.remaining()];
+        buffer.duplicate().get(array);
+        return array;
+    }
+
+    private void offer(TraceFrame frame) {
+        if (closed || pending.get() >= MAX_PENDING) {
+            dropped.incrementAndGet();
+            return;
+        }
+        byte[] encoded = frame.encode();
+        queue.offer(encoded);
+        if (pending.incrementAndGet() == FLUSH_THRESHOLD) {
+            LockSupport.unpark(flusher);
+        }
+        if (closed && queue.remove(encoded)) { //closed meanwhile, frame may never be drained
+            pending.decrementAndGet();
+            dropped.incrementAndGet();
+        }
+    }
+
+    /**
+     * Writes all frames recorded so far to file.
+     *
+     * @throws IOException if frames can't be written
+     */
+    public void flush() throws IOException {
+        drain();
+    }
+
+    /**
+     * Getter for number of frames that have been dropped because too many
+     * frames were waiting or recorder was closed.
+     *
+     * @return number of dropped frames
+     */
+    public long getDroppedFrames() {
+        return dropped.get();
+    }
+
+    /**
+     * Getter for trace file.
+     *
+     * @return trace file
+     */
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * Stops background thread, writes remaining frames and closes file.
+     * Sessions that haven't ended are written into index as incomplete.
+     * Frames recorded while recorder is being closed are counted as dropped.
+     */
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        LockSupport.unpark(flusher);
+        try {
+            flusher.join();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+        try {
+            drain();
+            out.close();
+            index.close();
+        } catch (IOException ex) {
+            Logger.getLogger(TraceRecorder.class.getName()).log(Level.SEVERE, null, ex);
+        }
+        while (queue.poll() != null) { //offered after last drain, or not written because of error
+            pending.decrementAndGet();
+            dropped.incrementAndGet();
+        }
+        if (dropped.get() > 0) {
+            Logger.getLogger(TraceRecorder.class.getName()).log(Level.WARNING, "{0} frames of APDU trace have been dropped", dropped.get());
+        }
+    }
+
+    private void flushLoop() {
+        while (!closed) {
+            try {
+                drain();
+            } catch (IOException ex) {
+                Logger.getLogger(TraceRecorder.class.getName()).log(Level.SEVERE, null, ex);
+                closed = true;
+                return;
+            }
+            LockSupport.parkNanos(this, FLUSH_INTERVAL);
+        }
+    }
+
+    private synchronized void drain() throws IOException {
+        if (!out.isOpen()) {
+            return;
+        }
+        byte[] frame;
+        while ((frame = queue.poll()) != null) {
+            pending.decrementAndGet();
+            index.frame(position, ByteBuffer.wrap(frame));
+            position += frame.length;
+            if (frame.length > writeBuffer.remaining()) {
+                write();
+            }
+            if (frame.length > writeBuffer.capacity()) {
+                ByteBuffer large = ByteBuffer.wrap(frame);
+                while (large.hasRemaining()) {
+                    out.write(large);
+                }
+            } else {
+                writeBuffer.put(frame);
+            }
+        }
+        write();
+        index.flush(); //entries point only to frames already in trace file
+    }
+
+    private void write() throws IOException {
+        writeBuffer.flip();
+        while (writeBuffer.hasRemaining()) {
+            out.write(writeBuffer);
+        }
+        writeBuffer.clear();
+    }
+}
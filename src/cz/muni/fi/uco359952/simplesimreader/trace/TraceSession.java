@@ -0,0 +1,192 @@
+package cz.muni.fi.uco359952.simplesimreader.trace;
+
+import cz.muni.fi.uco359952.simplesimreader.Converter;
+import java.nio.ByteBuffer;
+
+/**
+ * One entry of TraceIndex - recorded session with one card.
+ *
+ * @author Andrej Simko
+ */
+public class TraceSession {
+
+    private final int sessionId;
+    private final boolean complete;
+    private final long startOffset;
+    private final long endOffset;
+    private final long startTime;
+    private final long endTime;
+    private final int numberOfExchanges;
+    private final long elapsedNanos;
+    private final byte[] ICCID;
+    private final String terminalName;
+    private final int[] counters;
+
+    /**
+     * Reads entry that starts at given position of index.
+     */
+    TraceSession(ByteBuffer index, int position) {
+        this.sessionId = index.getInt(position);
+        this.complete = (index.getInt(position + 4) & TraceIndex.COMPLETE) != 0;
+        this.startOffset = index.getLong(position + 8);
+        this.endOffset = index.getLong(position + 16);
+        this.startTime = index.getLong(position + 24);
+        this.endTime = index.getLong(position + 32);
+        this.numberOfExchanges = index.getInt(position + 40);
+        this.elapsedNanos = index.getLong(position + 44);
+        this.ICCID = new byte[TraceIndex.ICCID_LENGTH];
+        for (int i = 0; i < ICCID.length; i++) {
+            ICCID[i] = index.get(position + TraceIndex.ICCID_OFFSET + i);
+        }
+        byte[] name = new byte[Math.min(index.getShort(position + TraceIndex.NAME_LENGTH_OFFSET) & 0xffff, TraceIndex.MAX_NAME_LENGTH)];
+        for (int i = 0; i < name.length; i++) {
+            name[i] = index.get(position + TraceIndex.NAME_OFFSET + i);
+        }
+        this.terminalName = new String(name, TraceFrame.UTF8);
+        this.counters = new int[TraceIndex.NUMBER_OF_COUNTERS];
+        for (int i = 0; i < counters.length; i++) {
+            counters[i] = index.getInt(position + TraceIndex.COUNTERS_OFFSET + 4 * i);
+        }
+    }
+
+    /**
+     * Getter for ID of session.
+     *
+     * @return ID of session in trace file
+     */
+    public int getSessionId() {
+        return sessionId;
+    }
+
+    /**
+     * Determines whether session ended by disconnection. Session that is not
+     * complete was interrupted, or recording was.
+     *
+     * @return true if END frame of session was written
+     */
+    public boolean isComplete() {
+        return complete;
+    }
+
+    /**
+     * Getter for offset of SESSION frame in trace file.
+     *
+     * @return offset of first frame of session
+     */
+    public long getStartOffset() {
+        return startOffset;
+    }
+
+    /**
+     * Getter for offset behind last frame of session in trace file.
+     *
+     * @return offset behind last frame of session
+     */
+    public long getEndOffset() {
+        return endOffset;
+    }
+
+    /**
+     * Getter for time of connection.
+     *
+     * @return milliseconds since epoch
+     */
+    public long getStartTime() {
+        return startTime;
+    }
+
+    /**
+     * Getter for time of last frame of session.
+     *
+     * @return milliseconds since epoch
+     */
+    public long getEndTime() {
+        return endTime;
+    }
+
+    /**
+     * Getter for number of commands in session.
+     *
+     * @return number of commands
+     */
+    public int getNumberOfExchanges() {
+        return numberOfExchanges;
+    }
+
+    /**
+     * Getter for time spent waiting for responses.
+     *
+     * @return sum of elapsed nanoseconds of all commands
+     */
+    public long getElapsedNanos() {
+        return elapsedNanos;
+    }
+
+    /**
+     * Getter for raw content of EF_ICCID.
+     *
+     * @return 10 bytes of EF_ICCID, null if it wasn't read in session
+     */
+    public byte[] getICCIDBytes() {
+        for (byte b : ICCID) {
+            if (b != (byte) 0xFF) {
+                return ICCID.clone();
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Getter for ICCID, decoded the same way as by Getters.getICCID().
+     *
+     * @return ICCID, null if it wasn't read in session
+     */
+    public String getICCID() {
+        if (getICCIDBytes() == null) {
+            return null;
+        }
+        StringBuilder digits = new StringBuilder();
+        for (byte b : ICCID) {
+            digits.append(Converter.swapString(Converter.byteToHex(b)));
+        }
+        int filler = digits.toString().toUpperCase().indexOf('F');
+        return filler < 0 ? digits.toString() : digits.substring(0, filler);
+    }
+
+    /**
+     * Getter for name of terminal, possibly truncated.
+     *
+     * @return name of terminal where session was recorded
+     */
+    public String getTerminalName() {
+        return terminalName;
+    }
+
+    /**
+     * Returns number of commands with given instruction. Instructions that are
+     * not in TraceIndex.INSTRUCTIONS are counted together.
+     *
+     * @param instruction INS byte of command
+     * @return number of commands
+     */
+    public int getCount(int instruction) {
+        return counters[TraceIndex.counterOf(instruction)];
+    }
+
+    /**
+     * Returns number of commands for every counter.
+     *
+     * @return counters in order of TraceIndex.INSTRUCTIONS, the last one for
+     * all other instructions
+     */
+    public int[] getCounts() {
+        return counters.clone();
+    }
+
+    @Override
+    public String toString() {
+        String ICCIDString = getICCID();
+        return "Session " + sessionId + " in " + terminalName + (ICCIDString == null ? "" : ", ICCID " + ICCIDString)
+                + ", " + numberOfExchanges + " APDUs" + (complete ? "" : ", incomplete");
+    }
+}
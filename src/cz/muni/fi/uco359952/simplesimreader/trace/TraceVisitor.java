@@ -0,0 +1,28 @@
+package cz.muni.fi.uco359952.simplesimreader.trace;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Receives commands of trace file scanned by MappedTrace. Buffers are
+ * read-only views into mapped file, nothing is copied into heap; they are
+ * valid only during call.
+ *
+ * @author Andrej Simko
+ */
+public interface TraceVisitor {
+
+    /**
+     * Called for every command.
+     *
+     * @param offset offset of frame in trace file, can be passed to
+     * MappedTrace.readFrame()
+     * @param sessionId ID of session
+     * @param timestamp time when command was sent, milliseconds since epoch
+     * @param elapsedNanos time until response came, in nanoseconds
+     * @param command command APDU between position and limit
+     * @param response Response APDU between position and limit, empty if
+     * command has failed
+     * @return true to continue, false to stop scanning
+     */
+    boolean exchange(long offset, int sessionId, long timestamp, long elapsedNanos, ByteBuffer command, ByteBuffer response);
+}
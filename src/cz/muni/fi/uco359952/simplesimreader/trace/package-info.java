@@ -0,0 +1,8 @@
+/**
+ * Contains recording of APDUs exchanged with cards into binary trace files
+ * and replay of recorded sessions through terminals without cards.
+ *
+ * @author Andrej Simko
+ * 
+ */
+package cz.muni.fi.uco359952.simplesimreader.trace;